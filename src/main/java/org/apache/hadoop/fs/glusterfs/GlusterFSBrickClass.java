@@ -33,8 +33,12 @@ public class GlusterFSBrickClass{
                      // -1 for others
 
     public GlusterFSBrickClass(String brick, long start, long len, boolean flag, int stripeSize, int nrStripes, int switchCount) throws IOException{
-        this.host=brick2host(brick);
-        this.exportedFile=brick2file(brick);
+        this(brick2host(brick), brick2file(brick), start, len, flag, stripeSize, nrStripes, switchCount);
+    }
+
+    public GlusterFSBrickClass(String host, String exportedFile, long start, long len, boolean flag, int stripeSize, int nrStripes, int switchCount){
+        this.host=host;
+        this.exportedFile=exportedFile;
         this.start=start;
         this.end=start+len;
         this.isChunked=flag;
@@ -43,6 +47,18 @@ public class GlusterFSBrickClass{
         this.switchCount=switchCount;
     }
 
+    public String getHost(){
+        return host;
+    }
+
+    public int getStripeSize(){
+        return stripeSize;
+    }
+
+    public int getNrStripes(){
+        return nrStripes;
+    }
+
     public boolean isChunked(){
         return isChunked;
     }
@@ -81,7 +97,7 @@ public class GlusterFSBrickClass{
         return false;
     }
 
-    public String brick2host(String brick) throws IOException{
+    public static String brick2host(String brick) throws IOException{
         String[] hf=null;
 
         hf=brick.split(":");
@@ -91,7 +107,7 @@ public class GlusterFSBrickClass{
         return hf[0];
     }
 
-    public String brick2file(String brick) throws IOException{
+    public static String brick2file(String brick) throws IOException{
         String[] hf=null;
 
         hf=brick.split(":");
@@ -0,0 +1,294 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ChecksumFileSystem;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies files and trees between files on mounts (or local disks) with
+ * FileChannel.transferTo, which the JDK hands to the kernel (sendfile, or
+ * copy_file_range on newer JDKs) instead of pumping the data through heap
+ * buffers.  Files larger than a chunk are copied a chunk at a time on a
+ * bounded pool, each chunk with its own descriptors; smaller files are
+ * copied on the calling thread.
+ *
+ * Same semantics as FileUtil.copy with overwrite: copying into an existing
+ * directory puts the source inside it.  Between file systems, checksum files
+ * (.name.crc) of a ChecksumFileSystem source are its metadata, not files of
+ * their own: they travel with their file only to a ChecksumFileSystem, and
+ * there a stale one is removed when the source has none.  They're copied,
+ * not verified.
+ */
+public class GlusterFSCopier{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSCopier.class);
+
+    public static final int DEFAULT_THREADS=4;
+    public static final long DEFAULT_CHUNK_SIZE=64*1024*1024;
+
+    private ThreadPoolExecutor pool=null;
+    private int threads=0;
+    private long chunkSize=DEFAULT_CHUNK_SIZE;
+
+    private final AtomicLong bytes=new AtomicLong();
+    private final AtomicLong files=new AtomicLong();
+
+    public synchronized void configure(int threads,long chunkSize){
+        this.threads=threads;
+        this.chunkSize=Math.max(1, chunkSize);
+        if(threads<=1){
+            if(pool!=null)
+                pool.shutdown();
+            pool=null;
+        }else if(pool==null){
+            pool=new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new Daemons());
+            pool.allowCoreThreadTimeOut(true);
+        }else if(threads>pool.getMaximumPoolSize()){
+            pool.setMaximumPoolSize(threads);
+            pool.setCorePoolSize(threads);
+        }else{
+            pool.setCorePoolSize(threads);
+            pool.setMaximumPoolSize(threads);
+        }
+    }
+
+    public synchronized int getThreads(){
+        return threads;
+    }
+
+    public synchronized long getChunkSize(){
+        return chunkSize;
+    }
+
+    private synchronized ThreadPoolExecutor getPool(){
+        return pool;
+    }
+
+    /**
+     * FileUtil.copy with overwrite, through this copier when both file
+     * systems keep their files on a mount or local disk.
+     */
+    public boolean copy(FileSystem srcFs,Path src,FileSystem dstFs,Path dst,boolean deleteSource,Configuration conf) throws IOException{
+        File from=toFile(srcFs, src);
+        File to=toFile(dstFs, dst);
+        if(from==null||to==null)
+            return FileUtil.copy(srcFs, src, dstFs, dst, deleteSource, conf);
+        return copy(from, to, deleteSource, srcFs instanceof ChecksumFileSystem, dstFs instanceof ChecksumFileSystem);
+    }
+
+    /* the file behind p, null if fs doesn't keep it in a local (or FUSE) file */
+    static File toFile(FileSystem fs,Path p){
+        while (fs instanceof FilterFileSystem)
+            fs=((FilterFileSystem) fs).getRawFileSystem();
+        return fs instanceof RawLocalFileSystem ? ((RawLocalFileSystem) fs).pathToFile(p) : null;
+    }
+
+    /* within one file system, where checksum files are files like any other */
+    public boolean copy(File src,File dst,boolean deleteSource) throws IOException{
+        return copy(src, dst, deleteSource, false, false);
+    }
+
+    /**
+     * Copies src, a file or a directory tree, to dst, or into dst if that's
+     * an existing directory.  With deleteSource, src is removed once
+     * everything is copied; the return value is that of the delete.
+     * srcChecksums and dstChecksums tell whether either end keeps checksum
+     * files.
+     */
+    public boolean copy(File src,File dst,boolean deleteSource,boolean srcChecksums,boolean dstChecksums) throws IOException{
+        if(!src.exists())
+            throw new FileNotFoundException(src+": No such file or directory");
+        File target=dst.isDirectory() ? new File(dst, src.getName()) : dst;
+        if(src.isDirectory()){
+            String from=src.getCanonicalPath()+File.separator;
+            if((target.getCanonicalPath()+File.separator).startsWith(from))
+                throw new IOException("Cannot copy "+src+" to its subdirectory "+target);
+        }
+        File parent=target.getAbsoluteFile().getParentFile();
+        if(parent!=null&&!parent.mkdirs()&&!parent.isDirectory())
+            throw new IOException("Failed to create "+parent);
+
+        ThreadPoolExecutor p=getPool();
+        long chunk=getChunkSize();
+        List<Future<Void>> tasks=new ArrayList<Future<Void>>();
+        try{
+            copyTree(p, chunk, src, target, srcChecksums, dstChecksums, tasks);
+            for(Future<Void> t : tasks)
+                t.get();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted copying "+src+" to "+target);
+        }catch (ExecutionException e){
+            if(e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException("Error copying "+src+" to "+target, e.getCause());
+        }finally{
+            for(Future<Void> t : tasks)
+                t.cancel(false);
+        }
+
+        if(!deleteSource)
+            return true;
+        if(src.isDirectory())
+            return FileUtil.fullyDelete(src);
+        if(srcChecksums)
+            checksumFile(src).delete();
+        return src.delete();
+    }
+
+    private void copyTree(ThreadPoolExecutor p,long chunk,File src,File dst,boolean srcChecksums,boolean dstChecksums,List<Future<Void>> tasks) throws IOException{
+        if(!src.isDirectory()){
+            copyFile(p, chunk, src, dst, srcChecksums, dstChecksums, tasks);
+            return;
+        }
+        if(dst.exists()&&!dst.isDirectory())
+            throw new IOException("Target "+dst+" already exists");
+        if(!dst.mkdir()&&!dst.isDirectory())
+            throw new IOException("Failed to create "+dst);
+
+        String[] names=src.list();
+        if(names==null)
+            throw new IOException("Cannot list "+src);
+        for(String name : names){
+            /* copied along with the file they belong to, if at all */
+            if(srcChecksums&&name.startsWith(".")&&name.endsWith(".crc")&&new File(src, name.substring(1, name.length()-4)).isFile())
+                continue;
+            copyTree(p, chunk, new File(src, name), new File(dst, name), srcChecksums, dstChecksums, tasks);
+        }
+    }
+
+    private void copyFile(ThreadPoolExecutor p,long chunk,final File src,final File dst,boolean srcChecksums,boolean dstChecksums,List<Future<Void>> tasks) throws IOException{
+        final long len=src.length();
+        RandomAccessFile out=new RandomAccessFile(dst, "rw");
+        try{
+            out.setLength(len);
+        }finally{
+            out.close();
+        }
+        files.incrementAndGet();
+
+        File srcCrc=checksumFile(src);
+        File dstCrc=checksumFile(dst);
+        if(dstChecksums){
+            if(srcChecksums&&srcCrc.isFile()){
+                transfer(srcCrc, dstCrc, 0, srcCrc.length());
+            }else if(dstCrc.exists()&&!dstCrc.delete()){
+                throw new IOException("Cannot remove stale checksum "+dstCrc);
+            }
+        }
+
+        if(p==null||len<=chunk){
+            transfer(src, dst, 0, len);
+            return;
+        }
+        for(long off=0;off<len;off+=chunk){
+            final long start=off;
+            final long count=Math.min(chunk, len-off);
+            tasks.add(p.submit(new Callable<Void>(){
+                public Void call() throws IOException{
+                    transfer(src, dst, start, count);
+                    return null;
+                }
+            }));
+        }
+    }
+
+    /* count bytes of src from offset to the same offset of dst */
+    private void transfer(File src,File dst,long offset,long count) throws IOException{
+        FileInputStream in=new FileInputStream(src);
+        try{
+            RandomAccessFile out=new RandomAccessFile(dst, "rw");
+            try{
+                FileChannel from=in.getChannel();
+                FileChannel to=out.getChannel();
+                long pos=offset;
+                long end=offset+count;
+                to.position(pos);
+                while (pos<end){
+                    long n=from.transferTo(pos, end-pos, to);
+                    if(n<=0)
+                        throw new EOFException(src+" shrank while being copied to "+dst);
+                    pos+=n;
+                }
+                bytes.addAndGet(count);
+            }finally{
+                out.close();
+            }
+        }finally{
+            in.close();
+        }
+    }
+
+    /* where a ChecksumFileSystem keeps the checksums of f */
+    static File checksumFile(File f){
+        return new File(f.getParentFile(), "."+f.getName()+".crc");
+    }
+
+    /* bytes copied, checksum files included */
+    public long getBytesCopied(){
+        return bytes.get();
+    }
+
+    public long getFilesCopied(){
+        return files.get();
+    }
+
+    public String toString(){
+        return "copy threads="+getThreads()+" chunk="+getChunkSize()+" files="+getFilesCopied()+" bytes="+getBytesCopied();
+    }
+
+    static class Daemons implements ThreadFactory{
+        private final AtomicInteger count=new AtomicInteger();
+
+        public Thread newThread(Runnable r){
+            Thread t=new Thread(r, "glusterfs-copy-"+count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
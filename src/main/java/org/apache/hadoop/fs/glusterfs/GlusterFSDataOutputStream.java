@@ -0,0 +1,87 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * The stream a volume hands out for writing path.  Once it's closed the
+ * volume drops what it stat'ed of path while it was being written, so the
+ * length and times seen afterwards are the final ones, and the range it
+ * wrote of file, from offset on, is advised DONTNEED if setDropBehind or
+ * the GlusterFSFadvise default says so.  It wraps the same stream the plain
+ * FSDataOutputStream would, getWrappedStream is unchanged.  A null volume
+ * has nothing to drop.
+ */
+public class GlusterFSDataOutputStream extends FSDataOutputStream{
+
+    private final GlusterVolume volume;
+    private final Path path;
+    private final File file;
+    private final long offset;
+    private final long startPosition;
+    private final GlusterFSFadvise fadvise;
+    private Boolean dropBehind=null;
+    private boolean closed=false;
+
+    public GlusterFSDataOutputStream(OutputStream out,FileSystem.Statistics stats,long startPosition,GlusterVolume volume,Path path,File file,long offset,GlusterFSFadvise fadvise) throws IOException{
+        super(out, stats, startPosition);
+        this.volume=volume;
+        this.path=path;
+        this.file=file;
+        this.offset=offset;
+        this.startPosition=startPosition;
+        this.fadvise=fadvise;
+    }
+
+    /* whether what was written is advised DONTNEED on close, null for the default */
+    public synchronized void setDropBehind(Boolean dropBehind){
+        this.dropBehind=dropBehind;
+    }
+
+    public void close() throws IOException{
+        if(closed)
+            return;
+        closed=true;
+        long written=getPos()-startPosition;
+        try{
+            super.close();
+        }finally{
+            if(volume!=null)
+                volume.invalidated(path);
+        }
+        boolean drop;
+        synchronized (this){
+            drop=dropBehind!=null ? dropBehind : fadvise.isDropBehind();
+        }
+        if(drop&&written>0){
+            /* the writer's descriptor is closed, the page cache is the file's */
+            GlusterFSFadvise.Hints hints=fadvise.hints(file, null);
+            hints.advise(offset, written, GlusterFSNative.POSIX_FADV_DONTNEED);
+            hints.close();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes directory trees with a fork-join pool: each directory is read
+ * through a DirectoryStream, its files are unlinked in chunks and its
+ * subdirectories emptied by tasks of their own, and the directory itself is
+ * removed once everything below it is gone.  Over FUSE every unlink is a
+ * round trip, this keeps many of them in flight instead of one.
+ *
+ * Like FileUtil.fullyDelete, symbolic links are removed, never followed,
+ * and whatever can't be removed is left behind while the rest goes; the
+ * Result says how much that was.
+ */
+public class GlusterFSDeleter{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSDeleter.class);
+
+    public static final int DEFAULT_PARALLELISM=16;
+    /* files unlinked per task */
+    static final int CHUNK=64;
+    /* failed paths kept for reporting, the rest are only counted */
+    static final int MAX_REPORTED=100;
+
+    private static final LinkOption[] NOFOLLOW=new LinkOption[]{ LinkOption.NOFOLLOW_LINKS };
+
+    private ForkJoinPool pool=null;
+
+    public synchronized void configure(int parallelism){
+        if(pool==null||pool.getParallelism()!=Math.max(1, parallelism)){
+            if(pool!=null)
+                pool.shutdown();
+            pool=new ForkJoinPool(Math.max(1, parallelism));
+        }
+    }
+
+    private synchronized ForkJoinPool getPool(){
+        if(pool==null)
+            pool=new ForkJoinPool(DEFAULT_PARALLELISM);
+        return pool;
+    }
+
+    public static class Result{
+        /* nanoseconds between removals, 0 for no limit */
+        private final long interval;
+        private final AtomicLong next=new AtomicLong(System.nanoTime());
+        private final AtomicLong files=new AtomicLong();
+        private final AtomicLong directories=new AtomicLong();
+        private final AtomicLong failures=new AtomicLong();
+        private final List<String> failed=Collections.synchronizedList(new ArrayList<String>());
+
+        Result(long rate){
+            interval=rate>0 ? Math.max(1, 1000000000L/rate) : 0;
+        }
+
+        /* waits for the next removal's turn under the rate, idle time isn't saved up */
+        void pace(){
+            if(interval==0)
+                return;
+            long now=System.nanoTime();
+            long last;
+            long slot;
+            do{
+                last=next.get();
+                slot=Math.max(last, now);
+            }while (!next.compareAndSet(last, slot+interval));
+            try{
+                if(slot>now)
+                    Thread.sleep((slot-now)/1000000, (int) ((slot-now)%1000000));
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void failed(Path p,IOException e){
+            if(failures.incrementAndGet()<=MAX_REPORTED)
+                failed.add(p+": "+e);
+        }
+
+        /* files and links removed */
+        public long getFiles(){
+            return files.get();
+        }
+
+        public long getDirectories(){
+            return directories.get();
+        }
+
+        /* entries that couldn't be removed or listed */
+        public long getFailures(){
+            return failures.get();
+        }
+
+        /* the first MAX_REPORTED failures, path and reason */
+        public List<String> getFailed(){
+            synchronized (failed){
+                return new ArrayList<String>(failed);
+            }
+        }
+
+        public boolean isComplete(){
+            return failures.get()==0;
+        }
+
+        public String toString(){
+            return files+" files, "+directories+" directories removed, "+failures+" failures";
+        }
+    }
+
+    /**
+     * Removes f and, if it's a directory, everything below it.  A missing f
+     * counts as removed.
+     */
+    public Result delete(File f){
+        return delete(f, 0);
+    }
+
+    /* the same, removing at most rate files and directories a second (0 for no limit) */
+    public Result delete(File f,long rate){
+        Result r=new Result(rate);
+        Path p=f.toPath();
+
+        if(Files.isDirectory(p, NOFOLLOW)){
+            getPool().invoke(new Remove(p, r));
+        }else{
+            unlink(p, r);
+        }
+
+        if(!r.isComplete())
+            log.warn("Could not delete all of "+f+": "+r+", first: "+r.getFailed().get(0));
+        return r;
+    }
+
+    static void unlink(Path p,Result r){
+        r.pace();
+        try{
+            Files.delete(p);
+            r.files.incrementAndGet();
+        }catch (NoSuchFileException e){
+            /* gone already */
+        }catch (IOException e){
+            r.failed(p, e);
+        }
+    }
+
+    /* a directory, emptied and removed */
+    static class Remove extends RecursiveAction{
+        private static final long serialVersionUID=1L;
+
+        final Path dir;
+        final Result result;
+
+        Remove(Path dir,Result result){
+            this.dir=dir;
+            this.result=result;
+        }
+
+        protected void compute(){
+            List<RecursiveAction> tasks=new ArrayList<RecursiveAction>();
+            List<Path> files=new ArrayList<Path>(CHUNK);
+
+            try{
+                DirectoryStream<Path> entries=Files.newDirectoryStream(dir);
+                try{
+                    for(Path p : entries){
+                        if(Files.isDirectory(p, NOFOLLOW)){
+                            tasks.add(fork(new Remove(p, result)));
+                        }else{
+                            files.add(p);
+                            if(files.size()==CHUNK){
+                                tasks.add(fork(new Unlink(files, result)));
+                                files=new ArrayList<Path>(CHUNK);
+                            }
+                        }
+                    }
+                }finally{
+                    entries.close();
+                }
+            }catch (NoSuchFileException e){
+                return;
+            }catch (IOException e){
+                result.failed(dir, e);
+            }catch (DirectoryIteratorException e){
+                result.failed(dir, e.getCause());
+            }
+
+            for(Path p : files)
+                unlink(p, result);
+            for(RecursiveAction t : tasks)
+                t.join();
+
+            /* left in place, not empty, if anything below it failed */
+            result.pace();
+            try{
+                Files.delete(dir);
+                result.directories.incrementAndGet();
+            }catch (NoSuchFileException e){
+                /* gone already */
+            }catch (IOException e){
+                result.failed(dir, e);
+            }
+        }
+
+        static RecursiveAction fork(RecursiveAction t){
+            t.fork();
+            return t;
+        }
+    }
+
+    /* a chunk of files of one directory */
+    static class Unlink extends RecursiveAction{
+        private static final long serialVersionUID=1L;
+
+        final List<Path> files;
+        final Result result;
+
+        Unlink(List<Path> files,Result result){
+            this.files=files;
+            this.result=result;
+        }
+
+        protected void compute(){
+            for(Path p : files)
+                unlink(p, result);
+        }
+    }
+
+    public String toString(){
+        return "parallelism="+getPool().getParallelism();
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Where distribute puts the files of one directory, worked out on the client.
+ *
+ * distribute hashes a file name with gf_dm_hashfn and stores the file on the
+ * subvolume whose range in the parent directory's layout holds the hash.  The
+ * per brick ranges (trusted.glusterfs.dht) are stripped from getxattr replies
+ * on the mount, so this uses the layout distribute gives a new directory:
+ * subvolumes sorted by name, equal ranges, the first range going to subvolume
+ * hash(directory path) % count.  Directories laid out differently (weighted
+ * or rebalanced layouts, added bricks) don't match it, which is why
+ * GlusterFSDhtPlacement checks the result against real pathinfo first.
+ */
+public class GlusterFSDhtLayout{
+
+    private static final int DM_DELTA=0x9E3779B9;
+    private static final int DM_FULLROUNDS=10;
+    private static final int DM_PARTROUNDS=6;
+
+    private static final Charset UTF8=Charset.forName("UTF-8");
+
+    /* distribute's default rsync-hash-regex, ".name.XXXXXX" hashes as "name" */
+    private static final Pattern RSYNC_TEMP=Pattern.compile("^\\.(.+)\\.[^.]+$");
+
+    private final String dhtName;
+    /* subvolumes in hash range order */
+    private final GlusterFSLayout.Node[] ranges;
+    private final long chunk;
+
+    GlusterFSDhtLayout(String dhtName,List<GlusterFSLayout.Node> sorted,int first){
+        int cnt=sorted.size();
+
+        this.dhtName=dhtName;
+        this.ranges=new GlusterFSLayout.Node[cnt];
+        this.chunk=0xffffffffL/cnt;
+        for(int i=0;i<cnt;i++)
+            ranges[i]=sorted.get((first+i)%cnt);
+    }
+
+    /**
+     * Default layout of a directory from its pathinfo, or null if the
+     * pathinfo isn't from a directory (or a volume) this can handle.
+     * volumePath is the directory's path from the volume root, e.g. /user/x.
+     */
+    public static GlusterFSDhtLayout forDirectory(GlusterFSLayout dir,String volumePath){
+        GlusterFSLayout.Node root=dir.getRoot();
+        List<GlusterFSLayout.Node> children=root.getChildren();
+        List<GlusterFSLayout.Node> subvols=new ArrayList<GlusterFSLayout.Node>();
+        List<Integer> order=new ArrayList<Integer>();
+        final String[] keys=new String[children.size()];
+
+        if(root.getType()!=GlusterFSLayout.Type.DISTRIBUTE){
+            subvols.add(root);
+            return new GlusterFSDhtLayout(null, subvols, 0);
+        }
+        if(children.isEmpty())
+            return null;
+
+        /* children are sorted by xlator name; plain bricks are client-N in volfile (pathinfo) order */
+        for(int i=0;i<keys.length;i++){
+            GlusterFSLayout.Node c=children.get(i);
+            keys[i]=c.getType()==GlusterFSLayout.Type.BRICK ? String.valueOf(i) : c.getName();
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>(){
+            public int compare(Integer a,Integer b){
+                return keys[a].compareTo(keys[b]);
+            }
+        });
+        for(Integer i : order)
+            subvols.add(children.get(i));
+
+        return new GlusterFSDhtLayout(root.getName(), subvols, (int) (hash(volumePath)%subvols.size()));
+    }
+
+    /* subvolume the named file hashes to */
+    public GlusterFSLayout.Node subvolumeOf(String name){
+        long h=hash(hashName(name));
+        return ranges[(int) Math.min(h/chunk, ranges.length-1)];
+    }
+
+    /* layout of a file in the directory, as pathinfo of the file would describe it */
+    public GlusterFSLayout layoutOf(String name){
+        GlusterFSLayout.Node file=GlusterFSLayout.childOf(subvolumeOf(name), name);
+
+        if(dhtName==null)
+            return new GlusterFSLayout(file);
+        return new GlusterFSLayout(new GlusterFSLayout.Translator(GlusterFSLayout.Type.DISTRIBUTE, dhtName, Collections.singletonList(file)));
+    }
+
+    public int getSubvolumeCount(){
+        return ranges.length;
+    }
+
+    static String hashName(String name){
+        Matcher m=RSYNC_TEMP.matcher(name);
+        return m.matches() ? m.group(1) : name;
+    }
+
+    public static long hash(String s){
+        return hash(s.getBytes(UTF8));
+    }
+
+    /* gf_dm_hashfn: Davies-Meyer over TEA, words read little endian, as an unsigned 32 bit value */
+    public static long hash(byte[] msg){
+        int len=msg.length;
+        int[] h={0x9464a485, 0x542e1a94};
+        int[] array=new int[4];
+        int pad=len|(len<<8);
+        int fullWords=len/4;
+        int fullBytes=len;
+        int off=0;
+
+        pad|=pad<<16;
+
+        for(int q=0;q<len/16;q++){
+            for(int j=0;j<4;j++){
+                array[j]=word(msg, off);
+                off+=4;
+                fullWords--;
+                fullBytes-=4;
+            }
+            round(DM_PARTROUNDS, array, h);
+        }
+
+        for(int j=0;j<4;j++){
+            if(fullWords>0){
+                array[j]=word(msg, off);
+                off+=4;
+                fullWords--;
+                fullBytes-=4;
+            }else{
+                array[j]=pad;
+                /* C char is signed, so are these bytes */
+                while (fullBytes>0){
+                    array[j]<<=8;
+                    array[j]|=msg[len-fullBytes];
+                    fullBytes--;
+                }
+            }
+        }
+        round(DM_FULLROUNDS, array, h);
+
+        return (h[0]^h[1])&0xffffffffL;
+    }
+
+    private static void round(int rounds,int[] array,int[] h){
+        int sum=0;
+        int b0=h[0];
+        int b1=h[1];
+
+        for(int n=0;n<rounds;n++){
+            sum+=DM_DELTA;
+            b0+=((b1<<4)+array[0])^(b1+sum)^((b1>>>5)+array[1]);
+            b1+=((b0<<4)+array[2])^(b0+sum)^((b0>>>5)+array[3]);
+        }
+        h[0]+=b0;
+        h[1]+=b1;
+    }
+
+    private static int word(byte[] b,int off){
+        return (b[off]&0xff)|(b[off+1]&0xff)<<8|(b[off+2]&0xff)<<16|(b[off+3]&0xff)<<24;
+    }
+
+    public String toString(){
+        StringBuilder s=new StringBuilder("dht layout "+dhtName+":");
+        for(int i=0;i<ranges.length;i++)
+            s.append(" ").append(Long.toHexString(i*chunk)).append("=").append(ranges[i].getName());
+        return s.toString();
+    }
+}
@@ -0,0 +1,293 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Places files by hashing their names against their directory's layout, so
+ * the locations of every file in a directory cost one pathinfo read of the
+ * directory instead of one per file.
+ *
+ * The computed layout is only trusted once it agreed with the real pathinfo
+ * of verifyCount files of the directory.  Until then those files are looked
+ * up for real; after the first disagreement (a rebalanced or non default
+ * layout, a renamed file living behind a linkto) the whole directory goes
+ * back to per file lookups.  Files renamed through this JVM are always looked
+ * up for real.
+ *
+ * Trust lasts while the directory's modification time stays what it was
+ * when its layout was read, and at most the ttl: any client creating,
+ * removing or renaming an entry in it changes the time, and the directory
+ * is read and verified again the next time files in it are placed.
+ */
+public class GlusterFSDhtPlacement{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSDhtPlacement.class);
+
+    public static final int DEFAULT_MAX_DIRS=1024;
+    public static final int DEFAULT_VERIFY=4;
+
+    static class Dir{
+        /* 0 for a directory only renamed() knows of, its layout isn't read yet */
+        final long loaded;
+        /* the directory's modification time before its layout was read */
+        final long mtime;
+        /* null if the directory can't be placed client side */
+        final GlusterFSDhtLayout dht;
+        final Set<String> renamed;
+        int matches=0;
+        boolean trusted=false;
+
+        Dir(long loaded,long mtime,GlusterFSDhtLayout dht,Set<String> renamed){
+            this.loaded=loaded;
+            this.mtime=mtime;
+            this.dht=dht;
+            this.renamed=renamed;
+        }
+    }
+
+    private boolean enabled=false;
+    private int maxDirs=DEFAULT_MAX_DIRS;
+    private long ttl=GlusterFSLayoutCache.DEFAULT_TTL;
+    private int verifyCount=DEFAULT_VERIFY;
+
+    private final AtomicLong placed=new AtomicLong();
+    private final AtomicLong looked=new AtomicLong();
+    private final AtomicLong mismatches=new AtomicLong();
+
+    private final LinkedHashMap<String, Dir> dirs=new LinkedHashMap<String, Dir>(16, 0.75f, true){
+        private static final long serialVersionUID=1L;
+
+        protected boolean removeEldestEntry(Map.Entry<String, Dir> eldest){
+            if(size()>maxDirs){
+                String path=eldest.getKey();
+                remove(path);
+                index.removed(path);
+            }
+            return false;
+        }
+    };
+    private final GlusterFSPathIndex index=new GlusterFSPathIndex(dirs);
+
+    public synchronized void configure(boolean enabled,int maxDirs,long ttl,int verifyCount){
+        this.enabled=enabled;
+        this.maxDirs=maxDirs;
+        this.ttl=ttl;
+        this.verifyCount=Math.max(verifyCount, 0);
+        dirs.clear();
+        index.clear();
+    }
+
+    public synchronized boolean isEnabled(){
+        return enabled&&maxDirs>0;
+    }
+
+    /**
+     * Layouts of files in one directory.  dir is the directory on the mount,
+     * volumePath the same directory from the volume root, files are paths on
+     * the mount.  Files the directory can't vouch for are left out.
+     */
+    public Map<String, GlusterFSLayout> place(GlusterFSXattr attr,String dir,String volumePath,List<String> files) throws IOException{
+        Map<String, GlusterFSLayout> result=new HashMap<String, GlusterFSLayout>();
+        Dir d=getDir(attr, dir, volumePath);
+        List<String> samples=new ArrayList<String>();
+
+        if(d.dht==null)
+            return result;
+
+        synchronized (d){
+            if(!d.trusted){
+                for(int i=0;i<files.size()&&samples.size()<verifyCount-d.matches;i++){
+                    if(!d.renamed.contains(nameOf(files.get(i))))
+                        samples.add(files.get(i));
+                }
+            }
+        }
+
+        if(!samples.isEmpty()){
+            Map<String, GlusterFSLayout> real=attr.getLayouts(samples);
+            boolean mismatch=false;
+
+            looked.addAndGet(samples.size());
+            result.putAll(real);
+            synchronized (d){
+                for(String f : samples){
+                    GlusterFSLayout l=real.get(f);
+                    if(l==null)
+                        continue;
+                    if(!l.sameBricks(d.dht.layoutOf(nameOf(f)))){
+                        log.debug("dht placement of "+f+" doesn't match pathinfo, looking up "+dir+" per file");
+                        mismatch=true;
+                        break;
+                    }
+                    d.matches++;
+                }
+                d.trusted=!mismatch&&d.matches>=verifyCount;
+            }
+            if(mismatch){
+                mismatches.incrementAndGet();
+                distrust(dir, d);
+                return result;
+            }
+        }
+
+        synchronized (d){
+            if(!d.trusted)
+                return result;
+            for(String f : files){
+                String name=nameOf(f);
+                if(!result.containsKey(f)&&!d.renamed.contains(name)){
+                    result.put(f, d.dht.layoutOf(name));
+                    placed.incrementAndGet();
+                }
+            }
+        }
+        return result;
+    }
+
+    private Dir getDir(GlusterFSXattr attr,String dir,String volumePath) throws IOException{
+        Set<String> renamed=new HashSet<String>();
+        long mtime=new File(dir).lastModified();
+        Dir d=null;
+
+        synchronized (this){
+            d=dirs.get(dir);
+            if(d!=null&&d.loaded>0&&d.mtime==mtime&&(ttl<=0||System.currentTimeMillis()-d.loaded<=ttl))
+                return d;
+            /* what was renamed through this JVM still doesn't hash right */
+            if(d!=null){
+                synchronized (d){
+                    renamed.addAll(d.renamed);
+                }
+            }
+        }
+
+        GlusterFSDhtLayout dht=null;
+        try{
+            dht=GlusterFSDhtLayout.forDirectory(attr.getLayout(dir), volumePath);
+        }catch (IOException e){
+            log.debug("Cannot get layout of directory "+dir+": "+e.getMessage());
+        }
+        looked.incrementAndGet();
+
+        d=new Dir(System.currentTimeMillis(), mtime, dht, renamed);
+        d.trusted=verifyCount==0;
+        synchronized (this){
+            index.add(dir);
+            dirs.put(dir, d);
+        }
+        return d;
+    }
+
+    /* a directory that failed verification stays in the cache, unplaceable, until it changes or expires */
+    private synchronized void distrust(String dir,Dir d){
+        if(dirs.get(dir)==d)
+            dirs.put(dir, new Dir(d.loaded, d.mtime, null, d.renamed));
+    }
+
+    /* a file renamed into a directory isn't where its name hashes to */
+    public void renamed(String path){
+        String dir=GlusterFSPathIndex.parent(path);
+        Dir d=null;
+
+        if(dir==null)
+            return;
+        synchronized (this){
+            if(!isEnabled())
+                return;
+            d=dirs.get(dir);
+            if(d==null){
+                /* kept for when the directory is placed */
+                d=new Dir(0, 0, null, new HashSet<String>());
+                index.add(dir);
+                dirs.put(dir, d);
+            }
+        }
+        synchronized (d){
+            d.renamed.add(nameOf(path));
+        }
+    }
+
+    /* drop a directory and everything below it, but what was renamed into them */
+    public synchronized void invalidate(String path){
+        List<String> paths=index.below(path);
+        Map<String, Dir> kept=new HashMap<String, Dir>();
+        paths.add(path);
+        for(String p : paths){
+            Dir d=dirs.remove(p);
+            if(d==null)
+                continue;
+            synchronized (d){
+                /* layouts go, renamed files still don't hash right */
+                if(!d.renamed.isEmpty())
+                    kept.put(p, new Dir(0, 0, null, new HashSet<String>(d.renamed)));
+            }
+        }
+        index.removed(path);
+        for(Map.Entry<String, Dir> e : kept.entrySet()){
+            index.add(e.getKey());
+            dirs.put(e.getKey(), e.getValue());
+        }
+    }
+
+    public synchronized void clear(){
+        dirs.clear();
+        index.clear();
+    }
+
+    public synchronized int size(){
+        return dirs.size();
+    }
+
+    /* files placed without a lookup */
+    public long getPlaced(){
+        return placed.get();
+    }
+
+    /* pathinfo reads of directories and verification samples */
+    public long getLookups(){
+        return looked.get();
+    }
+
+    public long getMismatches(){
+        return mismatches.get();
+    }
+
+    private static String nameOf(String path){
+        return path.substring(path.lastIndexOf('/')+1);
+    }
+
+    public String toString(){
+        return "dht placement: enabled="+enabled+" dirs="+size()+" placed="+getPlaced()+" lookups="+getLookups()+" mismatches="+getMismatches();
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+
+/**
+ * O_DIRECT streams for files read or written once in bulk, so a large scan
+ * doesn't push the data everyone else reads out of the page cache.  On a
+ * host that also serves bricks a byte read through the mount is cached
+ * twice, under the brick and under the FUSE client; a direct stream leaves
+ * the client side alone.
+ *
+ * Streams are opened direct for the paths (the path part of the Hadoop path)
+ * matching a pattern, and move data through off-heap buffers aligned to
+ * alignment, which is what O_DIRECT requires of buffers, offsets and
+ * lengths.  The last partial block of a file written is written after
+ * turning O_DIRECT off on the descriptor.  When the mount refuses O_DIRECT
+ * (EINVAL, on open or on the first transfer) the file is opened, or the
+ * descriptor goes on, the ordinary way; getFallbacks() counts how often.
+ *
+ * No pattern, or no JNA, disables direct streams.
+ */
+public class GlusterFSDirectIO{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSDirectIO.class);
+
+    public static final int DEFAULT_BUFFER_SIZE=4*1024*1024;
+    public static final int DEFAULT_ALIGNMENT=4096;
+    /* free buffers kept for the next streams */
+    static final int MAX_POOLED=16;
+
+    private Pattern paths=null;
+    private int bufferSize=DEFAULT_BUFFER_SIZE;
+    private int alignment=DEFAULT_ALIGNMENT;
+    private final ArrayDeque<Memory> buffers=new ArrayDeque<Memory>();
+
+    private final AtomicLong opened=new AtomicLong();
+    private final AtomicLong fallbacks=new AtomicLong();
+
+    /* paths is a regular expression, null or empty disables direct streams */
+    public synchronized void configure(String paths,int bufferSize,int alignment){
+        if(Integer.bitCount(alignment)!=1)
+            throw new IllegalArgumentException("Alignment "+alignment+" is not a power of two");
+        this.paths=paths==null||paths.trim().isEmpty() ? null : Pattern.compile(paths.trim());
+        /* whole blocks */
+        int size=Math.max(alignment, (bufferSize+alignment-1)&-alignment);
+        if(size!=this.bufferSize||alignment!=this.alignment)
+            buffers.clear();
+        this.alignment=alignment;
+        this.bufferSize=size;
+    }
+
+    public synchronized boolean isEnabled(){
+        return paths!=null&&GlusterFSNative.isAvailable();
+    }
+
+    /* whether streams of path are opened direct */
+    public synchronized boolean accepts(String path){
+        return isEnabled()&&paths.matcher(path).matches();
+    }
+
+    public synchronized int getBufferSize(){
+        return bufferSize;
+    }
+
+    public synchronized int getAlignment(){
+        return alignment;
+    }
+
+    /* f read direct, null if the file system won't open it that way */
+    public GlusterFSDirectInputStream open(File f,FileSystem.Statistics statistics) throws IOException{
+        int fd=open(f, GlusterFSNative.O_RDONLY);
+        if(fd<0)
+            return null;
+        return new GlusterFSDirectInputStream(this, f, fd, statistics);
+    }
+
+    /* f created, or truncated, and written direct, null if the file system won't open it that way */
+    public GlusterFSDirectOutputStream create(File f) throws IOException{
+        int fd=open(f, GlusterFSNative.O_WRONLY|GlusterFSNative.O_CREAT|GlusterFSNative.O_TRUNC);
+        if(fd<0)
+            return null;
+        return new GlusterFSDirectOutputStream(this, f, fd);
+    }
+
+    private int open(File f,int flags) throws IOException{
+        try{
+            int fd=GlusterFSNative.open(f.getPath(), flags|GlusterFSNative.O_DIRECT, 0666);
+            opened.incrementAndGet();
+            return fd;
+        }catch (GlusterFSNative.ErrnoException e){
+            switch (e.getErrno()){
+            case GlusterFSNative.EINVAL:
+                if(fallbacks.getAndIncrement()==0)
+                    log.info("O_DIRECT refused for "+f+", opening files the ordinary way");
+                return -1;
+            case GlusterFSNative.ENOENT:
+            case GlusterFSNative.EACCES:
+            case GlusterFSNative.EISDIR:
+                /* as FileInputStream and FileOutputStream report them */
+                throw new FileNotFoundException(f+" ("+e.getMessage()+")");
+            default:
+                throw e;
+            }
+        }
+    }
+
+    /* like pread(2), going on without O_DIRECT if the file system refuses the transfer */
+    long pread(int fd,Pointer buf,long count,long offset) throws IOException{
+        try{
+            return GlusterFSNative.pread(fd, buf, count, offset);
+        }catch (GlusterFSNative.ErrnoException e){
+            if(e.getErrno()!=GlusterFSNative.EINVAL||!undirect(fd))
+                throw e;
+            fallbacks.incrementAndGet();
+            return GlusterFSNative.pread(fd, buf, count, offset);
+        }
+    }
+
+    long pwrite(int fd,Pointer buf,long count,long offset) throws IOException{
+        try{
+            return GlusterFSNative.pwrite(fd, buf, count, offset);
+        }catch (GlusterFSNative.ErrnoException e){
+            if(e.getErrno()!=GlusterFSNative.EINVAL||!undirect(fd))
+                throw e;
+            fallbacks.incrementAndGet();
+            return GlusterFSNative.pwrite(fd, buf, count, offset);
+        }
+    }
+
+    /* turns O_DIRECT off on fd, false if it was already */
+    boolean undirect(int fd) throws IOException{
+        int flags=GlusterFSNative.fcntl(fd, GlusterFSNative.F_GETFL, 0);
+        if((flags&GlusterFSNative.O_DIRECT)==0)
+            return false;
+        GlusterFSNative.fcntl(fd, GlusterFSNative.F_SETFL, flags&~GlusterFSNative.O_DIRECT);
+        return true;
+    }
+
+    /* turns O_DIRECT back on after undirect */
+    void direct(int fd) throws IOException{
+        int flags=GlusterFSNative.fcntl(fd, GlusterFSNative.F_GETFL, 0);
+        GlusterFSNative.fcntl(fd, GlusterFSNative.F_SETFL, flags|GlusterFSNative.O_DIRECT);
+    }
+
+    /* an aligned buffer of getBufferSize() bytes */
+    synchronized Memory allocate(){
+        Memory m=buffers.poll();
+        if(m==null)
+            m=new Memory(bufferSize+alignment).align(alignment);
+        return m;
+    }
+
+    /* a buffer back from a stream that took it when buffers were size bytes aligned to alignment */
+    synchronized void release(Memory m,int size,int alignment){
+        if(size==bufferSize&&alignment==this.alignment&&buffers.size()<MAX_POOLED)
+            buffers.push(m);
+    }
+
+    /* files opened with O_DIRECT */
+    public long getOpened(){
+        return opened.get();
+    }
+
+    /* files or transfers O_DIRECT was refused for */
+    public long getFallbacks(){
+        return fallbacks.get();
+    }
+
+    public synchronized String toString(){
+        return "direct I/O paths="+paths+" buffer="+bufferSize+" alignment="+alignment+" opened="+getOpened()+" fallbacks="+getFallbacks();
+    }
+}
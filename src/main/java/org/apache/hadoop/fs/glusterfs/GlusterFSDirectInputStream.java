@@ -0,0 +1,154 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileSystem;
+
+import com.sun.jna.Memory;
+
+/**
+ * Reads a file opened with O_DIRECT, a buffer of aligned blocks at a time.
+ * Positional reads go through the buffer as well (FSInputStream's seek,
+ * read, seek back), the buffer being the only memory O_DIRECT can read into.
+ */
+public class GlusterFSDirectInputStream extends FSInputStream{
+
+    private final GlusterFSDirectIO directIO;
+    private final File file;
+    private final int fd;
+    private final FileSystem.Statistics statistics;
+    private final Memory buffer;
+    private final int bufferSize;
+    private final int alignment;
+    /* file offset of buffer[0], and how much of buffer is valid */
+    private long bufferStart=0;
+    private int bufferLength=0;
+    private long position=0;
+    private boolean closed=false;
+
+    GlusterFSDirectInputStream(GlusterFSDirectIO directIO,File file,int fd,FileSystem.Statistics statistics){
+        this.directIO=directIO;
+        this.file=file;
+        this.fd=fd;
+        this.statistics=statistics;
+        synchronized (directIO){
+            this.bufferSize=directIO.getBufferSize();
+            this.alignment=directIO.getAlignment();
+            this.buffer=directIO.allocate();
+        }
+    }
+
+    /* the file actually being read */
+    public File getFile(){
+        return file;
+    }
+
+    /* takes effect at the next read */
+    public synchronized void seek(long pos) throws IOException{
+        if(pos<0)
+            throw new EOFException("Cannot seek to negative offset "+pos);
+        this.position=pos;
+    }
+
+    public synchronized long getPos() throws IOException{
+        return position;
+    }
+
+    public boolean seekToNewSource(long targetPos) throws IOException{
+        return false;
+    }
+
+    public synchronized int available() throws IOException{
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, file.length()-position));
+    }
+
+    public synchronized void close() throws IOException{
+        if(closed)
+            return;
+        closed=true;
+        directIO.release(buffer, bufferSize, alignment);
+        GlusterFSNative.close(fd);
+    }
+
+    public boolean markSupported(){
+        return false;
+    }
+
+    public synchronized int read() throws IOException{
+        if(buffered()==0&&fill()==0)
+            return -1;
+        int value=buffer.getByte(position-bufferStart)&0xff;
+        position++;
+        if(statistics!=null)
+            statistics.incrementBytesRead(1);
+        return value;
+    }
+
+    public synchronized int read(byte[] b,int off,int len) throws IOException{
+        if(len==0)
+            return 0;
+        int n=buffered();
+        if(n==0&&(n=fill())==0)
+            return -1;
+        n=Math.min(n, len);
+        buffer.read(position-bufferStart, b, off, n);
+        position+=n;
+        if(statistics!=null)
+            statistics.incrementBytesRead(n);
+        return n;
+    }
+
+    public synchronized long skip(long n) throws IOException{
+        if(n<=0)
+            return 0;
+        position+=n;
+        return n;
+    }
+
+    /* bytes of the buffer at position */
+    private int buffered(){
+        if(position<bufferStart||position>=bufferStart+bufferLength)
+            return 0;
+        return (int) (bufferStart+bufferLength-position);
+    }
+
+    /* reads the blocks around position, 0 at the end of the file */
+    private int fill() throws IOException{
+        if(closed)
+            throw new IOException("Stream closed");
+        bufferStart=position&-alignment;
+        bufferLength=0;
+        while (bufferLength<bufferSize){
+            long n=directIO.pread(fd, buffer.share(bufferLength), bufferSize-bufferLength, bufferStart+bufferLength);
+            if(n<=0)
+                break;
+            bufferLength+=n;
+            /* only the end of the file comes short of a block */
+            if(bufferLength%alignment!=0)
+                break;
+        }
+        return buffered();
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.sun.jna.Memory;
+
+/**
+ * Writes a file opened with O_DIRECT a buffer of aligned blocks at a time.
+ * flush() writes the whole blocks buffered, and the partial block after
+ * them with O_DIRECT turned off for the write, so hflush and hsync make
+ * every byte visible.  The partial block stays buffered and is written
+ * again, direct, once it fills up; at close it's written with O_DIRECT off.
+ */
+public class GlusterFSDirectOutputStream extends OutputStream{
+
+    private final GlusterFSDirectIO directIO;
+    private final File file;
+    private final int fd;
+    private final Memory buffer;
+    private final int bufferSize;
+    private final int alignment;
+    /* bytes in buffer, and the file offset of buffer[0] */
+    private int count=0;
+    private long offset=0;
+    private boolean closed=false;
+
+    GlusterFSDirectOutputStream(GlusterFSDirectIO directIO,File file,int fd){
+        this.directIO=directIO;
+        this.file=file;
+        this.fd=fd;
+        synchronized (directIO){
+            this.bufferSize=directIO.getBufferSize();
+            this.alignment=directIO.getAlignment();
+            this.buffer=directIO.allocate();
+        }
+    }
+
+    /* the file actually being written */
+    public File getFile(){
+        return file;
+    }
+
+    public synchronized void write(int b) throws IOException{
+        ensureOpen();
+        buffer.setByte(count++, (byte) b);
+        if(count==bufferSize)
+            drain(count);
+    }
+
+    public synchronized void write(byte[] b,int off,int len) throws IOException{
+        ensureOpen();
+        while (len>0){
+            int n=Math.min(len, bufferSize-count);
+            buffer.write(count, b, off, n);
+            count+=n;
+            off+=n;
+            len-=n;
+            if(count==bufferSize)
+                drain(count);
+        }
+    }
+
+    /* writes everything buffered, the partial block at the end too */
+    public synchronized void flush() throws IOException{
+        ensureOpen();
+        drainBlocks();
+        if(count==0)
+            return;
+        /* a partial block can't be written direct */
+        boolean direct=directIO.undirect(fd);
+        try{
+            pwrite(count);
+        }finally{
+            if(direct)
+                directIO.direct(fd);
+        }
+    }
+
+    public synchronized void close() throws IOException{
+        if(closed)
+            return;
+        try{
+            drainBlocks();
+            if(count>0){
+                /* a partial block can't be written direct */
+                directIO.undirect(fd);
+                drain(count);
+            }
+        }finally{
+            closed=true;
+            directIO.release(buffer, bufferSize, alignment);
+            GlusterFSNative.close(fd);
+        }
+    }
+
+    /* writes the whole blocks buffered, keeping the partial one after them */
+    private void drainBlocks() throws IOException{
+        int blocks=count&-alignment;
+        if(blocks==0)
+            return;
+        int tail=count-blocks;
+        drain(blocks);
+        if(tail>0){
+            buffer.write(0, buffer.getByteArray(blocks, tail), 0, tail);
+            count=tail;
+        }
+    }
+
+    /* writes the first len bytes of the buffer at offset and empties it */
+    private void drain(int len) throws IOException{
+        pwrite(len);
+        offset+=len;
+        count=0;
+    }
+
+    /* writes the first len bytes of the buffer at offset */
+    private void pwrite(int len) throws IOException{
+        long done=0;
+        while (done<len){
+            long n=directIO.pwrite(fd, buffer.share(done), len-done, offset+done);
+            if(n<=0)
+                throw new IOException("Short write to "+file+" at "+(offset+done));
+            done+=n;
+        }
+    }
+
+    private void ensureOpen() throws IOException{
+        if(closed)
+            throw new IOException("Stream closed");
+    }
+}
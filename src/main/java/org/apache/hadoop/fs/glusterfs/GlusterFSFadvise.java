@@ -0,0 +1,162 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * posix_fadvise hints for streams of the mount, so the page cache holds what
+ * is read again rather than what a scan went through once:
+ *
+ *   sequential  POSIX_FADV_SEQUENTIAL when a stream opens, the kernel reads
+ *               ahead further
+ *   willNeed    POSIX_FADV_WILLNEED on that many bytes from where a stream
+ *               starts reading after opening or seeking, which for a task is
+ *               the start of its split
+ *   dropBehind  POSIX_FADV_DONTNEED when a stream closes, on the range it
+ *               read or wrote (written pages are clean on a FUSE mount,
+ *               writes go through to gluster)
+ *
+ * These are the defaults; a stream's own setReadahead and setDropBehind
+ * (through FSDataInputStream and FSDataOutputStream) override them.  Hints
+ * are only hints: when JNA is missing or a call fails nothing changes but
+ * the page cache.
+ */
+public class GlusterFSFadvise{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSFadvise.class);
+
+    /* no defaults, for streams the volume didn't configure */
+    public static final GlusterFSFadvise NONE=new GlusterFSFadvise();
+
+    private boolean sequential=false;
+    private long willNeed=0;
+    private boolean dropBehind=false;
+
+    private final AtomicLong advised=new AtomicLong();
+    private final AtomicLong failures=new AtomicLong();
+
+    public synchronized void configure(boolean sequential,long willNeed,boolean dropBehind){
+        this.sequential=sequential;
+        this.willNeed=Math.max(0, willNeed);
+        this.dropBehind=dropBehind;
+    }
+
+    public synchronized boolean isSequential(){
+        return sequential;
+    }
+
+    public synchronized long getWillNeed(){
+        return willNeed;
+    }
+
+    public synchronized boolean isDropBehind(){
+        return dropBehind;
+    }
+
+    /* hints for a stream of f, through descriptor if the JVM gives its number away */
+    public Hints hints(File f,FileDescriptor descriptor){
+        return new Hints(f, descriptor);
+    }
+
+    /**
+     * One stream's hints.  When the stream's descriptor number can't be had
+     * (java.io is closed to reflection on newer JVMs) a descriptor of its
+     * own is opened on the file for WILLNEED and DONTNEED, which act on the
+     * file's page cache every descriptor shares.  SEQUENTIAL only applies to
+     * the descriptor it's given on and is skipped then.
+     */
+    public class Hints{
+        private final File file;
+        private final FileDescriptor descriptor;
+        private int fd=-2;
+        private boolean owned=false;
+
+        Hints(File file,FileDescriptor descriptor){
+            this.file=file;
+            this.descriptor=descriptor;
+        }
+
+        /* false if the hint couldn't be given */
+        public synchronized boolean advise(long offset,long len,int advice){
+            if(!GlusterFSNative.isAvailable())
+                return false;
+            try{
+                if(fd==-2)
+                    resolve(advice);
+                if(fd<0||owned&&advice==GlusterFSNative.POSIX_FADV_SEQUENTIAL)
+                    return false;
+                GlusterFSNative.fadvise(fd, offset, len, advice);
+                advised.incrementAndGet();
+                return true;
+            }catch (IOException e){
+                failures.incrementAndGet();
+                log.debug("posix_fadvise "+advice+" on "+file+" failed: "+e.getMessage());
+                return false;
+            }
+        }
+
+        /* left unresolved by a SEQUENTIAL the stream's descriptor can't be had for */
+        private void resolve(int advice) throws IOException{
+            int n=GlusterFSNative.descriptor(descriptor);
+            if(n>=0){
+                fd=n;
+                return;
+            }
+            if(advice==GlusterFSNative.POSIX_FADV_SEQUENTIAL)
+                return;
+            fd=-1;
+            fd=GlusterFSNative.open(file.getPath(), GlusterFSNative.O_RDONLY, 0);
+            owned=true;
+        }
+
+        /* before the stream's descriptor is closed */
+        public synchronized void close(){
+            if(owned&&fd>=0){
+                try{
+                    GlusterFSNative.close(fd);
+                }catch (IOException e){
+                    log.debug("Closing hint descriptor of "+file+" failed: "+e.getMessage());
+                }
+            }
+            fd=-1;
+        }
+    }
+
+    /* hints given */
+    public long getAdvised(){
+        return advised.get();
+    }
+
+    /* hints the kernel refused */
+    public long getFailures(){
+        return failures.get();
+    }
+
+    public synchronized String toString(){
+        return "fadvise sequential="+sequential+" willneed="+willNeed+" dontneed="+dropBehind+" advised="+getAdvised()+" failures="+getFailures();
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads pathinfo by forking the configured getfattr command (by default
+ * through sudo, see 20_glusterfs_hadoop_sudoers).  Only used when
+ * fs.glusterfs.getfattrcmd is set or the in-process reader is unavailable.
+ *
+ * getfattr takes any number of files, so bulk lookups pass up to batchSize
+ * paths per process and split the output on its "# file:" headers.
+ */
+public class GlusterFSGetfattrPathInfo implements GlusterFSPathInfoProvider{
+
+    public static final String DEFAULT_GETFATTR_CMD="sudo getfattr -m . -n trusted.glusterfs.pathinfo";
+    public static final int DEFAULT_BATCH_SIZE=256;
+
+    private static final String FILE_HEADER="# file: ";
+
+    private String getFattrCmdBase=null;
+    private String[] cmd=null;
+    private int batchSize=DEFAULT_BATCH_SIZE;
+
+    public GlusterFSGetfattrPathInfo(String getAttr){
+        getFattrCmdBase=getAttr;
+        cmd=getAttr.trim().split("\\s+");
+    }
+
+    public GlusterFSGetfattrPathInfo(){
+        this(DEFAULT_GETFATTR_CMD);
+    }
+
+    public void setBatchSize(int batchSize){
+        this.batchSize=Math.max(1, batchSize);
+    }
+
+    public int getBatchSize(){
+        return batchSize;
+    }
+
+    public String getPathInfo(String filename) throws IOException{
+        String value=getPathInfo(Collections.singletonList(filename)).get(filename);
+        return value==null ? "" : value;
+    }
+
+    public Map<String, String> getPathInfo(List<String> filenames) throws IOException{
+        Map<String, String> result=new HashMap<String, String>();
+
+        for(int i=0;i<filenames.size();i+=batchSize)
+            exec(filenames.subList(i, Math.min(i+batchSize, filenames.size())), result);
+
+        return result;
+    }
+
+    private void exec(List<String> filenames,Map<String, String> result) throws IOException{
+        Process p=null;
+        BufferedReader brInput=null;
+        String s=null;
+        String current=null;
+        Map<String, String> byName=new HashMap<String, String>();
+        List<String> args=new ArrayList<String>(Arrays.asList(cmd));
+
+        for(String f : filenames){
+            args.add(f);
+            byName.put(stripSlashes(f), f);
+        }
+
+        /* errors for single files are interleaved with, and told apart from, the output below */
+        p=new ProcessBuilder(args).redirectErrorStream(true).start();
+        try{
+            brInput=new BufferedReader(new InputStreamReader(p.getInputStream(), "UTF-8"));
+            while ((s=brInput.readLine())!=null){
+                if(s.startsWith(FILE_HEADER)){
+                    current=byName.get(stripSlashes(unescape(s.substring(FILE_HEADER.length()))));
+                }else if(s.indexOf("=\"")>0){
+                    /* don't depend on matching the header when there's only one file */
+                    if(current==null&&filenames.size()==1)
+                        current=filenames.get(0);
+                    if(current!=null&&!result.containsKey(current))
+                        result.put(current, s);
+                }
+            }
+        }finally{
+            if(brInput!=null)
+                brInput.close();
+            p.getOutputStream().close();
+            p.destroy();
+        }
+    }
+
+    private static String stripSlashes(String name){
+        int i=0;
+        while (i<name.length()&&name.charAt(i)=='/')
+            i++;
+        return name.substring(i);
+    }
+
+    /* getfattr prints unusual bytes in file names as \ooo and backslashes as \\ */
+    static String unescape(String name) throws IOException{
+        if(name.indexOf('\\')<0)
+            return name;
+
+        ByteArrayOutputStream bytes=new ByteArrayOutputStream(name.length());
+        int i=0;
+        while (i<name.length()){
+            int next=name.indexOf('\\', i);
+            if(next<0)
+                next=name.length();
+            bytes.write(name.substring(i, next).getBytes("UTF-8"));
+            i=next;
+
+            if(i>=name.length())
+                break;
+            if(isOctal(name, i+1)){
+                bytes.write(Integer.parseInt(name.substring(i+1, i+4), 8));
+                i+=4;
+            }else if(i+1<name.length()&&name.charAt(i+1)=='\\'){
+                bytes.write('\\');
+                i+=2;
+            }else{
+                bytes.write('\\');
+                i++;
+            }
+        }
+        return bytes.toString("UTF-8");
+    }
+
+    private static boolean isOctal(String s,int from){
+        if(from+3>s.length())
+            return false;
+        for(int i=from;i<from+3;i++){
+            if(s.charAt(i)<'0'||s.charAt(i)>'7')
+                return false;
+        }
+        return true;
+    }
+
+    public String toString(){
+        return "getfattr pathinfo ["+getFattrCmdBase+"], "+batchSize+" files per call";
+    }
+}
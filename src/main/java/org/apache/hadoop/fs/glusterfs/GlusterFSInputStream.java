@@ -0,0 +1,268 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.CanSetDropBehind;
+import org.apache.hadoop.fs.CanSetReadahead;
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.HasFileDescriptor;
+
+/**
+ * Reads a file the plugin opened itself, either on the mount or directly on
+ * a local brick, counting bytes read into the file system's statistics.
+ *
+ * Every read is a pread at an offset the stream keeps itself, so a seek is
+ * only remembered until the next read and positional reads don't touch the
+ * stream's state at all: they take no lock and any number of threads can
+ * issue them at once.  Sequential reads go through a buffer of bufferSize
+ * (reads at least that large skip it), so the stream needs no
+ * BufferedFSInputStream around it and read(ByteBuffer) reaches the channel,
+ * straight into direct buffers.  With a GlusterFSReadAhead, sequential reads
+ * are served from windows read ahead once the stream reads in order.
+ *
+ * GlusterFSFadvise gives the page cache hints for the stream; setReadahead
+ * is the range advised WILLNEED where sequential reading starts, and
+ * setDropBehind whether the range read sequentially is advised DONTNEED on
+ * close.
+ */
+public class GlusterFSInputStream extends FSInputStream implements HasFileDescriptor,ByteBufferReadable,CanSetReadahead,CanSetDropBehind{
+
+    public static final int DEFAULT_BUFFER_SIZE=4096;
+
+    private final FileInputStream fis;
+    private final FileChannel channel;
+    private final File file;
+    private final FileSystem.Statistics statistics;
+    private final byte[] buffer;
+    private final GlusterFSReadAhead.Reader readAhead;
+    private final GlusterFSFadvise fadvise;
+    private GlusterFSFadvise.Hints hints=null;
+    /* this stream's own settings, null for the defaults */
+    private Long willNeed=null;
+    private Boolean dropBehind=null;
+    /* range read sequentially, and where the last sequential read ended */
+    private long readFrom=Long.MAX_VALUE;
+    private long readTo=0;
+    private long readEnd=-1;
+    /* file offset of buffer[0], and how much of buffer is valid */
+    private long bufferStart=0;
+    private int bufferLength=0;
+    private long position;
+
+    public GlusterFSInputStream(File file,FileSystem.Statistics statistics) throws IOException{
+        this(file, statistics, DEFAULT_BUFFER_SIZE);
+    }
+
+    public GlusterFSInputStream(File file,FileSystem.Statistics statistics,int bufferSize) throws IOException{
+        this(file, statistics, bufferSize, null);
+    }
+
+    public GlusterFSInputStream(File file,FileSystem.Statistics statistics,int bufferSize,GlusterFSReadAhead readAhead) throws IOException{
+        this(file, statistics, bufferSize, readAhead, GlusterFSFadvise.NONE);
+    }
+
+    public GlusterFSInputStream(File file,FileSystem.Statistics statistics,int bufferSize,GlusterFSReadAhead readAhead,GlusterFSFadvise fadvise) throws IOException{
+        this.fis=new FileInputStream(file);
+        this.channel=fis.getChannel();
+        this.file=file;
+        this.statistics=statistics;
+        this.buffer=new byte[Math.max(1, bufferSize)];
+        this.readAhead=readAhead!=null ? readAhead.open(channel) : null;
+        this.fadvise=fadvise;
+        if(fadvise.isSequential())
+            hints().advise(0, 0, GlusterFSNative.POSIX_FADV_SEQUENTIAL);
+    }
+
+    /* the file actually being read */
+    public File getFile(){
+        return file;
+    }
+
+    /* takes effect at the next read */
+    public synchronized void seek(long pos) throws IOException{
+        if(pos<0)
+            throw new EOFException("Cannot seek to negative offset "+pos);
+        this.position=pos;
+    }
+
+    public synchronized long getPos() throws IOException{
+        return position;
+    }
+
+    public boolean seekToNewSource(long targetPos) throws IOException{
+        return false;
+    }
+
+    public synchronized int available() throws IOException{
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, channel.size()-position));
+    }
+
+    public void close() throws IOException{
+        synchronized (this){
+            if(readAhead!=null)
+                readAhead.drop();
+            if(readTo>readFrom&&(dropBehind!=null ? dropBehind : fadvise.isDropBehind()))
+                hints().advise(readFrom, readTo-readFrom, GlusterFSNative.POSIX_FADV_DONTNEED);
+            if(hints!=null)
+                hints.close();
+        }
+        fis.close();
+    }
+
+    /* bytes advised WILLNEED where sequential reading starts, null for the default */
+    public synchronized void setReadahead(Long readahead){
+        if(readahead!=null&&readahead<0)
+            throw new IllegalArgumentException("Negative readahead "+readahead);
+        this.willNeed=readahead;
+    }
+
+    /* whether what was read is advised DONTNEED on close, null for the default */
+    public synchronized void setDropBehind(Boolean dropBehind){
+        this.dropBehind=dropBehind;
+    }
+
+    public boolean markSupported(){
+        return false;
+    }
+
+    public synchronized int read() throws IOException{
+        if(buffered()==0&&fill()<=0)
+            return -1;
+        int value=buffer[(int) (position-bufferStart)]&0xff;
+        position++;
+        return value;
+    }
+
+    public synchronized int read(byte[] b,int off,int len) throws IOException{
+        if(len==0)
+            return 0;
+        int n=buffered();
+        if(n==0){
+            if(len>=buffer.length){
+                n=next(ByteBuffer.wrap(b, off, len));
+                if(n>0)
+                    position+=n;
+                return n;
+            }
+            if(fill()<=0)
+                return -1;
+            n=buffered();
+        }
+        n=Math.min(n, len);
+        System.arraycopy(buffer, (int) (position-bufferStart), b, off, n);
+        position+=n;
+        return n;
+    }
+
+    /* whatever is buffered at position first, then straight from the channel */
+    public synchronized int read(ByteBuffer buf) throws IOException{
+        int n=Math.min(buffered(), buf.remaining());
+        if(n>0){
+            buf.put(buffer, (int) (position-bufferStart), n);
+            position+=n;
+            return n;
+        }
+        if(!buf.hasRemaining())
+            return 0;
+        n=next(buf);
+        if(n>0)
+            position+=n;
+        return n;
+    }
+
+    public int read(long position,byte[] b,int off,int len) throws IOException{
+        if(len==0)
+            return 0;
+        return pread(ByteBuffer.wrap(b, off, len), position);
+    }
+
+    public synchronized long skip(long n) throws IOException{
+        if(n<=0)
+            return 0;
+        position+=n;
+        return n;
+    }
+
+    public FileDescriptor getFileDescriptor() throws IOException{
+        return fis.getFD();
+    }
+
+    /* bytes of the buffer at position */
+    private int buffered(){
+        if(position<bufferStart||position>=bufferStart+bufferLength)
+            return 0;
+        return (int) (bufferStart+bufferLength-position);
+    }
+
+    private int fill() throws IOException{
+        bufferStart=position;
+        bufferLength=0;
+        int n=next(ByteBuffer.wrap(buffer));
+        if(n>0)
+            bufferLength=n;
+        return n;
+    }
+
+    /* a sequential read at position, through the read-ahead if there is one */
+    private int next(ByteBuffer buf) throws IOException{
+        if(position!=readEnd){
+            long len=willNeed!=null ? willNeed : fadvise.getWillNeed();
+            if(len>0)
+                hints().advise(position, len, GlusterFSNative.POSIX_FADV_WILLNEED);
+        }
+        int n;
+        if(readAhead==null){
+            n=pread(buf, position);
+        }else{
+            n=readAhead.read(buf, position);
+            if(n>0&&statistics!=null)
+                statistics.incrementBytesRead(n);
+        }
+        if(n>0){
+            readFrom=Math.min(readFrom, position);
+            readTo=Math.max(readTo, position+n);
+            readEnd=position+n;
+        }
+        return n;
+    }
+
+    private GlusterFSFadvise.Hints hints() throws IOException{
+        if(hints==null)
+            hints=fadvise.hints(file, fis.getFD());
+        return hints;
+    }
+
+    private int pread(ByteBuffer buf,long pos) throws IOException{
+        int n=channel.read(buf, pos);
+        if(n>0&&statistics!=null)
+            statistics.incrementBytesRead(n);
+        return n;
+    }
+}
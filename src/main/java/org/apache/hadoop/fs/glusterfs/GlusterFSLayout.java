@@ -0,0 +1,392 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.hadoop.fs.BlockLocation;
+
+/**
+ * Parsed pathinfo of one file: the translator tree from the top level
+ * distribute down to the posix bricks.  Immutable, so a layout can be cached
+ * and used to answer block locations for any (start, len) range without
+ * going back to the xattr.
+ *
+ * For a file, distribute only lists the subvolume the file lives on; for a
+ * directory it lists all of them.
+ */
+public class GlusterFSLayout{
+
+    public enum Type {
+        DISTRIBUTE('D'), REPLICATE('R'), STRIPE('S'), DISPERSE('E'), BRICK('B');
+
+        /* letter in GlusterFSXattr.LAYOUT */
+        final char letter;
+
+        Type(char letter){
+            this.letter=letter;
+        }
+    }
+
+    /* bytes of each fragment in one row of a disperse set (EC_METHOD_CHUNK_SIZE) */
+    public static final int DISPERSE_CHUNK_SIZE=512;
+
+    public static abstract class Node{
+        final String name;
+        /* hosts of every brick below this node, in pathinfo order, no duplicates */
+        final String[] hosts;
+
+        Node(String name,String[] hosts){
+            this.name=name;
+            this.hosts=hosts;
+        }
+
+        public abstract Type getType();
+
+        public String getName(){
+            return name;
+        }
+
+        public String[] getHosts(){
+            return hosts.clone();
+        }
+
+        public List<Node> getChildren(){
+            return Collections.emptyList();
+        }
+
+        abstract void collectBricks(List<Brick> out);
+    }
+
+    public static final class Brick extends Node{
+        final String host;
+        final String path;
+
+        Brick(String name,String host,String path){
+            super(name, new String[]{host});
+            this.host=host;
+            this.path=path;
+        }
+
+        public Type getType(){
+            return Type.BRICK;
+        }
+
+        public String getHost(){
+            return host;
+        }
+
+        /* the file's path on the brick's backend filesystem */
+        public String getPath(){
+            return path;
+        }
+
+        void collectBricks(List<Brick> out){
+            out.add(this);
+        }
+
+        public String toString(){
+            return host+":"+path;
+        }
+    }
+
+    public static class Translator extends Node{
+        final Type type;
+        final List<Node> children;
+
+        Translator(Type type,String name,List<Node> children){
+            super(name, hostsOf(children));
+            this.type=type;
+            this.children=Collections.unmodifiableList(new ArrayList<Node>(children));
+        }
+
+        public Type getType(){
+            return type;
+        }
+
+        public List<Node> getChildren(){
+            return children;
+        }
+
+        void collectBricks(List<Brick> out){
+            for(Node c : children)
+                c.collectBricks(out);
+        }
+
+        public String toString(){
+            return "("+type+":"+name+" "+children+")";
+        }
+    }
+
+    public static final class Stripe extends Translator{
+        final long stripeSize;
+
+        Stripe(String name,long stripeSize,List<Node> children){
+            super(Type.STRIPE, name, children);
+            this.stripeSize=stripeSize;
+        }
+
+        public long getStripeSize(){
+            return stripeSize;
+        }
+    }
+
+    /*
+     * Erasure coded set: every file is cut in rows of k*512 bytes, each row
+     * encoded into n fragments, one per child.  Children are kept in brick
+     * order, the first k are counted as data and the rest as redundancy, so
+     * hosts list data fragments first.
+     */
+    public static final class Disperse extends Translator{
+        final int redundancy;
+
+        Disperse(String name,int redundancy,List<Node> children){
+            super(Type.DISPERSE, name, children);
+            this.redundancy=redundancy;
+        }
+
+        public int getRedundancy(){
+            return redundancy;
+        }
+
+        public int getDataCount(){
+            return children.size()-redundancy;
+        }
+
+        /* bytes of file data in one row of fragments */
+        public long getStripeSize(){
+            return (long) getDataCount()*DISPERSE_CHUNK_SIZE;
+        }
+    }
+
+    private final Node root;
+
+    GlusterFSLayout(Node root){
+        this.root=root;
+    }
+
+    public Node getRoot(){
+        return root;
+    }
+
+    /* layout letters along the path to the file's data, e.g. DSR */
+    public GlusterFSXattr.LAYOUT getLayoutType() throws IOException{
+        StringBuilder l=new StringBuilder();
+        Node n=root;
+
+        while (n.getType()!=Type.BRICK){
+            char t=n.getType().letter;
+            if(l.indexOf(String.valueOf(t))<0)
+                l.append(t);
+            n=n.getChildren().get(0);
+        }
+
+        try{
+            return GlusterFSXattr.LAYOUT.valueOf(l.toString());
+        }catch (IllegalArgumentException e){
+            throw new IOException("Unknown layout: "+l);
+        }
+    }
+
+    /* stripe size in bytes, 0 if the file isn't striped */
+    public long getStripeSize(){
+        Stripe s=findStripe(root);
+        return s==null ? 0 : s.stripeSize;
+    }
+
+    /* number of copies of each byte of the file */
+    public int getReplication(){
+        Node n=dataNode();
+
+        while (n.getType()!=Type.BRICK){
+            if(n.getType()==Type.REPLICATE)
+                return n.getChildren().size();
+            n=n.getChildren().get(0);
+        }
+        return 1;
+    }
+
+    /*
+     * blockSize adjusted so splits start on a row of the file's disperse set,
+     * otherwise blockSize itself.
+     */
+    public long alignBlockSize(long blockSize){
+        Node n=dataNode();
+
+        if(n instanceof Disperse){
+            long row=((Disperse) n).getStripeSize();
+            return Math.max(row, blockSize-blockSize%row);
+        }
+        return blockSize;
+    }
+
+    public List<Brick> getBricks(){
+        List<Brick> bricks=new ArrayList<Brick>();
+        root.collectBricks(bricks);
+        return bricks;
+    }
+
+    public BlockLocation[] getBlockLocations(long start,long len){
+        List<BlockLocation> out=new ArrayList<BlockLocation>();
+        Node n=dataNode();
+
+        if(n instanceof Stripe){
+            Stripe s=(Stripe) n;
+            int k=s.children.size();
+            long end=start+len;
+            long pos=start;
+
+            do{
+                long chunk=pos/s.stripeSize;
+                long chunkEnd=Math.min((chunk+1)*s.stripeSize, end);
+                Node c=s.children.get((int) (chunk%k));
+                out.add(new BlockLocation(null, c.hosts.clone(), pos, chunkEnd-pos));
+                pos=chunkEnd;
+            }while (pos<end);
+        }else{
+            out.add(new BlockLocation(null, n.hosts.clone(), start, len));
+        }
+
+        return out.toArray(new BlockLocation[out.size()]);
+    }
+
+    /*
+     * Bricks holding [start, start+len), numbered as GlusterFSBrickClass
+     * expects: for striped files one full round of stripes starting at start,
+     * replicas of a stripe numbered consecutively.
+     */
+    public TreeMap<Integer, GlusterFSBrickClass> getBrickHints(long start,long len){
+        TreeMap<Integer, GlusterFSBrickClass> hnts=new TreeMap<Integer, GlusterFSBrickClass>();
+        Node n=dataNode();
+
+        if(n instanceof Stripe){
+            Stripe s=(Stripe) n;
+            int k=s.children.size();
+            long end=start+len;
+            long pos=start;
+
+            for(int j=0;j<k&&pos<end;j++){
+                long chunk=pos/s.stripeSize;
+                long chunkEnd=Math.min((chunk+1)*s.stripeSize, end);
+                Node c=s.children.get((int) (chunk%k));
+                List<Brick> replicas=new ArrayList<Brick>();
+                c.collectBricks(replicas);
+
+                int switchCount=c.getType()==Type.REPLICATE ? replicas.size() : -1;
+                for(int i=0;i<replicas.size();i++){
+                    Brick b=replicas.get(i);
+                    hnts.put(j*replicas.size()+i, new GlusterFSBrickClass(b.host, b.path, pos, chunkEnd-pos, true, (int) s.stripeSize, k, switchCount));
+                }
+                pos=chunkEnd;
+            }
+        }else if(n.getType()!=Type.DISPERSE){
+            /* none for disperse sets, no brick holds the bytes as they are */
+            List<Brick> bricks=new ArrayList<Brick>();
+            n.collectBricks(bricks);
+            for(int i=0;i<bricks.size();i++){
+                Brick b=bricks.get(i);
+                hnts.put(i, new GlusterFSBrickClass(b.host, b.path, start, len, false, -1, -1, -1));
+            }
+        }
+
+        return hnts;
+    }
+
+    /* the node that actually describes how the file's bytes are spread */
+    Node dataNode(){
+        Node n=root;
+        while (n.getType()==Type.DISTRIBUTE&&n.getChildren().size()==1)
+            n=n.getChildren().get(0);
+        return n;
+    }
+
+    private static Stripe findStripe(Node n){
+        if(n instanceof Stripe)
+            return (Stripe) n;
+        for(Node c : n.getChildren()){
+            Stripe s=findStripe(c);
+            if(s!=null)
+                return s;
+        }
+        return null;
+    }
+
+    /* same bricks and backend paths, in any order */
+    public boolean sameBricks(GlusterFSLayout other){
+        HashSet<String> mine=new HashSet<String>();
+        HashSet<String> theirs=new HashSet<String>();
+
+        for(Brick b : getBricks())
+            mine.add(b.toString());
+        for(Brick b : other.getBricks())
+            theirs.add(b.toString());
+        return mine.equals(theirs);
+    }
+
+    /* copy of a directory's subtree with every brick path pointing at name inside the directory */
+    static Node childOf(Node n,String name){
+        if(n instanceof Brick){
+            Brick b=(Brick) n;
+            return new Brick(b.name, b.host, b.path.endsWith("/") ? b.path+name : b.path+"/"+name);
+        }
+
+        List<Node> children=new ArrayList<Node>(n.getChildren().size());
+        for(Node c : n.getChildren())
+            children.add(childOf(c, name));
+
+        if(n instanceof Stripe)
+            return new Stripe(n.name, ((Stripe) n).stripeSize, children);
+        if(n instanceof Disperse)
+            return new Disperse(n.name, ((Disperse) n).redundancy, children);
+        return new Translator(n.getType(), n.name, children);
+    }
+
+    /*
+     * Redundancy gluster picks for a disperse set created without one: the
+     * smallest that leaves a power of two of data fragments, else 1.
+     */
+    public static int defaultRedundancy(int fragments){
+        for(int r=1;2*r<fragments;r++){
+            int k=fragments-r;
+            if((k&(k-1))==0)
+                return r;
+        }
+        return 1;
+    }
+
+    static String[] hostsOf(List<Node> children){
+        LinkedHashSet<String> hosts=new LinkedHashSet<String>();
+        for(Node c : children){
+            for(String h : c.hosts)
+                hosts.add(h);
+        }
+        return hosts.toArray(new String[hosts.size()]);
+    }
+
+    public String toString(){
+        return root.toString();
+    }
+}
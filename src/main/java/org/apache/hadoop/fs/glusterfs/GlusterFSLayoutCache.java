@@ -0,0 +1,155 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of parsed file layouts, keyed by the file's path on the mount.
+ * An entry only matches if the caller's mtime and length are the ones it was
+ * loaded with, so a rewritten file never gets a stale layout even if the
+ * rewrite happened outside this JVM.  Entries also expire after a TTL.
+ * 
+ * A maxEntries of 0 disables caching, a ttl of 0 keeps entries until they
+ * are evicted or invalidated.
+ */
+public class GlusterFSLayoutCache{
+
+    public static final int DEFAULT_MAX_ENTRIES=10000;
+    public static final long DEFAULT_TTL=60*1000;
+
+    static class CachedLayout{
+        final long mtime;
+        final long len;
+        final long loaded;
+        final GlusterFSLayout layout;
+
+        CachedLayout(long mtime,long len,long loaded,GlusterFSLayout layout){
+            this.mtime=mtime;
+            this.len=len;
+            this.loaded=loaded;
+            this.layout=layout;
+        }
+    }
+
+    private int maxEntries=DEFAULT_MAX_ENTRIES;
+    private long ttl=DEFAULT_TTL;
+
+    private final AtomicLong hits=new AtomicLong();
+    private final AtomicLong misses=new AtomicLong();
+    private final AtomicLong evictions=new AtomicLong();
+
+    private final LinkedHashMap<String, CachedLayout> entries=new LinkedHashMap<String, CachedLayout>(16, 0.75f, true){
+        private static final long serialVersionUID=1L;
+
+        protected boolean removeEldestEntry(Map.Entry<String, CachedLayout> eldest){
+            if(size()>maxEntries){
+                evictions.incrementAndGet();
+                String path=eldest.getKey();
+                remove(path);
+                index.removed(path);
+            }
+            return false;
+        }
+    };
+    private final GlusterFSPathIndex index=new GlusterFSPathIndex(entries);
+
+    public synchronized void configure(int maxEntries,long ttl){
+        this.maxEntries=maxEntries;
+        this.ttl=ttl;
+        trim();
+    }
+
+    public synchronized GlusterFSLayout get(String path,long mtime,long len){
+        CachedLayout e=entries.get(path);
+
+        if(e!=null&&(e.mtime!=mtime||e.len!=len||expired(e))){
+            entries.remove(path);
+            index.removed(path);
+            evictions.incrementAndGet();
+            e=null;
+        }
+
+        if(e==null){
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return e.layout;
+    }
+
+    public synchronized void put(String path,long mtime,long len,GlusterFSLayout layout){
+        if(maxEntries<=0)
+            return;
+        index.add(path);
+        entries.put(path, new CachedLayout(mtime, len, System.currentTimeMillis(), layout));
+    }
+
+    /* drop a path and, if it's a directory, everything below it */
+    public synchronized void invalidate(String path){
+        entries.remove(path);
+        for(String p : index.below(path))
+            entries.remove(p);
+        index.removed(path);
+    }
+
+    public synchronized void clear(){
+        entries.clear();
+        index.clear();
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    public long getHits(){
+        return hits.get();
+    }
+
+    public long getMisses(){
+        return misses.get();
+    }
+
+    public long getEvictions(){
+        return evictions.get();
+    }
+
+    private boolean expired(CachedLayout e){
+        return ttl>0&&System.currentTimeMillis()-e.loaded>ttl;
+    }
+
+    private void trim(){
+        Iterator<String> it=entries.keySet().iterator();
+        while (entries.size()>Math.max(maxEntries, 0)&&it.hasNext()){
+            String path=it.next();
+            it.remove();
+            index.removed(path);
+            evictions.incrementAndGet();
+        }
+    }
+
+    public String toString(){
+        return "layout cache: size="+size()+" hits="+getHits()+" misses="+getMisses()+" evictions="+getEvictions();
+    }
+}
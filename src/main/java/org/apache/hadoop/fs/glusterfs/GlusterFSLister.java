@@ -0,0 +1,332 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lists a directory through a DirectoryStream and stats its entries on a
+ * bounded pool, so the lookups of a large directory overlap instead of
+ * going through FUSE one after the other.  Child paths are built from the
+ * directory's path, which is resolved once.
+ *
+ * Directories with fewer than DEFAULT_MIN_PARALLEL entries, or a pool of
+ * one thread, are stat'ed on the calling thread.
+ *
+ * open() streams a directory instead, a batch of entries at a time, so a
+ * listing of millions of entries never holds more than one batch.  The
+ * listing holds the directory open until it ends, fails or is closed;
+ * nothing closes it behind a caller that stops early (the JDK's directory
+ * streams have no finalizer).
+ */
+public class GlusterFSLister{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSLister.class);
+
+    public static final int DEFAULT_THREADS=16;
+    public static final int DEFAULT_MIN_PARALLEL=64;
+    public static final int DEFAULT_BATCH_SIZE=1024;
+    /* entries per task, keeps the queue short for huge directories */
+    static final int MIN_CHUNK=16;
+
+    private ThreadPoolExecutor pool=null;
+    private int threads=0;
+    private int batchSize=DEFAULT_BATCH_SIZE;
+
+    public synchronized void configure(int threads,int batchSize){
+        this.threads=threads;
+        this.batchSize=Math.max(1, batchSize);
+        if(threads<=1){
+            if(pool!=null)
+                pool.shutdown();
+            pool=null;
+        }else if(pool==null){
+            pool=new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new Daemons());
+            pool.allowCoreThreadTimeOut(true);
+        }else if(threads>pool.getMaximumPoolSize()){
+            pool.setMaximumPoolSize(threads);
+            pool.setCorePoolSize(threads);
+        }else{
+            pool.setCorePoolSize(threads);
+            pool.setMaximumPoolSize(threads);
+        }
+    }
+
+    public synchronized int getThreads(){
+        return threads;
+    }
+
+    public synchronized int getBatchSize(){
+        return batchSize;
+    }
+
+    private synchronized ThreadPoolExecutor getPool(){
+        return pool;
+    }
+
+    /**
+     * Status of every entry of dir, whose path on the volume is dirPath.
+     * Entries that disappear while listing are left out, and so is the
+     * purge directory.
+     */
+    public FileStatus[] list(GlusterVolume fs,File dir,Path dirPath) throws IOException{
+        List<File> files=new ArrayList<File>();
+        DirectoryStream<java.nio.file.Path> entries=openDirectory(dir, dirPath);
+        try{
+            for(java.nio.file.Path p : entries){
+                File f=new File(dir, p.getFileName().toString());
+                if(!fs.isHidden(f))
+                    files.add(f);
+            }
+        }catch (RuntimeException e){
+            /* DirectoryIteratorException and the like */
+            if(e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw e;
+        }finally{
+            entries.close();
+        }
+        return stat(fs, dirPath, files.toArray(new File[files.size()]));
+    }
+
+    /**
+     * Entries of dir, whose path on the volume is dirPath, a batch at a time.
+     * filter, if not null, is applied to entry paths before they're stat'ed.
+     */
+    public Listing open(GlusterVolume fs,File dir,Path dirPath,PathFilter filter) throws IOException{
+        return new Listing(fs, dir, dirPath, filter, getBatchSize());
+    }
+
+    public class Listing implements Closeable{
+        private final GlusterVolume fs;
+        private final File dir;
+        private final Path dirPath;
+        private final PathFilter filter;
+        private final int batchSize;
+        private DirectoryStream<java.nio.file.Path> entries;
+        private Iterator<java.nio.file.Path> names;
+
+        Listing(GlusterVolume fs,File dir,Path dirPath,PathFilter filter,int batchSize) throws IOException{
+            this.fs=fs;
+            this.dir=dir;
+            this.dirPath=dirPath;
+            this.filter=filter;
+            this.batchSize=batchSize;
+            this.entries=openDirectory(dir, dirPath);
+            this.names=entries.iterator();
+        }
+
+        /* status of the next batch of entries, null once the directory is done (and closed) */
+        public FileStatus[] next() throws IOException{
+            while (entries!=null){
+                List<File> files=new ArrayList<File>(batchSize);
+                try{
+                    while (files.size()<batchSize&&names.hasNext()){
+                        String name=names.next().getFileName().toString();
+                        File f=new File(dir, name);
+                        if(!fs.isHidden(f)&&(filter==null||filter.accept(new Path(dirPath, name))))
+                            files.add(f);
+                    }
+                    if(!names.hasNext())
+                        close();
+                }catch (RuntimeException e){
+                    /* DirectoryIteratorException and the like */
+                    close();
+                    if(e.getCause() instanceof IOException)
+                        throw (IOException) e.getCause();
+                    throw e;
+                }
+
+                if(!files.isEmpty()){
+                    FileStatus[] batch;
+                    try{
+                        batch=stat(fs, dirPath, files.toArray(new File[files.size()]));
+                    }catch (IOException e){
+                        close();
+                        throw e;
+                    }catch (RuntimeException e){
+                        close();
+                        throw e;
+                    }
+                    if(batch.length>0)
+                        return batch;
+                }
+            }
+            return null;
+        }
+
+        public void close() throws IOException{
+            if(entries!=null){
+                DirectoryStream<java.nio.file.Path> e=entries;
+                entries=null;
+                names=null;
+                e.close();
+            }
+        }
+    }
+
+    /**
+     * A RemoteIterator over batches, e.g. of a Listing.  Iterating to the
+     * end or failing closes it; callers that stop early close() it, or the
+     * directory stays open.
+     */
+    public static abstract class Batches<T> implements RemoteIterator<T>, Closeable{
+        private T[] batch=null;
+        private int next=0;
+        private boolean done=false;
+
+        /* the next non empty batch, null at the end */
+        protected abstract T[] nextBatch() throws IOException;
+
+        public boolean hasNext() throws IOException{
+            if(!done&&(batch==null||next>=batch.length)){
+                try{
+                    batch=nextBatch();
+                }catch (IOException e){
+                    close();
+                    throw e;
+                }catch (RuntimeException e){
+                    close();
+                    throw e;
+                }
+                next=0;
+                if(batch==null)
+                    close();
+            }
+            return !done;
+        }
+
+        /* subclasses release what the batches come from too */
+        public void close() throws IOException{
+            done=true;
+            batch=null;
+        }
+
+        public T next() throws IOException{
+            if(!hasNext())
+                throw new NoSuchElementException("No more entries");
+            return batch[next++];
+        }
+    }
+
+    /* status of files, stat'ed in parallel if there are enough, without the ones that vanished */
+    private FileStatus[] stat(final GlusterVolume fs,final Path dirPath,final File[] files) throws IOException{
+        final FileStatus[] results=new FileStatus[files.length];
+        ThreadPoolExecutor p=getPool();
+
+        if(p==null||files.length<DEFAULT_MIN_PARALLEL){
+            stat(fs, dirPath, files, results, 0, files.length);
+        }else{
+            int chunk=Math.max(MIN_CHUNK, files.length/(p.getMaximumPoolSize()*4)+1);
+            List<Future<Void>> tasks=new ArrayList<Future<Void>>();
+            try{
+                for(int i=0;i<files.length;i+=chunk){
+                    final int start=i;
+                    final int end=Math.min(files.length, i+chunk);
+                    tasks.add(p.submit(new Callable<Void>(){
+                        public Void call() throws IOException{
+                            stat(fs, dirPath, files, results, start, end);
+                            return null;
+                        }
+                    }));
+                }
+                for(Future<Void> t : tasks)
+                    t.get();
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted listing "+dirPath);
+            }catch (ExecutionException e){
+                if(e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new IOException("Error listing "+dirPath, e.getCause());
+            }finally{
+                for(Future<Void> t : tasks)
+                    t.cancel(false);
+            }
+        }
+
+        int j=0;
+        for(int i=0;i<results.length;i++){
+            if(results[i]!=null)
+                results[j++]=results[i];
+        }
+        return j==results.length ? results : Arrays.copyOf(results, j);
+    }
+
+    private static DirectoryStream<java.nio.file.Path> openDirectory(File dir,Path dirPath) throws IOException{
+        try{
+            return Files.newDirectoryStream(dir.toPath());
+        }catch (AccessDeniedException e){
+            throw new IOException("Access denied : "+dirPath);
+        }catch (NoSuchFileException e){
+            throw new FileNotFoundException("File "+dirPath+" does not exist");
+        }
+    }
+
+    private static void stat(GlusterVolume fs,Path dirPath,File[] files,FileStatus[] results,int start,int end) throws IOException{
+        for(int i=start;i<end;i++){
+            results[i]=fs.getFileStatus(files[i], new Path(dirPath, files[i].getName()));
+            if(results[i]==null)
+                log.info("ignoring invisible path :  "+files[i]);
+        }
+    }
+
+    public String toString(){
+        return "threads="+getThreads()+" batch="+getBatchSize();
+    }
+
+    static class Daemons implements ThreadFactory{
+        private final AtomicInteger count=new AtomicInteger();
+
+        public Thread newThread(Runnable r){
+            Thread t=new Thread(r, "glusterfs-list-"+count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds a copy of a file on a brick of this host that can be read directly,
+ * skipping FUSE and the client translators.  For striped files, the stripes
+ * bricks of this host hold are read directly and the rest through FUSE.
+ *
+ * A brick copy is only used when it's the whole file (same length as on the
+ * mount, not a distribute linkto) and replicate has nothing pending on it:
+ * trusted.afr.dirty and every trusted.afr.<client> counter are zero.  The
+ * trusted namespace is hidden from processes without CAP_SYS_ADMIN, so for
+ * other users a copy can't be checked and isn't used unless verification
+ * is turned off.
+ */
+public class GlusterFSLocalBricks{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSLocalBricks.class);
+
+    public static final String GFID_XATTR="trusted.gfid";
+    public static final String AFR_PREFIX="trusted.afr.";
+    public static final String LINKTO_XATTR="trusted.glusterfs.dht.linkto";
+
+    private static Set<InetAddress> localAddresses=null;
+    private static final Map<String, Boolean> localHosts=Collections.synchronizedMap(new HashMap<String, Boolean>());
+
+    private static final AtomicLong brickOpens=new AtomicLong();
+    private static final AtomicLong fuseOpens=new AtomicLong();
+
+    private final boolean verify;
+
+    public GlusterFSLocalBricks(boolean verify){
+        this.verify=verify;
+    }
+
+    /**
+     * A stream reading the file from local bricks as far as possible, or null
+     * if it has to be read through the mount.  fuseFile is the file on the
+     * mount, for the stripes no local brick holds.  A whole local copy is
+     * read through a GlusterFSInputStream buffering bufferSize bytes.
+     */
+    public FSInputStream open(File fuseFile,GlusterFSLayout layout,long len,int bufferSize,FileSystem.Statistics statistics) throws IOException{
+        FSInputStream in=null;
+        File copy=find(layout, len);
+
+        if(copy!=null){
+            in=new GlusterFSInputStream(copy, statistics, bufferSize);
+        }else{
+            File[] stripes=findStripes(layout, len);
+            if(stripes!=null)
+                in=new GlusterFSStripedInputStream(fuseFile, stripes, layout.getBrickHints(0, len).firstEntry().getValue(), len, statistics);
+        }
+
+        (in!=null ? brickOpens : fuseOpens).incrementAndGet();
+        return in;
+    }
+
+    /**
+     * Backend file of a clean local copy of the file described by layout, or
+     * null if there isn't one.  Striped and dispersed files never have one.
+     */
+    public File find(GlusterFSLayout layout,long len){
+        for(GlusterFSBrickClass b : layout.getBrickHints(0, len).values()){
+            if(b.isChunked())
+                return null;
+            if(!isLocal(b.getHost()))
+                continue;
+
+            File f=new File(b.brickIsLocal(b.getHost()));
+            if(isClean(f, len))
+                return f;
+            log.debug("local copy "+f+" can't be read directly");
+        }
+        return null;
+    }
+
+    /**
+     * For a striped file, the backend file of a clean local copy of each
+     * stripe, null for stripes only other hosts hold.  Null if the file isn't
+     * striped or none of its stripes is local.
+     */
+    public File[] findStripes(GlusterFSLayout layout,long len){
+        TreeMap<Integer, GlusterFSBrickClass> hints=layout.getBrickHints(0, len);
+        boolean found=false;
+
+        if(hints.isEmpty()||!hints.firstEntry().getValue().isChunked())
+            return null;
+
+        File[] stripes=new File[hints.firstEntry().getValue().getNrStripes()];
+        for(Map.Entry<Integer, GlusterFSBrickClass> e : hints.entrySet()){
+            GlusterFSBrickClass b=e.getValue();
+            if(!isLocal(b.getHost()))
+                continue;
+
+            File f=new File(b.brickIsLocal(b.getHost()));
+            for(int j=0;j<stripes.length;j++){
+                if(stripes[j]==null&&b.brickHasFilePart(j, e.getKey())&&isClean(f, -1)){
+                    stripes[j]=f;
+                    found=true;
+                }
+            }
+        }
+        return found ? stripes : null;
+    }
+
+    /* len of -1 skips the length check, stripe backend files are shorter than the file */
+    boolean isClean(File f,long len){
+        if(!f.isFile()||(len>=0&&f.length()!=len)||!f.canRead())
+            return false;
+        if(!GlusterFSNative.isAvailable())
+            return !verify;
+
+        boolean gfid=false;
+        try{
+            for(String name : GlusterFSNative.listxattr(f.getPath())){
+                if(name.equals(GFID_XATTR)){
+                    gfid=true;
+                }else if(name.equals(LINKTO_XATTR)){
+                    return false;
+                }else if(name.startsWith(AFR_PREFIX)&&pending(GlusterFSNative.getxattr(f.getPath(), name))){
+                    return false;
+                }
+            }
+        }catch (IOException e){
+            log.debug("Cannot check "+f+": "+e.getMessage());
+            return false;
+        }
+
+        /* without the gfid the trusted namespace wasn't visible and nothing was checked */
+        return gfid||!verify;
+    }
+
+    /* afr changelog: big endian data, metadata and entry counters */
+    static boolean pending(byte[] changelog){
+        for(byte b : changelog){
+            if(b!=0)
+                return true;
+        }
+        return false;
+    }
+
+    /* host names or addresses bricks of this machine could be listed under */
+    public static boolean isLocal(String host){
+        Boolean local=localHosts.get(host);
+
+        if(local==null){
+            local=false;
+            try{
+                for(InetAddress a : InetAddress.getAllByName(host)){
+                    if(a.isLoopbackAddress()||localAddresses().contains(a))
+                        local=true;
+                }
+            }catch (IOException e){
+                log.debug("Cannot resolve brick host "+host+": "+e.getMessage());
+            }
+            localHosts.put(host, local);
+        }
+        return local;
+    }
+
+    private static synchronized Set<InetAddress> localAddresses() throws IOException{
+        if(localAddresses==null){
+            Set<InetAddress> addrs=new HashSet<InetAddress>();
+            Enumeration<NetworkInterface> nics=NetworkInterface.getNetworkInterfaces();
+            while (nics!=null&&nics.hasMoreElements()){
+                Enumeration<InetAddress> a=nics.nextElement().getInetAddresses();
+                while (a.hasMoreElements())
+                    addrs.add(a.nextElement());
+            }
+            localAddresses=addrs;
+        }
+        return localAddresses;
+    }
+
+    /* opens served from a local brick */
+    public static long getBrickOpens(){
+        return brickOpens.get();
+    }
+
+    /* opens that had to go through the mount */
+    public static long getFuseOpens(){
+        return fuseOpens.get();
+    }
+
+    public String toString(){
+        return "local brick reads: verify="+verify+" brick opens="+getBrickOpens()+" fuse opens="+getFuseOpens();
+    }
+}
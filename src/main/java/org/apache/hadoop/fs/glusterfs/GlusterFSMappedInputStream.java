@@ -0,0 +1,186 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.HasEnhancedByteBufferAccess;
+import org.apache.hadoop.fs.ReadOption;
+import org.apache.hadoop.io.ByteBufferPool;
+
+/**
+ * Reads a file out of a shared memory mapping, see GlusterFSMappingCache.
+ * Zero-copy reads (FSDataInputStream.read(ByteBufferPool, ...)) get
+ * read-only slices of the mapping itself.  The stream holds its reference
+ * to the mapping until it's closed.
+ *
+ * A file truncated under its mapping makes reads past its new end fault;
+ * the JVM turns the SIGBUS into an InternalError, which the stream reports
+ * as an IOException, and the mapping isn't handed out again.  The JVM may
+ * raise it only once a compiled copy returned, past the stream, and slices
+ * returned by zero-copy reads fault on their own.
+ */
+public class GlusterFSMappedInputStream extends FSInputStream implements ByteBufferReadable,HasEnhancedByteBufferAccess{
+
+    private final GlusterFSMappingCache.Mapping mapping;
+    private final ByteBuffer data;
+    private final FileSystem.Statistics statistics;
+    private boolean closed=false;
+
+    public GlusterFSMappedInputStream(GlusterFSMappingCache.Mapping mapping,FileSystem.Statistics statistics){
+        this.mapping=mapping;
+        this.data=mapping.view();
+        this.statistics=statistics;
+    }
+
+    public synchronized void seek(long pos) throws IOException{
+        if(pos<0)
+            throw new EOFException("Cannot seek to negative offset "+pos);
+        /* past the end reads nothing, like a file */
+        data.position((int) Math.min(pos, data.limit()));
+    }
+
+    public synchronized long getPos() throws IOException{
+        return data.position();
+    }
+
+    public boolean seekToNewSource(long targetPos) throws IOException{
+        return false;
+    }
+
+    public synchronized int available() throws IOException{
+        return data.remaining();
+    }
+
+    public synchronized void close() throws IOException{
+        if(!closed){
+            closed=true;
+            mapping.release();
+        }
+    }
+
+    public boolean markSupported(){
+        return false;
+    }
+
+    public synchronized int read() throws IOException{
+        if(!data.hasRemaining())
+            return -1;
+        int b;
+        try{
+            b=data.get()&0xff;
+        }catch (InternalError e){
+            throw fault(e);
+        }
+        count(1);
+        return b;
+    }
+
+    public synchronized int read(byte[] b,int off,int len) throws IOException{
+        if(len==0)
+            return 0;
+        if(!data.hasRemaining())
+            return -1;
+        int n=Math.min(len, data.remaining());
+        try{
+            data.get(b, off, n);
+        }catch (InternalError e){
+            throw fault(e);
+        }
+        count(n);
+        return n;
+    }
+
+    public synchronized int read(ByteBuffer buf) throws IOException{
+        if(!buf.hasRemaining())
+            return 0;
+        if(!data.hasRemaining())
+            return -1;
+        int n=Math.min(buf.remaining(), data.remaining());
+        ByteBuffer src=data.slice();
+        src.limit(n);
+        try{
+            buf.put(src);
+        }catch (InternalError e){
+            throw fault(e);
+        }
+        data.position(data.position()+n);
+        count(n);
+        return n;
+    }
+
+    /* a view of its own, concurrent positional reads share nothing */
+    public int read(long position,byte[] b,int off,int len) throws IOException{
+        if(len==0)
+            return 0;
+        if(position>=mapping.getLength())
+            return -1;
+        ByteBuffer src=mapping.view();
+        src.position((int) position);
+        int n=Math.min(len, src.remaining());
+        try{
+            src.get(b, off, n);
+        }catch (InternalError e){
+            throw fault(e);
+        }
+        count(n);
+        return n;
+    }
+
+    public synchronized long skip(long n) throws IOException{
+        if(n<=0)
+            return 0;
+        int skipped=(int) Math.min(n, data.remaining());
+        data.position(data.position()+skipped);
+        return skipped;
+    }
+
+    /* up to maxLength bytes of the mapping itself, null at the end of the file */
+    public synchronized ByteBuffer read(ByteBufferPool bufferPool,int maxLength,EnumSet<ReadOption> opts) throws IOException{
+        if(!data.hasRemaining())
+            return null;
+        int n=Math.min(maxLength, data.remaining());
+        ByteBuffer slice=data.slice();
+        slice.limit(n);
+        data.position(data.position()+n);
+        count(n);
+        return slice;
+    }
+
+    /* slices need nothing back, the mapping goes when nothing refers to it */
+    public void releaseBuffer(ByteBuffer buffer){
+    }
+
+    private IOException fault(InternalError e){
+        mapping.fault();
+        return new IOException("Fault reading the mapping of "+mapping.path+", was it truncated?", e);
+    }
+
+    private void count(int bytes){
+        if(statistics!=null)
+            statistics.incrementBytesRead(bytes);
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-only memory mappings of files up to a size threshold, shared by all
+ * streams of the JVM reading the same file, so files many tasks read over
+ * and over (lookup tables, dimension tables) come out of the page cache
+ * instead of through a FUSE read each time.
+ *
+ * A mapping is matched on the file's path, modification time and length;
+ * a file that changed gets a new one.  Mappings are reference counted and
+ * only ones no stream holds are evicted, least recently used first, to keep
+ * the total under maxBytes; a file that doesn't fit beside the mappings in
+ * use isn't mapped.  The JDK unmaps a buffer when it's garbage collected,
+ * so an evicted mapping's memory comes back once the last slice handed out
+ * of it is gone.
+ *
+ * A threshold or maxBytes of 0 disables mapping.
+ */
+public class GlusterFSMappingCache{
+
+    public static final long DEFAULT_MAX_BYTES=256*1024*1024;
+
+    public class Mapping{
+        final String path;
+        final long mtime;
+        final long len;
+        final MappedByteBuffer buffer;
+        int refs=1;
+
+        Mapping(String path,long mtime,long len,MappedByteBuffer buffer){
+            this.path=path;
+            this.mtime=mtime;
+            this.len=len;
+            this.buffer=buffer;
+        }
+
+        /* a read-only view of the whole file with a position of its own */
+        public ByteBuffer view(){
+            return buffer.asReadOnlyBuffer();
+        }
+
+        public long getLength(){
+            return len;
+        }
+
+        /* once per acquire */
+        public void release(){
+            GlusterFSMappingCache.this.release(this);
+        }
+
+        /* the file was truncated under the mapping, no new stream gets it */
+        public void fault(){
+            GlusterFSMappingCache.this.fault(this);
+        }
+    }
+
+    private long threshold=0;
+    private long maxBytes=DEFAULT_MAX_BYTES;
+    private long mappedBytes=0;
+
+    private final AtomicLong hits=new AtomicLong();
+    private final AtomicLong misses=new AtomicLong();
+    private final AtomicLong evictions=new AtomicLong();
+
+    private final LinkedHashMap<String, Mapping> entries=new LinkedHashMap<String, Mapping>(16, 0.75f, true);
+    private final GlusterFSPathIndex index=new GlusterFSPathIndex(entries);
+
+    public synchronized void configure(long threshold,long maxBytes){
+        this.threshold=threshold;
+        this.maxBytes=maxBytes;
+        trim(0);
+    }
+
+    public synchronized boolean isEnabled(){
+        return threshold>0&&maxBytes>0;
+    }
+
+    /* whether a file of len bytes would be mapped */
+    public synchronized boolean accepts(long len){
+        return isEnabled()&&len>0&&len<=threshold&&len<=maxBytes&&len<=Integer.MAX_VALUE;
+    }
+
+    /**
+     * The mapping of f as of mtime and len, shared if there is one already.
+     * Null if it's too large or doesn't fit beside the mappings in use.
+     */
+    public Mapping acquire(File f,long mtime,long len) throws IOException{
+        String path=f.getPath();
+
+        synchronized (this){
+            if(!accepts(len))
+                return null;
+            Mapping m=entries.get(path);
+            if(m!=null&&m.mtime==mtime&&m.len==len){
+                m.refs++;
+                hits.incrementAndGet();
+                return m;
+            }
+            if(m!=null)
+                remove(m);
+            misses.incrementAndGet();
+            if(!trim(len))
+                return null;
+        }
+
+        MappedByteBuffer buffer=map(f, len);
+        if(buffer==null)
+            return null;
+        Mapping mapped=new Mapping(path, mtime, len, buffer);
+
+        synchronized (this){
+            Mapping m=entries.get(path);
+            if(m!=null&&m.mtime==mtime&&m.len==len){
+                /* another stream mapped it meanwhile */
+                m.refs++;
+                return m;
+            }
+            if(m!=null)
+                remove(m);
+            if(trim(len)){
+                index.add(path);
+                entries.put(path, mapped);
+                mappedBytes+=len;
+            }
+            return mapped;
+        }
+    }
+
+    /* null if the file isn't len bytes long anymore */
+    private static MappedByteBuffer map(File f,long len) throws IOException{
+        FileInputStream in=new FileInputStream(f);
+        try{
+            FileChannel channel=in.getChannel();
+            /* reading past the end of the file through the mapping is a SIGBUS */
+            if(channel.size()!=len)
+                return null;
+            /* the mapping outlives the descriptor */
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, len);
+        }finally{
+            in.close();
+        }
+    }
+
+    synchronized void release(Mapping m){
+        if(m.refs>0)
+            m.refs--;
+    }
+
+    synchronized void fault(Mapping m){
+        if(entries.get(m.path)==m)
+            remove(m);
+    }
+
+    /* drop the mapping of a path and, if it's a directory, of everything below it */
+    public synchronized void invalidate(String path){
+        drop(path);
+        for(String p : index.below(path))
+            drop(p);
+        index.removed(path);
+    }
+
+    private void drop(String path){
+        Mapping m=entries.remove(path);
+        if(m!=null)
+            forget(m);
+    }
+
+    private void remove(Mapping m){
+        entries.remove(m.path);
+        index.removed(m.path);
+        forget(m);
+    }
+
+    private void forget(Mapping m){
+        mappedBytes-=m.len;
+    }
+
+    /* evicts unused mappings until len more bytes fit, false if they can't */
+    private boolean trim(long len){
+        Iterator<Mapping> it=entries.values().iterator();
+        while (mappedBytes+len>maxBytes&&it.hasNext()){
+            Mapping m=it.next();
+            if(m.refs==0){
+                it.remove();
+                index.removed(m.path);
+                forget(m);
+                evictions.incrementAndGet();
+            }
+        }
+        return mappedBytes+len<=maxBytes;
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    public synchronized long getMappedBytes(){
+        return mappedBytes;
+    }
+
+    public long getHits(){
+        return hits.get();
+    }
+
+    public long getMisses(){
+        return misses.get();
+    }
+
+    public long getEvictions(){
+        return evictions.get();
+    }
+
+    public synchronized String toString(){
+        return "mapping cache: threshold="+threshold+" max="+maxBytes+" size="+size()+" bytes="+mappedBytes+" hits="+getHits()+" misses="+getMisses()+" evictions="+getEvictions();
+    }
+}
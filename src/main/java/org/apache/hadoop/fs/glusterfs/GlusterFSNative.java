@@ -0,0 +1,277 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+/**
+ * Small JNA binding for the libc calls the plugin makes in-process instead
+ * of forking a helper.  If JNA or libc can't be loaded isAvailable() is false
+ * and callers are expected to use their non-native path.
+ */
+public class GlusterFSNative{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSNative.class);
+
+    /* linux errno values */
+    public static final int EPERM=1;
+    public static final int ENOENT=2;
+    public static final int EACCES=13;
+    public static final int EISDIR=21;
+    public static final int EINVAL=22;
+    public static final int ERANGE=34;
+    public static final int ENODATA=61;
+    public static final int EOPNOTSUPP=95;
+
+    /* linux open(2) and fcntl(2) values */
+    public static final int O_RDONLY=0;
+    public static final int O_WRONLY=01;
+    public static final int O_CREAT=0100;
+    public static final int O_TRUNC=01000;
+    public static final int O_DIRECT=directFlag(System.getProperty("os.arch", ""));
+    public static final int F_GETFL=3;
+    public static final int F_SETFL=4;
+    public static final int POSIX_FADV_NORMAL=0;
+    public static final int POSIX_FADV_RANDOM=1;
+    public static final int POSIX_FADV_SEQUENTIAL=2;
+    public static final int POSIX_FADV_WILLNEED=3;
+    public static final int POSIX_FADV_DONTNEED=4;
+
+    private static final Charset UTF8=Charset.forName("UTF-8");
+
+    interface LibC extends Library{
+        NativeLong getxattr(String path,String name,byte[] value,NativeLong size) throws LastErrorException;
+
+        NativeLong listxattr(String path,byte[] list,NativeLong size) throws LastErrorException;
+
+        int open(String path,int flags,int mode) throws LastErrorException;
+
+        int close(int fd) throws LastErrorException;
+
+        /* off_t is 64 bit, 64 bit JVMs only */
+        NativeLong pread(int fd,Pointer buf,NativeLong count,long offset) throws LastErrorException;
+
+        NativeLong pwrite(int fd,Pointer buf,NativeLong count,long offset) throws LastErrorException;
+
+        int fcntl(int fd,int cmd,int arg) throws LastErrorException;
+
+        /* returns the error instead of setting errno */
+        int posix_fadvise(int fd,long offset,long len,int advice);
+    }
+
+    /* a call failed with the given errno */
+    public static class ErrnoException extends IOException{
+        private static final long serialVersionUID=1L;
+        private final int errno;
+
+        public ErrnoException(int errno,String msg){
+            super(msg+" (errno "+errno+")");
+            this.errno=errno;
+        }
+
+        public int getErrno(){
+            return errno;
+        }
+    }
+
+    private static LibC libc=null;
+    private static Field descriptorField=null;
+
+    static{
+        try{
+            libc=(LibC) Native.loadLibrary("c", LibC.class);
+        }catch (Throwable t){
+            log.info("native libc binding unavailable, using forked helpers: "+t);
+        }
+        try{
+            descriptorField=FileDescriptor.class.getDeclaredField("fd");
+            descriptorField.setAccessible(true);
+        }catch (Exception e){
+            /* newer JVMs keep java.io closed */
+            descriptorField=null;
+        }
+    }
+
+    private static final ThreadLocal<byte[]> xattrBuffer=new ThreadLocal<byte[]>(){
+        protected byte[] initialValue(){
+            return new byte[16*1024];
+        }
+    };
+
+    public static boolean isAvailable(){
+        return libc!=null;
+    }
+
+    /* O_DIRECT differs between architectures */
+    static int directFlag(String arch){
+        if(arch.startsWith("aarch64")||arch.startsWith("arm"))
+            return 0200000;
+        if(arch.startsWith("ppc"))
+            return 0400000;
+        return 040000;
+    }
+
+    /* a file descriptor, to be closed with close() */
+    public static int open(String path,int flags,int mode) throws IOException{
+        try{
+            return libc.open(path, flags, mode);
+        }catch (LastErrorException e){
+            throw new ErrnoException(e.getErrorCode(), "open "+path);
+        }
+    }
+
+    public static void close(int fd) throws IOException{
+        try{
+            libc.close(fd);
+        }catch (LastErrorException e){
+            throw new ErrnoException(e.getErrorCode(), "close "+fd);
+        }
+    }
+
+    /* bytes read into buf at offset of the file, 0 at its end */
+    public static long pread(int fd,Pointer buf,long count,long offset) throws IOException{
+        try{
+            return libc.pread(fd, buf, new NativeLong(count), offset).longValue();
+        }catch (LastErrorException e){
+            throw new ErrnoException(e.getErrorCode(), "pread "+fd+" at "+offset);
+        }
+    }
+
+    public static long pwrite(int fd,Pointer buf,long count,long offset) throws IOException{
+        try{
+            return libc.pwrite(fd, buf, new NativeLong(count), offset).longValue();
+        }catch (LastErrorException e){
+            throw new ErrnoException(e.getErrorCode(), "pwrite "+fd+" at "+offset);
+        }
+    }
+
+    public static void fadvise(int fd,long offset,long len,int advice) throws IOException{
+        int errno=libc.posix_fadvise(fd, offset, len, advice);
+        if(errno!=0)
+            throw new ErrnoException(errno, "posix_fadvise "+advice+" on "+fd);
+    }
+
+    /* the number behind a java.io descriptor, -1 if it's closed or the JVM won't tell */
+    public static int descriptor(FileDescriptor fd){
+        if(fd==null||descriptorField==null)
+            return -1;
+        try{
+            return descriptorField.getInt(fd);
+        }catch (IllegalAccessException e){
+            return -1;
+        }
+    }
+
+    public static int fcntl(int fd,int cmd,int arg) throws IOException{
+        try{
+            return libc.fcntl(fd, cmd, arg);
+        }catch (LastErrorException e){
+            throw new ErrnoException(e.getErrorCode(), "fcntl "+fd);
+        }
+    }
+
+    /* raw value of an extended attribute */
+    public static byte[] getxattr(String path,String name) throws IOException{
+        byte[] buf=xattrBuffer.get();
+
+        while (true){
+            try{
+                int n=libc.getxattr(path, name, buf, new NativeLong(buf.length)).intValue();
+                return Arrays.copyOf(buf, n);
+            }catch (LastErrorException e){
+                if(e.getErrorCode()!=ERANGE)
+                    throw new ErrnoException(e.getErrorCode(), "getxattr "+name+" on "+path);
+            }
+
+            /* value is larger than the buffer, size it and retry */
+            int size;
+            try{
+                size=libc.getxattr(path, name, null, new NativeLong(0)).intValue();
+            }catch (LastErrorException e){
+                throw new ErrnoException(e.getErrorCode(), "getxattr "+name+" on "+path);
+            }
+            buf=new byte[size+1024];
+            xattrBuffer.set(buf);
+        }
+    }
+
+    /* names of the extended attributes of a file the caller is allowed to see */
+    public static String[] listxattr(String path) throws IOException{
+        byte[] buf=xattrBuffer.get();
+        int n;
+
+        while (true){
+            try{
+                n=libc.listxattr(path, buf, new NativeLong(buf.length)).intValue();
+                break;
+            }catch (LastErrorException e){
+                if(e.getErrorCode()!=ERANGE)
+                    throw new ErrnoException(e.getErrorCode(), "listxattr on "+path);
+            }
+
+            int size;
+            try{
+                size=libc.listxattr(path, null, new NativeLong(0)).intValue();
+            }catch (LastErrorException e){
+                throw new ErrnoException(e.getErrorCode(), "listxattr on "+path);
+            }
+            buf=new byte[size+1024];
+            xattrBuffer.set(buf);
+        }
+
+        /* NUL separated, NUL terminated */
+        List<String> names=new ArrayList<String>();
+        int from=0;
+        for(int i=0;i<n;i++){
+            if(buf[i]==0){
+                if(i>from)
+                    names.add(new String(buf, from, i-from, UTF8));
+                from=i+1;
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    /* value of a string extended attribute, without the trailing NUL gluster includes */
+    public static String getxattrString(String path,String name) throws IOException{
+        byte[] v=getxattr(path, name);
+        int len=v.length;
+
+        while (len>0&&v[len-1]==0)
+            len--;
+
+        return new String(v, 0, len, UTF8);
+    }
+}
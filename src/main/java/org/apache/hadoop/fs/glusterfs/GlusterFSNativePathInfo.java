@@ -0,0 +1,138 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads pathinfo with getxattr(2) from inside the JVM.
+ * 
+ * The kernel only lets privileged processes read trusted.* through FUSE, so
+ * for normal task users we retry with the unprivileged glusterfs.pathinfo key
+ * served by newer gluster clients.  A key refused once (EPERM, EACCES,
+ * EOPNOTSUPP) isn't tried again; one a file has no value for (ENODATA) is
+ * tried again for the next file.  Once every key is refused, or the
+ * fallback (forked) provider answers where neither key did, we stick to the
+ * fallback for the life of the JVM.
+ */
+public class GlusterFSNativePathInfo implements GlusterFSPathInfoProvider{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSNativePathInfo.class);
+
+    public static final String PATHINFO_KEY="trusted.glusterfs.pathinfo";
+    public static final String USER_PATHINFO_KEY="glusterfs.pathinfo";
+
+    private static final String[] KEYS={PATHINFO_KEY,USER_PATHINFO_KEY};
+
+    private final GlusterFSPathInfoProvider fallback;
+
+    /* first key worth trying, moves past trusted.* once it's known to be refused */
+    private volatile int firstKey=0;
+    /* bit i set once KEYS[i] was refused */
+    private volatile int refused=0;
+    private volatile boolean useFallback=false;
+
+    public GlusterFSNativePathInfo(GlusterFSPathInfoProvider fallback){
+        this.fallback=fallback;
+    }
+
+    public static boolean isAvailable(){
+        try{
+            return GlusterFSNative.isAvailable();
+        }catch (Throwable t){
+            /* JNA not on the classpath */
+            return false;
+        }
+    }
+
+    public String getPathInfo(String filename) throws IOException{
+        if(!useFallback){
+            for(int i=firstKey;i<KEYS.length;i++){
+                if((refused&(1<<i))!=0)
+                    continue;
+                try{
+                    return GlusterFSNative.getxattrString(filename, KEYS[i]);
+                }catch (GlusterFSNative.ErrnoException e){
+                    switch (e.getErrno()){
+                        case GlusterFSNative.ENOENT:
+                            throw new FileNotFoundException("File "+filename+" does not exist.");
+                        case GlusterFSNative.ENODATA:
+                            continue;
+                        case GlusterFSNative.EPERM:
+                        case GlusterFSNative.EACCES:
+                        case GlusterFSNative.EOPNOTSUPP:
+                            refuse(i);
+                            continue;
+                        default:
+                            throw e;
+                    }
+                }
+            }
+        }
+
+        String value=fallback.getPathInfo(filename);
+        if(!useFallback&&value.length()>0){
+            log.warn("pathinfo xattr not readable in-process, using "+fallback+" from now on");
+            useFallback=true;
+        }
+        return value;
+    }
+
+    private synchronized void refuse(int key){
+        if((refused&(1<<key))!=0)
+            return;
+        log.debug(KEYS[key]+" refused, not trying it again");
+        refused|=1<<key;
+        int first=firstKey;
+        while (first<KEYS.length&&(refused&(1<<first))!=0)
+            first++;
+        firstKey=first;
+        if(first==KEYS.length&&!useFallback){
+            log.warn("pathinfo xattr not readable in-process, using "+fallback+" from now on");
+            useFallback=true;
+        }
+    }
+
+    public Map<String, String> getPathInfo(List<String> filenames) throws IOException{
+        if(useFallback)
+            return fallback.getPathInfo(filenames);
+
+        Map<String, String> result=new HashMap<String, String>();
+        for(String f : filenames){
+            try{
+                result.put(f, getPathInfo(f));
+            }catch (IOException e){
+                log.debug("no pathinfo for "+f+": "+e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    public String toString(){
+        return "native pathinfo"+(useFallback ? " (falling back to "+fallback+")" : "");
+    }
+}
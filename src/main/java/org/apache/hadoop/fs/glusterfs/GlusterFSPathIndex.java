@@ -0,0 +1,102 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The paths a cache holds, by directory, so dropping a path and everything
+ * below it costs the entries dropped instead of a scan of the whole cache:
+ * a file is one lookup.  Each directory on the way to a cached path knows
+ * its children on that way.
+ *
+ * Not thread safe, the cache's lock covers it.  The cache adds a path when
+ * it stores it and tells the index when it removed one from its map.
+ */
+class GlusterFSPathIndex{
+
+    private final Map<String, ?> entries;
+    private final HashMap<String, Set<String>> children=new HashMap<String, Set<String>>();
+
+    GlusterFSPathIndex(Map<String, ?> entries){
+        this.entries=entries;
+    }
+
+    void add(String path){
+        String child=path;
+        for(String dir=parent(child);dir!=null;child=dir,dir=parent(dir)){
+            Set<String> s=children.get(dir);
+            if(s==null){
+                s=new HashSet<String>();
+                children.put(dir, s);
+            }
+            /* the rest of the way is there already */
+            if(!s.add(child))
+                return;
+        }
+    }
+
+    /* path was removed from the cache */
+    void removed(String path){
+        while (!entries.containsKey(path)&&!children.containsKey(path)){
+            String dir=parent(path);
+            if(dir==null)
+                return;
+            Set<String> s=children.get(dir);
+            if(s==null||!s.remove(path)||!s.isEmpty())
+                return;
+            children.remove(dir);
+            path=dir;
+        }
+    }
+
+    /* the indexed paths below path, which the index forgets; the cache removes them */
+    List<String> below(String path){
+        List<String> found=new ArrayList<String>();
+        List<String> dirs=new ArrayList<String>();
+        dirs.add(path);
+        while (!dirs.isEmpty()){
+            Set<String> s=children.remove(dirs.remove(dirs.size()-1));
+            if(s==null)
+                continue;
+            for(String child : s){
+                found.add(child);
+                dirs.add(child);
+            }
+        }
+        return found;
+    }
+
+    void clear(){
+        children.clear();
+    }
+
+    static String parent(String path){
+        int slash=path.lastIndexOf('/');
+        if(slash<0||path.length()==1)
+            return null;
+        return slash==0 ? "/" : path.substring(0, slash);
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Source of the trusted.glusterfs.pathinfo value for a file on a FUSE mount.
+ * The returned text only has to contain the translator tree, i.e. the
+ * "(<DISTRIBUTE:...> <POSIX(...):host:/brick/file>)" part; any surrounding
+ * getfattr decoration is ignored by the parser in {@link GlusterFSXattr}.
+ */
+public interface GlusterFSPathInfoProvider{
+
+    public String getPathInfo(String filename) throws IOException;
+
+    /* pathinfo of many files, keyed by file name; files that couldn't be looked up are left out */
+    public Map<String, String> getPathInfo(List<String> filenames) throws IOException;
+
+}
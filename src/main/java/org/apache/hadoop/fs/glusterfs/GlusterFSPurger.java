@@ -0,0 +1,263 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fast recursive deletes: a directory tree is renamed into a purge directory
+ * on the same volume, which is one rename whatever the size of the tree, and
+ * a daemon thread removes it in the background, at a limited rate so it
+ * doesn't crowd out the volume's other users.
+ *
+ * Every purger moves trees into a claim of its own, a subdirectory of the
+ * purge directory named after it, and only removes what's in its claim, so
+ * the JVMs sharing a purge directory never work on the same tree and each
+ * one's rate is its own.  The daemon only starts once something was moved.
+ * Space comes back (and quota drops) only once a tree is purged.  What a
+ * JVM that exited left behind is adopted, renamed into its own claim, by a
+ * running purger once it hasn't changed for ten intervals, or right away by
+ * running this class:
+ *
+ *   java -cp glusterfs-hadoop.jar:... org.apache.hadoop.fs.glusterfs.GlusterFSPurger /mnt/gv0/.hadoop-purge [entries/s]
+ *
+ * which takes over the trees of running purgers too.
+ */
+public class GlusterFSPurger implements Runnable{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSPurger.class);
+
+    public static final String DEFAULT_DIRECTORY="/.hadoop-purge";
+    public static final long DEFAULT_RATE=0;
+    public static final int DEFAULT_THREADS=4;
+    public static final long DEFAULT_INTERVAL=60*1000;
+
+    /* one per purge directory in the JVM, shared by the volume instances */
+    private static final Map<File, GlusterFSPurger> purgers=new HashMap<File, GlusterFSPurger>();
+
+    private final File directory;
+    /* the subdirectory this purger moves trees into and purges */
+    private final File claim;
+    private final GlusterFSDeleter deleter=new GlusterFSDeleter();
+    private long rate=DEFAULT_RATE;
+    private long interval=DEFAULT_INTERVAL;
+    private Thread thread=null;
+    private boolean pending=false;
+
+    private final AtomicLong moved=new AtomicLong();
+    private final AtomicLong purged=new AtomicLong();
+    private final AtomicLong failures=new AtomicLong();
+    private final AtomicLong adopted=new AtomicLong();
+
+    GlusterFSPurger(File directory){
+        this.directory=directory;
+        this.claim=new File(directory, UUID.randomUUID().toString());
+        deleter.configure(DEFAULT_THREADS);
+    }
+
+    public static GlusterFSPurger get(File directory){
+        synchronized (purgers){
+            GlusterFSPurger p=purgers.get(directory);
+            if(p==null){
+                p=new GlusterFSPurger(directory);
+                purgers.put(directory, p);
+            }
+            return p;
+        }
+    }
+
+    public synchronized void configure(long rate,int threads,long interval){
+        this.rate=rate;
+        this.interval=Math.max(1, interval);
+        deleter.configure(threads);
+    }
+
+    public File getDirectory(){
+        return directory;
+    }
+
+    public File getClaim(){
+        return claim;
+    }
+
+    /* whether f is the purge directory or in it, which can't be moved aside */
+    public boolean contains(File f){
+        String dir=directory.getAbsolutePath();
+        String path=f.getAbsolutePath();
+        return path.equals(dir)||path.startsWith(dir+File.separator);
+    }
+
+    /**
+     * Renames f into the purge directory to be removed in the background.
+     * False if it couldn't be, f is then still where it was.
+     */
+    public boolean moveAside(File f){
+        if(contains(f)||directory.getAbsoluteFile().toPath().startsWith(f.getAbsoluteFile().toPath()))
+            return false;
+        if(!claim.isDirectory()&&!claim.mkdirs()&&!claim.isDirectory()){
+            log.warn("Cannot create purge directory "+claim);
+            return false;
+        }
+        File target=new File(claim, System.currentTimeMillis()+"-"+UUID.randomUUID());
+        if(!f.renameTo(target))
+            return false;
+
+        moved.incrementAndGet();
+        wake();
+        return true;
+    }
+
+    /* starts the daemon if need be and has it purge now */
+    public synchronized void wake(){
+        pending=true;
+        if(thread==null){
+            thread=new Thread(this, "glusterfs-purge-"+directory);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        notifyAll();
+    }
+
+    public void run(){
+        while (!Thread.currentThread().isInterrupted()){
+            try{
+                synchronized (this){
+                    if(!pending)
+                        wait(interval);
+                    pending=false;
+                }
+                purge();
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }catch (RuntimeException e){
+                log.warn("Purging "+directory+" failed", e);
+            }
+        }
+    }
+
+    /* removes what's in this purger's claim, adopting what was left behind, true if it's all gone */
+    public boolean purge(){
+        long r;
+        long i;
+        synchronized (this){
+            r=rate;
+            i=interval;
+        }
+        adopt(10*i);
+        return purgeClaim(r);
+    }
+
+    /* removes everything in the purge directory, whoever moved it there */
+    public boolean purgeAll(){
+        long r;
+        synchronized (this){
+            r=rate;
+        }
+        adopt(0);
+        boolean complete=purgeClaim(r);
+        if(complete)
+            claim.delete();
+        return complete;
+    }
+
+    /* renames what others left in the purge directory, unchanged for age ms, into the claim */
+    private void adopt(long age){
+        String[] names=directory.list();
+        long now=System.currentTimeMillis();
+        if(names==null)
+            return;
+
+        for(String name : names){
+            File f=new File(directory, name);
+            if(f.equals(claim)||now-f.lastModified()<age)
+                continue;
+            if(!claim.isDirectory()&&!claim.mkdirs()&&!claim.isDirectory())
+                return;
+            /* a rename, only one purger gets it */
+            if(f.renameTo(new File(claim, name)))
+                adopted.incrementAndGet();
+        }
+    }
+
+    private boolean purgeClaim(long r){
+        String[] names=claim.list();
+        boolean complete=true;
+        if(names==null)
+            return true;
+
+        /* others see this purger is alive */
+        claim.setLastModified(System.currentTimeMillis());
+        for(String name : names){
+            GlusterFSDeleter.Result result=deleter.delete(new File(claim, name), r);
+            if(result.isComplete()){
+                purged.incrementAndGet();
+            }else{
+                failures.incrementAndGet();
+                complete=false;
+            }
+            claim.setLastModified(System.currentTimeMillis());
+        }
+        return complete;
+    }
+
+    /* trees renamed into the purge directory by this JVM */
+    public long getMoved(){
+        return moved.get();
+    }
+
+    /* trees removed from it */
+    public long getPurged(){
+        return purged.get();
+    }
+
+    /* trees that couldn't be removed completely, retried on the next pass */
+    public long getFailures(){
+        return failures.get();
+    }
+
+    /* trees and claims taken over from other purgers */
+    public long getAdopted(){
+        return adopted.get();
+    }
+
+    public synchronized String toString(){
+        return "purge directory="+claim+" rate="+rate+" interval="+interval+" deleter "+deleter+" moved="+getMoved()+" purged="+getPurged();
+    }
+
+    public static void main(String[] args){
+        if(args.length<1||args.length>2){
+            System.err.println("usage: GlusterFSPurger <purge directory> [entries/s]");
+            System.exit(1);
+        }
+        GlusterFSPurger p=new GlusterFSPurger(new File(args[0]));
+        if(args.length>1)
+            p.configure(Long.parseLong(args[1]), DEFAULT_THREADS, DEFAULT_INTERVAL);
+        boolean complete=p.purgeAll();
+        System.out.println("purged "+p.getPurged()+" trees from "+args[0]+(complete ? "" : ", "+p.getFailures()+" left"));
+        System.exit(complete ? 0 : 2);
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.ContentSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Directory usage from the accounting the quota translator keeps, so
+ * getContentSummary doesn't have to walk the tree.
+ *
+ * trusted.glusterfs.quota.size on a directory is the space used below it,
+ * summed over the distribute subvolumes by the client.  Since 3.7 it's
+ * 24 bytes, big endian size, file count and directory count (counting the
+ * directory itself); before, only the 8 byte size, which isn't enough for a
+ * summary.  The size is allocated space, so it differs from the summed file
+ * lengths for sparse files and is updated asynchronously, which is why
+ * using it is a choice between speed and accuracy.
+ */
+public class GlusterFSQuota{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSQuota.class);
+
+    public static final String SIZE_XATTR="trusted.glusterfs.quota.size";
+    public static final String LIMIT_XATTR="trusted.glusterfs.quota.limit-set";
+    public static final String OBJECT_LIMIT_XATTR="trusted.glusterfs.quota.limit-objects";
+
+    /**
+     * Summary of the directory at path from its quota xattrs, null if they
+     * aren't there (quota off, no native binding, trusted namespace hidden)
+     * or don't make sense, in which case the tree has to be walked.
+     */
+    public static ContentSummary getContentSummary(String path){
+        if(!GlusterFSNative.isAvailable())
+            return null;
+
+        try{
+            byte[] size=GlusterFSNative.getxattr(path, SIZE_XATTR);
+            return parse(size, read(path, LIMIT_XATTR), read(path, OBJECT_LIMIT_XATTR));
+        }catch (IOException e){
+            log.debug("No quota accounting on "+path+": "+e.getMessage());
+            return null;
+        }
+    }
+
+    /* limits are optional, null when not set */
+    private static byte[] read(String path,String name){
+        try{
+            return GlusterFSNative.getxattr(path, name);
+        }catch (IOException e){
+            return null;
+        }
+    }
+
+    /**
+     * Summary from the raw xattr values.  limit and objectLimit, hard and
+     * soft limit as two big endian longs each, may be null.
+     */
+    public static ContentSummary parse(byte[] size,byte[] limit,byte[] objectLimit){
+        if(size==null||size.length<24)
+            return null;
+
+        long bytes=getLong(size, 0);
+        long files=getLong(size, 8);
+        long dirs=getLong(size, 16);
+        /* accounting that went negative is being fixed up, don't trust it */
+        if(bytes<0||files<0||dirs<1)
+            return null;
+
+        return new ContentSummary(bytes, files, dirs, hardLimit(objectLimit), bytes, hardLimit(limit));
+    }
+
+    private static long hardLimit(byte[] limit){
+        if(limit==null||limit.length<8)
+            return -1;
+        long hard=getLong(limit, 0);
+        return hard>0 ? hard : -1;
+    }
+
+    static long getLong(byte[] b,int off){
+        long v=0;
+        for(int i=off;i<off+8;i++)
+            v=v<<8|(b[i]&0xff);
+        return v;
+    }
+}
@@ -0,0 +1,314 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.io.ElasticByteBufferPool;
+
+/**
+ * Read-ahead for streams reading through the mount.  FUSE splits reads into
+ * 128KB requests and the kernel reads ahead little on a gluster mount, so a
+ * sequential reader waits a network round trip for every chunk.  Once a
+ * stream has read SEQUENTIAL_READS times in a row where the last read ended,
+ * the next windows of the file are read on a shared pool into pooled
+ * buffers while the stream works through the current one.
+ *
+ * The window adapts to the reader: it doubles (up to maxWindow) when the
+ * reader had to wait for a window, so it outpaces the reads in flight, and
+ * halves (down to minWindow) when every window queued was already complete,
+ * so a slow reader doesn't pin memory.  Any read elsewhere drops the windows
+ * and turns read-ahead off for the stream until it's sequential again.
+ *
+ * windows of 0 disables read-ahead.
+ */
+public class GlusterFSReadAhead{
+
+    public static final int DEFAULT_MIN_WINDOW=128*1024;
+    public static final int DEFAULT_MAX_WINDOW=4*1024*1024;
+    public static final int DEFAULT_THREADS=8;
+    /* in-order reads before windows are fetched */
+    static final int SEQUENTIAL_READS=2;
+
+    private final ElasticByteBufferPool buffers=new ElasticByteBufferPool();
+    private ThreadPoolExecutor pool=null;
+    private int windows=0;
+    private int minWindow=DEFAULT_MIN_WINDOW;
+    private int maxWindow=DEFAULT_MAX_WINDOW;
+
+    private final AtomicLong fetched=new AtomicLong();
+    private final AtomicLong served=new AtomicLong();
+    private final AtomicLong waits=new AtomicLong();
+    private final AtomicLong dropped=new AtomicLong();
+
+    public synchronized void configure(int windows,int minWindow,int maxWindow,int threads){
+        this.windows=Math.max(0, windows);
+        this.minWindow=Math.max(1, minWindow);
+        this.maxWindow=Math.max(this.minWindow, maxWindow);
+        threads=Math.max(1, threads);
+        if(pool==null){
+            pool=new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new Daemons());
+            pool.allowCoreThreadTimeOut(true);
+        }else if(threads>pool.getMaximumPoolSize()){
+            pool.setMaximumPoolSize(threads);
+            pool.setCorePoolSize(threads);
+        }else{
+            pool.setCorePoolSize(threads);
+            pool.setMaximumPoolSize(threads);
+        }
+    }
+
+    public synchronized boolean isEnabled(){
+        return windows>0&&pool!=null;
+    }
+
+    /* read-ahead state for one stream reading channel, null if disabled */
+    public synchronized Reader open(FileChannel channel){
+        if(!isEnabled())
+            return null;
+        return new Reader(channel, pool, windows, minWindow, maxWindow);
+    }
+
+    static class Window{
+        final long start;
+        final int len;
+        final Future<ByteBuffer> data;
+
+        Window(long start,int len,Future<ByteBuffer> data){
+            this.start=start;
+            this.len=len;
+            this.data=data;
+        }
+    }
+
+    /**
+     * Serves one stream's in-order reads, from windows read ahead where it
+     * can.  Not thread safe, the stream serializes its reads.
+     */
+    public class Reader{
+        private final FileChannel channel;
+        private final ThreadPoolExecutor pool;
+        private final int windows;
+        private final int minWindow;
+        private final int maxWindow;
+        private final ArrayDeque<Window> queue=new ArrayDeque<Window>();
+        private int window;
+        private long expected=-1;
+        private int sequential=0;
+        /* end of the last window queued */
+        private long next;
+        private boolean eof=false;
+
+        Reader(FileChannel channel,ThreadPoolExecutor pool,int windows,int minWindow,int maxWindow){
+            this.channel=channel;
+            this.pool=pool;
+            this.windows=windows;
+            this.minWindow=minWindow;
+            this.maxWindow=maxWindow;
+            this.window=minWindow;
+        }
+
+        /* like channel.read(dst, pos) */
+        public int read(ByteBuffer dst,long pos) throws IOException{
+            if(pos!=expected){
+                drop();
+                sequential=0;
+            }else if(sequential<SEQUENTIAL_READS){
+                sequential++;
+            }
+
+            int n;
+            if(sequential<SEQUENTIAL_READS){
+                n=channel.read(dst, pos);
+            }else{
+                if(queue.isEmpty()){
+                    next=pos;
+                    eof=false;
+                }
+                fill();
+                n=take(dst, pos);
+            }
+            expected=n>0 ? pos+n : -1;
+            return n;
+        }
+
+        /* queue windows up to the configured count */
+        private void fill(){
+            while (queue.size()<windows&&!eof){
+                final long start=next;
+                final int len=window;
+                queue.add(new Window(start, len, pool.submit(new Callable<ByteBuffer>(){
+                    public ByteBuffer call() throws IOException{
+                        return fetch(start, len);
+                    }
+                })));
+                next+=len;
+            }
+        }
+
+        private ByteBuffer fetch(long start,int len) throws IOException{
+            ByteBuffer buf=buffers.getBuffer(false, len);
+            buf.clear();
+            buf.limit(len);
+            while (buf.hasRemaining()){
+                int n=channel.read(buf, start+buf.position());
+                if(n<=0)
+                    break;
+            }
+            buf.flip();
+            fetched.addAndGet(buf.remaining());
+            return buf;
+        }
+
+        private int take(ByteBuffer dst,long pos) throws IOException{
+            Window w=queue.peek();
+            if(w==null||pos<w.start||pos>=w.start+w.len){
+                drop();
+                return channel.read(dst, pos);
+            }
+
+            boolean ready=w.data.isDone();
+            ByteBuffer data=get(w);
+            if(!ready){
+                waits.incrementAndGet();
+                window=Math.min(maxWindow, window*2);
+            }else if(allDone()){
+                window=Math.max(minWindow, window/2);
+            }
+
+            int off=(int) (pos-w.start);
+            if(off>=data.limit()){
+                /* past where the file ended when the window was read */
+                queue.poll();
+                buffers.putBuffer(data);
+                drop();
+                eof=true;
+                return channel.read(dst, pos);
+            }
+
+            ByteBuffer src=data.duplicate();
+            src.position(off);
+            int n=Math.min(src.remaining(), dst.remaining());
+            src.limit(off+n);
+            dst.put(src);
+            served.addAndGet(n);
+
+            if(off+n==data.limit()){
+                queue.poll();
+                buffers.putBuffer(data);
+                /* a short window holds the end of the file */
+                if(data.limit()<w.len)
+                    eof=true;
+                fill();
+            }
+            return n;
+        }
+
+        private boolean allDone(){
+            for(Window w : queue){
+                if(!w.data.isDone())
+                    return false;
+            }
+            return true;
+        }
+
+        private ByteBuffer get(Window w) throws IOException{
+            try{
+                return w.data.get();
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted reading ahead");
+            }catch (ExecutionException e){
+                drop();
+                if(e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new IOException("Error reading ahead", e.getCause());
+            }
+        }
+
+        /* forget every window, returning the buffers of the finished ones */
+        public void drop(){
+            Window w;
+            while ((w=queue.poll())!=null){
+                dropped.incrementAndGet();
+                if(w.data.cancel(false)||!w.data.isDone())
+                    continue;
+                try{
+                    buffers.putBuffer(w.data.get());
+                }catch (Exception e){
+                    /* nothing to give back */
+                }
+            }
+            window=minWindow;
+        }
+
+        /* current window size */
+        public int getWindow(){
+            return window;
+        }
+    }
+
+    /* bytes read ahead */
+    public long getFetched(){
+        return fetched.get();
+    }
+
+    /* bytes handed to streams out of windows */
+    public long getServed(){
+        return served.get();
+    }
+
+    /* times a stream caught up with the windows in flight */
+    public long getWaits(){
+        return waits.get();
+    }
+
+    /* windows dropped on random access or close */
+    public long getDropped(){
+        return dropped.get();
+    }
+
+    public synchronized String toString(){
+        return "read-ahead windows="+windows+" window="+minWindow+"-"+maxWindow+" fetched="+getFetched()+" served="+getServed()+" waits="+getWaits();
+    }
+
+    static class Daemons implements ThreadFactory{
+        private final AtomicInteger count=new AtomicInteger();
+
+        public Thread newThread(Runnable r){
+            Thread t=new Thread(r, "glusterfs-readahead-"+count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
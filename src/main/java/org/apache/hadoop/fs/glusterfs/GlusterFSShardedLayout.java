@@ -0,0 +1,112 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.hadoop.fs.BlockLocation;
+
+/**
+ * Layout of a file cut by the shard translator.  The first shardSize bytes
+ * are the base file, which pathinfo describes; shard N holds the bytes from
+ * N*shardSize and is stored as /.shard/<gfid>.N, on whichever subvolume
+ * distribute hashes that name to in the .shard directory.
+ *
+ * Shard layouts are worked out on first use and kept, so a cached sharded
+ * layout answers any range without going back to the mount.
+ */
+public class GlusterFSShardedLayout extends GlusterFSLayout{
+
+    private final GlusterFSLayout base;
+    private final long shardSize;
+    private final String gfid;
+    private final GlusterFSDhtLayout shardDir;
+    private final GlusterFSLayout[] shards;
+
+    public GlusterFSShardedLayout(GlusterFSLayout base,long shardSize,long len,String gfid,GlusterFSDhtLayout shardDir){
+        super(base.getRoot());
+        this.base=base;
+        this.shardSize=shardSize;
+        this.gfid=gfid;
+        this.shardDir=shardDir;
+        this.shards=new GlusterFSLayout[(int) Math.max(1, (len+shardSize-1)/shardSize)];
+        this.shards[0]=base;
+    }
+
+    public long getShardSize(){
+        return shardSize;
+    }
+
+    public String getGfid(){
+        return gfid;
+    }
+
+    /* layout of shard n, 0 being the base file */
+    public GlusterFSLayout getShard(long n){
+        if(n>=shards.length)
+            return shardDir.layoutOf(gfid+"."+n);
+
+        /* layouts are immutable, racing threads compute the same one */
+        GlusterFSLayout l=shards[(int) n];
+        if(l==null){
+            l=shardDir.layoutOf(gfid+"."+n);
+            shards[(int) n]=l;
+        }
+        return l;
+    }
+
+    public BlockLocation[] getBlockLocations(long start,long len){
+        List<BlockLocation> out=new ArrayList<BlockLocation>();
+        long end=start+len;
+        long pos=start;
+
+        do{
+            long n=pos/shardSize;
+            long shardStart=n*shardSize;
+            long pieceEnd=Math.min(shardStart+shardSize, end);
+
+            for(BlockLocation b : getShard(n).getBlockLocations(pos-shardStart, pieceEnd-pos)){
+                b.setOffset(b.getOffset()+shardStart);
+                out.add(b);
+            }
+            pos=pieceEnd;
+        }while (pos<end);
+
+        return out.toArray(new BlockLocation[out.size()]);
+    }
+
+    /* only the base file's bricks, shard paths are computed and never checked */
+    public TreeMap<Integer, GlusterFSBrickClass> getBrickHints(long start,long len){
+        if(start+len>shardSize)
+            return new TreeMap<Integer, GlusterFSBrickClass>();
+        return base.getBrickHints(start, len);
+    }
+
+    /* splits line up with shards */
+    public long alignBlockSize(long blockSize){
+        return shardSize;
+    }
+
+    public String toString(){
+        return base+" sharded "+shardSize+" as "+gfid;
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Turns layouts of files on sharded volumes into GlusterFSShardedLayouts.
+ *
+ * The shard translator hides /.shard and its own xattrs from most clients,
+ * so shards are placed by hashing their names against the default layout
+ * of /.shard, built from the volume root's pathinfo.  The file's gfid comes
+ * from the glusterfs.gfid.string virtual xattr, which needs the native
+ * getxattr binding.  trusted.glusterfs.shard.block-size is used when the
+ * mount lets it through, otherwise the configured shard size is assumed.
+ */
+public class GlusterFSShards{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSShards.class);
+
+    public static final String BLOCK_SIZE_XATTR="trusted.glusterfs.shard.block-size";
+    public static final String GFID_XATTR="glusterfs.gfid.string";
+    public static final String SHARD_DIR=".shard";
+
+    static class ShardDir{
+        final long loaded;
+        final GlusterFSDhtLayout dht;
+
+        ShardDir(long loaded,GlusterFSDhtLayout dht){
+            this.loaded=loaded;
+            this.dht=dht;
+        }
+    }
+
+    private long shardSize=0;
+    private long ttl=GlusterFSLayoutCache.DEFAULT_TTL;
+
+    /* /.shard layout by volume mount point */
+    private final Map<String, ShardDir> shardDirs=new HashMap<String, ShardDir>();
+
+    public synchronized void configure(long shardSize,long ttl){
+        this.shardSize=shardSize;
+        this.ttl=ttl;
+        shardDirs.clear();
+    }
+
+    public synchronized boolean isEnabled(){
+        return shardSize>0&&GlusterFSNative.isAvailable();
+    }
+
+    public synchronized long getShardSize(){
+        return shardSize;
+    }
+
+    /**
+     * Layout of file, given the layout of its base file from pathinfo.
+     * Returns base unchanged for files that aren't sharded or can't be
+     * placed.  volumeRoot is the mount point of the file's volume.
+     */
+    public GlusterFSLayout shard(GlusterFSXattr attr,String volumeRoot,String file,long len,GlusterFSLayout base){
+        long size=getShardSize();
+
+        if(!isEnabled()||len<=size)
+            return base;
+
+        try{
+            size=readBlockSize(file, size);
+            if(len<=size)
+                return base;
+
+            String gfid=GlusterFSNative.getxattrString(file, GFID_XATTR);
+            GlusterFSDhtLayout dir=getShardDir(attr, volumeRoot);
+            return new GlusterFSShardedLayout(base, size, len, gfid, dir);
+        }catch (IOException e){
+            log.debug("Cannot place shards of "+file+": "+e.getMessage());
+            return base;
+        }
+    }
+
+    /* the 8 byte big endian block size shard keeps on the base file */
+    private static long readBlockSize(String file,long fallback) throws IOException{
+        byte[] v=null;
+
+        try{
+            v=GlusterFSNative.getxattr(file, BLOCK_SIZE_XATTR);
+        }catch (GlusterFSNative.ErrnoException e){
+            if(e.getErrno()==GlusterFSNative.ENOENT)
+                throw e;
+            return fallback;
+        }
+        if(v.length!=8)
+            return fallback;
+
+        long size=0;
+        for(byte b : v)
+            size=size<<8|(b&0xff);
+        return size>0 ? size : fallback;
+    }
+
+    private GlusterFSDhtLayout getShardDir(GlusterFSXattr attr,String volumeRoot) throws IOException{
+        synchronized (this){
+            ShardDir d=shardDirs.get(volumeRoot);
+            if(d!=null&&(ttl<=0||System.currentTimeMillis()-d.loaded<=ttl))
+                return d.dht;
+        }
+
+        GlusterFSLayout root=attr.getLayout(volumeRoot);
+        GlusterFSLayout dir=new GlusterFSLayout(GlusterFSLayout.childOf(root.getRoot(), SHARD_DIR));
+        GlusterFSDhtLayout dht=GlusterFSDhtLayout.forDirectory(dir, "/"+SHARD_DIR);
+        if(dht==null)
+            throw new IOException("Cannot lay out "+SHARD_DIR+" from "+root);
+
+        synchronized (this){
+            shardDirs.put(volumeRoot, new ShardDir(System.currentTimeMillis(), dht));
+        }
+        return dht;
+    }
+
+    public synchronized void clear(){
+        shardDirs.clear();
+    }
+
+    public String toString(){
+        return "shards: size="+getShardSize()+" enabled="+isEnabled();
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of file attributes, keyed by the file's path on the mount, so
+ * repeated exists/getFileStatus calls on the same paths don't each go
+ * through FUSE.  A null entry records a path that didn't exist.
+ *
+ * Entries live for ttl milliseconds.  The owning volume drops the entries
+ * of every path it changes itself (and of the parent directories, whose
+ * mtime and contents change with them), but changes made elsewhere go
+ * unnoticed until entries expire: the cache trades coherence for round
+ * trips, which is why it's off unless sized.
+ *
+ * Besides hits and misses, it keeps the age of the entries hits were
+ * served from, a measure of how stale answers may have been.
+ */
+public class GlusterFSStatCache{
+
+    public static final long DEFAULT_TTL=1000;
+
+    public static class CachedStat{
+        final long loaded;
+        final GlusterFileAttributes attributes;
+
+        CachedStat(long loaded,GlusterFileAttributes attributes){
+            this.loaded=loaded;
+            this.attributes=attributes;
+        }
+
+        /* null for a path cached as missing */
+        public GlusterFileAttributes getAttributes(){
+            return attributes;
+        }
+    }
+
+    private int maxEntries=0;
+    private long ttl=DEFAULT_TTL;
+    private boolean negative=true;
+
+    private final AtomicLong hits=new AtomicLong();
+    private final AtomicLong negativeHits=new AtomicLong();
+    private final AtomicLong misses=new AtomicLong();
+    private final AtomicLong expirations=new AtomicLong();
+    private final AtomicLong evictions=new AtomicLong();
+    private final AtomicLong invalidations=new AtomicLong();
+    private final AtomicLong hitAge=new AtomicLong();
+    private final AtomicLong maxHitAge=new AtomicLong();
+
+    private final LinkedHashMap<String, CachedStat> entries=new LinkedHashMap<String, CachedStat>(16, 0.75f, true){
+        private static final long serialVersionUID=1L;
+
+        protected boolean removeEldestEntry(Map.Entry<String, CachedStat> eldest){
+            if(size()>maxEntries){
+                evictions.incrementAndGet();
+                String path=eldest.getKey();
+                remove(path);
+                index.removed(path);
+            }
+            return false;
+        }
+    };
+    private final GlusterFSPathIndex index=new GlusterFSPathIndex(entries);
+
+    /* a maxEntries of 0 turns the cache off */
+    public synchronized void configure(int maxEntries,long ttl,boolean negative){
+        this.maxEntries=maxEntries;
+        this.ttl=ttl;
+        this.negative=negative;
+        Iterator<String> it=entries.keySet().iterator();
+        while (entries.size()>Math.max(maxEntries, 0)&&it.hasNext()){
+            String path=it.next();
+            it.remove();
+            index.removed(path);
+        }
+    }
+
+    public synchronized boolean isEnabled(){
+        return maxEntries>0&&ttl>0;
+    }
+
+    /**
+     * The cached entry for path, null on a miss.  A hit on a path cached as
+     * missing returns an entry whose attributes are null.
+     */
+    public synchronized CachedStat get(String path){
+        CachedStat e=entries.get(path);
+        long now=System.currentTimeMillis();
+
+        if(e!=null&&now-e.loaded>ttl){
+            entries.remove(path);
+            index.removed(path);
+            expirations.incrementAndGet();
+            e=null;
+        }
+        if(e==null){
+            misses.incrementAndGet();
+            return null;
+        }
+
+        (e.attributes==null ? negativeHits : hits).incrementAndGet();
+        long age=now-e.loaded;
+        hitAge.addAndGet(age);
+        if(age>maxHitAge.get())
+            maxHitAge.set(age);
+        return e;
+    }
+
+    /* attributes of path as just read, null if it doesn't exist */
+    public synchronized void put(String path,GlusterFileAttributes attributes){
+        if(!isEnabled()||(attributes==null&&!negative))
+            return;
+        index.add(path);
+        entries.put(path, new CachedStat(System.currentTimeMillis(), attributes));
+    }
+
+    /* drop a path, everything below it and its ancestors */
+    public synchronized void invalidate(String path){
+        if(entries.isEmpty())
+            return;
+        invalidations.incrementAndGet();
+        entries.remove(path);
+        for(String p : index.below(path))
+            entries.remove(p);
+        index.removed(path);
+
+        for(String dir=GlusterFSPathIndex.parent(path);dir!=null;dir=GlusterFSPathIndex.parent(dir)){
+            entries.remove(dir);
+            index.removed(dir);
+        }
+    }
+
+    public synchronized void clear(){
+        entries.clear();
+        index.clear();
+    }
+
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    public long getHits(){
+        return hits.get();
+    }
+
+    public long getNegativeHits(){
+        return negativeHits.get();
+    }
+
+    public long getMisses(){
+        return misses.get();
+    }
+
+    public long getExpirations(){
+        return expirations.get();
+    }
+
+    public long getEvictions(){
+        return evictions.get();
+    }
+
+    public long getInvalidations(){
+        return invalidations.get();
+    }
+
+    /* share of lookups answered from the cache, positive or negative */
+    public double getHitRate(){
+        long h=getHits()+getNegativeHits();
+        long all=h+getMisses();
+        return all==0 ? 0 : (double) h/all;
+    }
+
+    /* mean and worst age in milliseconds of the entries hits were served from */
+    public long getAverageHitAge(){
+        long h=getHits()+getNegativeHits();
+        return h==0 ? 0 : hitAge.get()/h;
+    }
+
+    public long getMaxHitAge(){
+        return maxHitAge.get();
+    }
+
+    public String toString(){
+        return "stat cache: size="+size()+" hits="+getHits()+" negative hits="+getNegativeHits()+" misses="+getMisses()
+                +" hit rate="+String.format("%.2f", getHitRate())+" avg age="+getAverageHitAge()+"ms max age="+getMaxHitAge()+"ms";
+    }
+}
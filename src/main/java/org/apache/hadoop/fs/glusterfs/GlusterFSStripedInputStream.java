@@ -0,0 +1,218 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileSystem;
+
+/**
+ * Reads a striped file, taking the chunks held by bricks of this host from
+ * the bricks' backend files and only the others through the mount.
+ *
+ * A brick's backend file either keeps its chunks at their offsets in the
+ * file, with holes in between, or packs them one after the other
+ * (stripe-coalesce).  Which one is told by its length: it ends where the
+ * stripe's last chunk ends in the file, or after all of the stripe's chunks
+ * packed.  A backend file of neither length (being written, truncated) is
+ * left alone and its stripe read through the mount, as is a local read that
+ * comes back short.
+ */
+public class GlusterFSStripedInputStream extends FSInputStream{
+
+    private final FileInputStream fuse;
+    private final FileInputStream[] local;
+    private final GlusterFSBrickClass tree;
+    private final long stripeSize;
+    private final int stripes;
+    /* per stripe, whether its local backend file is packed */
+    private final boolean[] packed;
+    private final FileSystem.Statistics statistics;
+    private long position;
+
+    private final AtomicLong localBytes=new AtomicLong();
+    private final AtomicLong remoteBytes=new AtomicLong();
+
+    /**
+     * localStripes holds, per stripe of the tree, the local backend file of
+     * that stripe or null if it's only on other hosts.  tree is any brick
+     * hint of the file, for the stripe math, len the file's length.
+     */
+    public GlusterFSStripedInputStream(File fuseFile,File[] localStripes,GlusterFSBrickClass tree,long len,FileSystem.Statistics statistics) throws IOException{
+        this.tree=tree;
+        this.stripeSize=tree.getStripeSize();
+        this.stripes=tree.getNrStripes();
+        this.statistics=statistics;
+        this.local=new FileInputStream[localStripes.length];
+        this.packed=new boolean[localStripes.length];
+        this.fuse=new FileInputStream(fuseFile);
+
+        try{
+            for(int i=0;i<localStripes.length;i++){
+                if(localStripes[i]==null)
+                    continue;
+                FileInputStream in=new FileInputStream(localStripes[i]);
+                long backend=in.getChannel().size();
+                if(backend==sparseLength(i, len)){
+                    local[i]=in;
+                }else if(backend==packedLength(i, len)){
+                    local[i]=in;
+                    packed[i]=true;
+                }else{
+                    in.close();
+                }
+            }
+        }catch (IOException e){
+            close();
+            throw e;
+        }
+    }
+
+    /* chunks of stripe i in a file of len bytes */
+    private long chunks(int i,long len){
+        long total=(len+stripeSize-1)/stripeSize;
+        return total>i ? (total-1-i)/stripes+1 : 0;
+    }
+
+    /* length of stripe i's backend file keeping its chunks at their offsets */
+    long sparseLength(int i,long len){
+        long n=chunks(i, len);
+        if(n==0)
+            return 0;
+        long last=i+(n-1)*stripes;
+        return Math.min(len, (last+1)*stripeSize);
+    }
+
+    /* length of stripe i's backend file packing its chunks */
+    long packedLength(int i,long len){
+        long n=chunks(i, len);
+        if(n==0)
+            return 0;
+        long last=i+(n-1)*stripes;
+        return (n-1)*stripeSize+Math.min(stripeSize, len-last*stripeSize);
+    }
+
+    public void seek(long pos) throws IOException{
+        if(pos<0)
+            throw new EOFException("Cannot seek to negative offset "+pos);
+        position=pos;
+    }
+
+    public long getPos() throws IOException{
+        return position;
+    }
+
+    public boolean seekToNewSource(long targetPos) throws IOException{
+        return false;
+    }
+
+    public int read() throws IOException{
+        byte[] b=new byte[1];
+        int n=read(b, 0, 1);
+        return n<=0 ? -1 : b[0]&0xff;
+    }
+
+    public int read(byte[] b,int off,int len) throws IOException{
+        int n=read(position, b, off, len);
+        if(n>0)
+            position+=n;
+        return n;
+    }
+
+    /* at most up to the end of the stripe chunk holding position */
+    public int read(long position,byte[] b,int off,int len) throws IOException{
+        if(len==0)
+            return 0;
+
+        int[] nodes=tree.getBrickNumberInTree(position, len);
+        /* it only compares stripe numbers, a read landing on the same stripe a round later isn't cut */
+        int n=(int) Math.min(nodes[2], stripeSize-position%stripeSize);
+        FileInputStream l=local[nodes[0]];
+
+        if(l!=null){
+            int r=l.getChannel().read(ByteBuffer.wrap(b, off, n), localOffset(nodes[0], position));
+            if(r==n){
+                localBytes.addAndGet(r);
+                count(r);
+                return r;
+            }
+        }
+
+        int r=fuse.getChannel().read(ByteBuffer.wrap(b, off, n), position);
+        if(r>0){
+            remoteBytes.addAndGet(r);
+            count(r);
+        }
+        return r;
+    }
+
+    public long skip(long n) throws IOException{
+        if(n<=0)
+            return 0;
+        position+=n;
+        return n;
+    }
+
+    /* where the byte at pos of the file is in stripe's backend file */
+    long localOffset(int stripe,long pos){
+        if(!packed[stripe])
+            return pos;
+        long chunk=pos/stripeSize;
+        return (chunk/stripes)*stripeSize+pos%stripeSize;
+    }
+
+    public void close() throws IOException{
+        IOException e=null;
+
+        for(FileInputStream s : local){
+            try{
+                if(s!=null)
+                    s.close();
+            }catch (IOException ex){
+                e=ex;
+            }
+        }
+        if(fuse!=null)
+            fuse.close();
+        if(e!=null)
+            throw e;
+    }
+
+    /* bytes served from local bricks */
+    public long getLocalBytes(){
+        return localBytes.get();
+    }
+
+    /* bytes read through the mount */
+    public long getRemoteBytes(){
+        return remoteBytes.get();
+    }
+
+    private void count(int bytes){
+        if(statistics!=null)
+            statistics.incrementBytesRead(bytes);
+    }
+}
@@ -0,0 +1,472 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.GlobFilter;
+import org.apache.hadoop.fs.GlobPattern;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Walks directory trees with a fork-join pool, one task per directory, so
+ * the listings of many directories are in flight at once.  Backs recursive
+ * listFiles, getContentSummary and globStatus of GlusterVolume.
+ *
+ * Results come out depth first, each directory's entries in listing order,
+ * or sorted by name when ordered is set, which makes them independent of
+ * how the bricks return entries.  Listing and stat'ing block on the mount,
+ * so tasks do it through ForkJoinPool.managedBlock and the pool keeps its
+ * parallelism up with spare threads meanwhile.
+ */
+public class GlusterFSTreeWalker{
+
+    static final Logger log=LoggerFactory.getLogger(GlusterFSTreeWalker.class);
+
+    public static final int DEFAULT_PARALLELISM=16;
+
+    private ForkJoinPool pool=null;
+    private boolean ordered=false;
+
+    public synchronized void configure(int parallelism,boolean ordered){
+        this.ordered=ordered;
+        if(pool==null||pool.getParallelism()!=Math.max(1, parallelism)){
+            if(pool!=null)
+                pool.shutdown();
+            pool=new ForkJoinPool(Math.max(1, parallelism));
+        }
+    }
+
+    private synchronized ForkJoinPool getPool(){
+        if(pool==null)
+            pool=new ForkJoinPool(DEFAULT_PARALLELISM);
+        return pool;
+    }
+
+    public synchronized boolean isOrdered(){
+        return ordered;
+    }
+
+    /* every file under dir, depth first, streamed */
+    public Files openFiles(GlusterVolume fs,FileStatus dir) throws IOException{
+        return new Files(fs, dir, getPool(), isOrdered());
+    }
+
+    public ContentSummary getContentSummary(GlusterVolume fs,FileStatus dir) throws IOException{
+        Tree t=invoke(new Walk(fs, dir, isOrdered()));
+        return new ContentSummary(t.length, t.fileCount, t.directoryCount);
+    }
+
+    /**
+     * Matches of an absolute path pattern whose components are split out,
+     * starting from the status of root, the same way FileSystem.globStatus
+     * does, except that each level's directories are listed in parallel.
+     * Patterns with braces or escapes aren't handled here; returns null for
+     * those and for patterns without wildcards, which the caller leaves to
+     * FileSystem.
+     */
+    public FileStatus[] glob(GlusterVolume fs,Path root,String pattern,PathFilter filter) throws IOException{
+        if(pattern.indexOf('{')>=0||pattern.indexOf('\\')>=0)
+            return null;
+
+        List<String> components=new ArrayList<String>();
+        boolean wildcard=false;
+        for(String c : pattern.split(Path.SEPARATOR)){
+            if(c.isEmpty())
+                continue;
+            components.add(c);
+            wildcard|=new GlobPattern(c).hasWildcard();
+        }
+        if(!wildcard)
+            return null;
+
+        List<Path> candidates=new ArrayList<Path>();
+        List<FileStatus> matches=null;
+        candidates.add(root);
+        for(int i=0;i<components.size();i++){
+            String component=components.get(i);
+            boolean last=i==components.size()-1;
+            boolean hasPattern=new GlobPattern(component).hasWildcard();
+
+            if(!last&&!hasPattern){
+                for(int j=0;j<candidates.size();j++)
+                    candidates.set(j, new Path(candidates.get(j), component));
+                continue;
+            }
+
+            List<Level> tasks=new ArrayList<Level>(candidates.size());
+            for(Path c : candidates)
+                tasks.add(new Level(fs, c, component, hasPattern, last, isOrdered()));
+            matches=invoke(new Levels(tasks));
+
+            candidates=new ArrayList<Path>(matches.size());
+            for(FileStatus s : matches)
+                candidates.add(s.getPath());
+            if(candidates.isEmpty())
+                break;
+        }
+
+        List<FileStatus> results=new ArrayList<FileStatus>();
+        for(FileStatus s : matches){
+            if(filter.accept(s.getPath()))
+                results.add(s);
+        }
+        return results.toArray(new FileStatus[results.size()]);
+    }
+
+    private <T> T invoke(RecursiveTask<T> task) throws IOException{
+        try{
+            return getPool().invoke(task);
+        }catch (WalkException e){
+            throw unwrap(e);
+        }
+    }
+
+    /* the pool may rethrow a copy wrapping the task's exception */
+    static IOException unwrap(WalkException e){
+        Throwable t=e;
+        while (t!=null&&!(t instanceof IOException))
+            t=t.getCause();
+        if(t==null)
+            throw e;
+        return (IOException) t;
+    }
+
+    /**
+     * The files under a directory, depth first, a batch at a time, in the
+     * order a serial recursion finds them.  Only the directories on the way
+     * down are held, and for each the listings of its next few
+     * subdirectories, which are in flight on the pool while the caller takes
+     * files.
+     */
+    public static class Files implements Closeable{
+        private final GlusterVolume fs;
+        private final ForkJoinPool pool;
+        private final boolean ordered;
+        private final int window;
+        private final List<Frame> stack=new ArrayList<Frame>();
+
+        /* a directory being walked */
+        class Frame{
+            final FileStatus[] children;
+            int next=0;
+            /* next child to look at for a listing to start */
+            int ahead=0;
+            /* listings started, of the subdirectories from next on in order */
+            final ArrayDeque<Listed> listings=new ArrayDeque<Listed>();
+
+            Frame(FileStatus[] children){
+                this.children=children;
+                startListings();
+            }
+
+            void startListings(){
+                while (listings.size()<window&&ahead<children.length){
+                    FileStatus c=children[ahead++];
+                    if(c.isDirectory()){
+                        Listed l=new Listed(fs, c.getPath(), ordered);
+                        pool.execute(l);
+                        listings.add(l);
+                    }
+                }
+            }
+        }
+
+        Files(GlusterVolume fs,FileStatus dir,ForkJoinPool pool,boolean ordered) throws IOException{
+            this.fs=fs;
+            this.pool=pool;
+            this.ordered=ordered;
+            this.window=pool.getParallelism();
+            try{
+                stack.add(new Frame(list(fs, dir.getPath(), true, ordered)));
+            }catch (WalkException e){
+                throw unwrap(e);
+            }
+        }
+
+        /* up to max files, null once the tree is done */
+        public FileStatus[] next(int max) throws IOException{
+            List<FileStatus> files=new ArrayList<FileStatus>();
+            while (files.size()<max&&!stack.isEmpty()){
+                Frame f=stack.get(stack.size()-1);
+                if(f.next>=f.children.length){
+                    stack.remove(stack.size()-1);
+                    continue;
+                }
+                FileStatus c=f.children[f.next++];
+                if(!c.isDirectory()){
+                    files.add(c);
+                    continue;
+                }
+                Listed l=f.listings.poll();
+                f.startListings();
+                try{
+                    stack.add(new Frame(l.join()));
+                }catch (WalkException e){
+                    close();
+                    throw unwrap(e);
+                }
+            }
+            return files.isEmpty() ? null : files.toArray(new FileStatus[files.size()]);
+        }
+
+        /* drops the listings still in flight */
+        public void close(){
+            for(Frame f : stack){
+                for(Listed l : f.listings)
+                    l.cancel(false);
+            }
+            stack.clear();
+        }
+    }
+
+    /* one directory's entries */
+    static class Listed extends RecursiveTask<FileStatus[]>{
+        private static final long serialVersionUID=1L;
+
+        final GlusterVolume fs;
+        final Path dir;
+        final boolean ordered;
+
+        Listed(GlusterVolume fs,Path dir,boolean ordered){
+            this.fs=fs;
+            this.dir=dir;
+            this.ordered=ordered;
+        }
+
+        protected FileStatus[] compute(){
+            return list(fs, dir, true, ordered);
+        }
+    }
+
+    /* a call blocking on the mount, made while the pool stands in for the thread */
+    static abstract class Blocking<T> implements ForkJoinPool.ManagedBlocker{
+        private T result=null;
+        private IOException failure=null;
+        private boolean done=false;
+
+        abstract T call() throws IOException;
+
+        public boolean block(){
+            try{
+                result=call();
+            }catch (IOException e){
+                failure=e;
+            }
+            done=true;
+            return true;
+        }
+
+        public boolean isReleasable(){
+            return done;
+        }
+
+        T get() throws IOException{
+            try{
+                ForkJoinPool.managedBlock(this);
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted walking the tree");
+            }
+            if(failure!=null)
+                throw failure;
+            return result;
+        }
+    }
+
+    static FileStatus status(final GlusterVolume fs,final Path p) throws IOException{
+        return new Blocking<FileStatus>(){
+            FileStatus call() throws IOException{
+                return fs.getFileStatus(p);
+            }
+        }.get();
+    }
+
+    /* checked exceptions out of fork-join tasks */
+    static class WalkException extends RuntimeException{
+        private static final long serialVersionUID=1L;
+
+        WalkException(IOException e){
+            super(e);
+        }
+    }
+
+    /* entries of a directory, or of a glob candidate that may be anything */
+    static FileStatus[] list(final GlusterVolume fs,final Path dir,final boolean known,boolean ordered){
+        try{
+            FileStatus[] children=new Blocking<FileStatus[]>(){
+                FileStatus[] call() throws IOException{
+                    return known ? fs.listDirectory(dir) : fs.listStatus(dir);
+                }
+            }.get();
+            if(ordered)
+                Arrays.sort(children);
+            return children;
+        }catch (FileNotFoundException e){
+            /* gone while walking */
+            log.info("ignoring invisible path :  "+dir);
+            return new FileStatus[0];
+        }catch (IOException e){
+            throw new WalkException(e);
+        }
+    }
+
+    static class Tree{
+        long length=0;
+        long fileCount=0;
+        long directoryCount=1;
+
+        void add(Tree sub){
+            length+=sub.length;
+            fileCount+=sub.fileCount;
+            directoryCount+=sub.directoryCount;
+        }
+    }
+
+    static class Walk extends RecursiveTask<Tree>{
+        private static final long serialVersionUID=1L;
+
+        final GlusterVolume fs;
+        final FileStatus dir;
+        final boolean ordered;
+
+        Walk(GlusterVolume fs,FileStatus dir,boolean ordered){
+            this.fs=fs;
+            this.dir=dir;
+            this.ordered=ordered;
+        }
+
+        protected Tree compute(){
+            Tree t=new Tree();
+            FileStatus[] children=list(fs, dir.getPath(), true, ordered);
+            List<Walk> subdirs=new ArrayList<Walk>();
+
+            for(FileStatus c : children){
+                if(c.isDirectory()){
+                    Walk w=new Walk(fs, c, ordered);
+                    w.fork();
+                    subdirs.add(w);
+                }
+            }
+
+            int next=0;
+            for(FileStatus c : children){
+                if(c.isDirectory()){
+                    t.add(subdirs.get(next++).join());
+                }else{
+                    t.length+=c.getLen();
+                    t.fileCount++;
+                }
+            }
+            return t;
+        }
+    }
+
+    /* one glob level below one candidate */
+    static class Level extends RecursiveTask<List<FileStatus>>{
+        private static final long serialVersionUID=1L;
+
+        final GlusterVolume fs;
+        final Path candidate;
+        final String component;
+        final boolean hasPattern;
+        final boolean last;
+        final boolean ordered;
+
+        Level(GlusterVolume fs,Path candidate,String component,boolean hasPattern,boolean last,boolean ordered){
+            this.fs=fs;
+            this.candidate=candidate;
+            this.component=component;
+            this.hasPattern=hasPattern;
+            this.last=last;
+            this.ordered=ordered;
+        }
+
+        protected List<FileStatus> compute(){
+            List<FileStatus> matches=new ArrayList<FileStatus>();
+            try{
+                if(!hasPattern){
+                    try{
+                        matches.add(status(fs, new Path(candidate, component)));
+                    }catch (FileNotFoundException e){
+                        /* no match */
+                    }
+                    return matches;
+                }
+
+                FileStatus[] children=list(fs, candidate, false, ordered);
+                /* a file lists as itself, it has no entries to match */
+                if(children.length==1&&!children[0].isDirectory()&&!status(fs, candidate).isDirectory())
+                    return matches;
+
+                GlobFilter filter=new GlobFilter(component);
+                for(FileStatus c : children){
+                    if(!last&&!c.isDirectory())
+                        continue;
+                    c.setPath(new Path(candidate, c.getPath().getName()));
+                    if(filter.accept(c.getPath()))
+                        matches.add(c);
+                }
+                return matches;
+            }catch (FileNotFoundException e){
+                return matches;
+            }catch (IOException e){
+                throw new WalkException(e);
+            }
+        }
+    }
+
+    /* a glob level below every candidate, results in candidate order */
+    static class Levels extends RecursiveTask<List<FileStatus>>{
+        private static final long serialVersionUID=1L;
+
+        final List<Level> levels;
+
+        Levels(List<Level> levels){
+            this.levels=levels;
+        }
+
+        protected List<FileStatus> compute(){
+            List<FileStatus> matches=new ArrayList<FileStatus>();
+            invokeAll(levels);
+            for(Level l : levels)
+                matches.addAll(l.join());
+            return matches;
+        }
+    }
+
+    public String toString(){
+        return "parallelism="+getPool().getParallelism()+" ordered="+isOrdered();
+    }
+}
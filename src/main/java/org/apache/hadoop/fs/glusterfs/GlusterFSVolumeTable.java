@@ -0,0 +1,178 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.hadoop.fs.Path;
+
+/**
+ * The configured volumes and where they are mounted, for translating between
+ * glusterfs:// paths and files on the mounts.
+ *
+ * A table never changes once built, withVolume() returns a copy, so it can be
+ * read from any number of threads without locking and swapped in through a
+ * volatile field.  Files are matched to volumes with a trie of the mount
+ * points' path components, the longest mount point containing the file
+ * wins: with gv0 on /mnt/gv0 and gv1 on /mnt/gv0/gv1, /mnt/gv0/gv1/a is on
+ * gv1, and /mnt/gv01/a is on neither.
+ */
+public class GlusterFSVolumeTable{
+
+    public static final String SCHEME="glusterfs";
+
+    public static final GlusterFSVolumeTable EMPTY=new GlusterFSVolumeTable(null, new LinkedHashMap<String, Mount>());
+
+    static final class Mount{
+        final String volume;
+        final String mount;
+        /* mount point without trailing slashes, "" for / */
+        final String root;
+        /* glusterfs://volume, no authority for the default volume */
+        final String uriPrefix;
+
+        Mount(String volume,String mount,boolean isDefault){
+            this.volume=volume;
+            this.mount=mount;
+            int end=mount.length();
+            while (end>0&&mount.charAt(end-1)=='/')
+                end--;
+            this.root=mount.substring(0, end);
+            this.uriPrefix=SCHEME+"://"+(isDefault ? "" : volume);
+        }
+    }
+
+    static final class Node{
+        final Map<String, Node> children=new HashMap<String, Node>();
+        Mount mount;
+    }
+
+    private final String defaultVolume;
+    private final Map<String, Mount> mounts;
+    private final Node root;
+
+    private GlusterFSVolumeTable(String defaultVolume,Map<String, Mount> mounts){
+        this.defaultVolume=defaultVolume;
+        this.mounts=mounts;
+        this.root=new Node();
+
+        for(Mount m : mounts.values()){
+            Node node=root;
+            for(String name : m.root.split("/")){
+                if(name.length()==0)
+                    continue;
+                Node child=node.children.get(name);
+                if(child==null){
+                    child=new Node();
+                    node.children.put(name, child);
+                }
+                node=child;
+            }
+            /* two volumes on one mount point, the one added last gets its files */
+            node.mount=m;
+        }
+    }
+
+    /* a copy with volume mounted at mount added, the first volume added is the default */
+    public GlusterFSVolumeTable withVolume(String volume,String mount){
+        String def=defaultVolume==null ? volume : defaultVolume;
+        Map<String, Mount> copy=new LinkedHashMap<String, Mount>();
+
+        for(Mount m : mounts.values()){
+            if(!m.volume.equals(volume))
+                copy.put(m.volume, new Mount(m.volume, m.mount, def.equalsIgnoreCase(m.volume)));
+        }
+        copy.put(volume, new Mount(volume, mount, def.equalsIgnoreCase(volume)));
+        return new GlusterFSVolumeTable(def, copy);
+    }
+
+    public String getDefaultVolume(){
+        return defaultVolume;
+    }
+
+    /* mount point of volume as configured, null for the default volume */
+    public String getMount(String volume){
+        Mount m=find(volume);
+        return m==null ? null : m.mount;
+    }
+
+    /* volume name to mount point, in the order they were added */
+    public Map<String, String> getVolumes(){
+        Map<String, String> all=new LinkedHashMap<String, String>();
+        for(Mount m : mounts.values())
+            all.put(m.volume, m.mount);
+        return Collections.unmodifiableMap(all);
+    }
+
+    /* the file at the absolute path of volume (null for the default), null if the volume isn't known */
+    public File toFile(String volume,String path){
+        Mount m=find(volume);
+        if(m==null)
+            return null;
+        return new File(m.root+(path.startsWith("/") ? path : "/"+path));
+    }
+
+    /* the glusterfs:// path of f, null if it isn't on any volume's mount */
+    public Path toPath(File f){
+        return toPath(f.getAbsolutePath());
+    }
+
+    public Path toPath(String rawPath){
+        Node node=root;
+        Mount match=root.mount;
+        int end=0;
+        int i=0;
+        int len=rawPath.length();
+
+        while (i<len){
+            while (i<len&&rawPath.charAt(i)=='/')
+                i++;
+            if(i==len)
+                break;
+            int j=rawPath.indexOf('/', i);
+            if(j<0)
+                j=len;
+            node=node.children.get(rawPath.substring(i, j));
+            if(node==null)
+                break;
+            i=j;
+            if(node.mount!=null){
+                match=node.mount;
+                end=j;
+            }
+        }
+
+        if(match==null)
+            return null;
+        return new Path(end==len ? match.uriPrefix+"/" : match.uriPrefix+rawPath.substring(end));
+    }
+
+    private Mount find(String volume){
+        return mounts.get(volume==null ? defaultVolume : volume);
+    }
+
+    public String toString(){
+        return getVolumes().toString();
+    }
+}
@@ -19,38 +19,55 @@
 
 package org.apache.hadoop.fs.glusterfs;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.hadoop.fs.BlockLocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class GlusterFSXattr{
 
-    public enum LAYOUT {
-        D, S, R, DS, DR, SR, DSR
-    }
+    static final Logger log=LoggerFactory.getLogger(GlusterFSXattr.class);
 
-    public enum CMD {
-        GET_HINTS, GET_REPLICATION, GET_BLOCK_SIZE, CHECK_FOR_QUICK_IO
+    public enum LAYOUT {
+        D, S, R, DS, DR, SR, DSR, E, DE
     }
 
     private static String hostname;
 
-   private String getFattrCmdBase = null;
+   private GlusterFSPathInfoProvider pathInfo = null;
+   /* redundancy of disperse sets, 0 for gluster's default for the set size */
+   private int disperseRedundancy = 0;
    
    public GlusterFSXattr(String getAttr) {
-       getFattrCmdBase=getAttr;
+       this(new GlusterFSGetfattrPathInfo(getAttr));
    }
   
    public GlusterFSXattr(){
-	   getFattrCmdBase = "sudo getfattr -m . -n trusted.glusterfs.pathinfo";
+       this(GlusterFSNativePathInfo.isAvailable() ?
+               new GlusterFSNativePathInfo(new GlusterFSGetfattrPathInfo()) :
+               new GlusterFSGetfattrPathInfo());
+   }
+
+   public GlusterFSXattr(GlusterFSPathInfoProvider pathInfo){
+       this.pathInfo=pathInfo;
+   }
+
+   public GlusterFSPathInfoProvider getPathInfoProvider(){
+       return pathInfo;
+   }
+
+   public void setDisperseRedundancy(int redundancy){
+       this.disperseRedundancy=redundancy;
+   }
+
+   public int getDisperseRedundancy(){
+       return disperseRedundancy;
    }
    
     public String brick2host(String brick) throws IOException{
@@ -78,385 +95,215 @@ public class GlusterFSXattr{
     }
 
     public BlockLocation[] getPathInfo(String filename,long start,long len) throws IOException{
-        HashMap<String, ArrayList<String>> vol=null;
-        HashMap<String, Integer> meta=new HashMap<String, Integer>();
-
-        vol=execGetFattr(filename, meta, CMD.GET_HINTS);
-
-        return getHints(vol, meta, start, len, null);
+        return getPathInfo(getLayout(filename), start, len);
     }
 
-    public long getBlockSize(String filename) throws IOException{
-        HashMap<String, ArrayList<String>> vol=null;
-        HashMap<String, Integer> meta=new HashMap<String, Integer>();
+    public BlockLocation[] getPathInfo(GlusterFSLayout layout,long start,long len) throws IOException{
+        return layout.getBlockLocations(start, len);
+    }
 
-        vol=execGetFattr(filename, meta, CMD.GET_BLOCK_SIZE);
+    public GlusterFSLayout getLayout(String filename) throws IOException{
+        return parseLayout(pathInfo.getPathInfo(filename), disperseRedundancy);
+    }
 
-        if(!meta.containsKey("block-size"))
-            return 0;
+    /* layouts of many files with as few lookups as the provider allows; unknown files are left out */
+    public Map<String, GlusterFSLayout> getLayouts(List<String> filenames) throws IOException{
+        Map<String, GlusterFSLayout> layouts=new HashMap<String, GlusterFSLayout>();
 
-        return (long) meta.get("block-size");
+        for(Map.Entry<String, String> e : pathInfo.getPathInfo(filenames).entrySet()){
+            try{
+                layouts.put(e.getKey(), parseLayout(e.getValue(), disperseRedundancy));
+            }catch (IOException ex){
+                log.info("Cannot parse pathinfo of "+e.getKey()+": "+ex.getMessage());
+            }
+        }
+        return layouts;
+    }
 
+    public long getBlockSize(String filename) throws IOException{
+        return getLayout(filename).getStripeSize();
     }
 
     public short getReplication(String filename) throws IOException{
-        HashMap<String, ArrayList<String>> vol=null;
-        HashMap<String, Integer> meta=new HashMap<String, Integer>();
-
-        vol=execGetFattr(filename, meta, CMD.GET_REPLICATION);
-
-        return (short) getReplicationFromLayout(vol, meta);
-
+        return (short) getLayout(filename).getReplication();
     }
 
     public TreeMap<Integer, GlusterFSBrickClass> quickIOPossible(String filename,long start,long len) throws IOException{
-        String realpath=null;
-        HashMap<String, ArrayList<String>> vol=null;
-        HashMap<String, Integer> meta=new HashMap<String, Integer>();
-        TreeMap<Integer, GlusterFSBrickClass> hnts=new TreeMap<Integer, GlusterFSBrickClass>();
-
-        vol=execGetFattr(filename, meta, CMD.GET_HINTS);
-        getHints(vol, meta, start, len, hnts);
+        TreeMap<Integer, GlusterFSBrickClass> hnts=getLayout(filename).getBrickHints(start, len);
 
         if(hnts.size()==0)
             return null; // BOOM !!
 
-        // DEBUG - dump hnts here
         return hnts;
     }
 
-    public HashMap<String, ArrayList<String>> execGetFattr(String filename,HashMap<String, Integer> meta,CMD cmd) throws IOException{
-        Process p=null;
-        BufferedReader brInput=null;
-        String s=null;
-        String cmdOut=null;
-        String getfattrCmd=null;
-        String xlator=null;
-        String enclosingXl=null;
-        String enclosingXlVol=null;
-        String key=null;
-        String layout="";
-        int rcount=0;
-        int scount=0;
-        int dcount=0;
-        int count=0;
-
-        HashMap<String, ArrayList<String>> vol=new HashMap<String, ArrayList<String>>();
-
-        getfattrCmd=this.getFattrCmdBase + " " + filename;
-
-        p=Runtime.getRuntime().exec(getfattrCmd);
-        brInput=new BufferedReader(new InputStreamReader(p.getInputStream()));
-
-        cmdOut="";
-        while ((s=brInput.readLine())!=null)
-            cmdOut+=s;
-
-        /**
-         * TODO: Use a single regex for extracting posix paths as well as xlator
-         * counts for layout matching.
-         */
-
-        Pattern pattern=Pattern.compile("<(.*?)[:\\(](.*?)>");
-        Matcher matcher=pattern.matcher(cmdOut);
-
-        Pattern p_px=Pattern.compile(".*?:(.*)");
-        Matcher m_px;
-        String gibberish_path;
-
-        s=null;
-        while (matcher.find()){
-            xlator=matcher.group(1);
-            if(xlator.equalsIgnoreCase("posix")){
-                if(enclosingXl.equalsIgnoreCase("replicate"))
-                    count=rcount;
-                else if(enclosingXl.equalsIgnoreCase("stripe"))
-                    count=scount;
-                else if(enclosingXl.equalsIgnoreCase("distribute"))
-                    count=dcount;
-                else
-                    throw new IOException("Unknown Translator: "+enclosingXl);
-
-                key=enclosingXl+"-"+count;
-
-                if(vol.get(key)==null)
-                    vol.put(key, new ArrayList<String>());
-
-                gibberish_path=matcher.group(2);
-
-                /* extract posix path from the gibberish string */
-                m_px=p_px.matcher(gibberish_path);
-                if(!m_px.find())
-                    throw new IOException("Cannot extract posix path");
-
-                vol.get(key).add(m_px.group(1));
-                continue;
-            }
-
-            enclosingXl=xlator;
-            enclosingXlVol=matcher.group(2);
-
-            if(xlator.equalsIgnoreCase("replicate"))
-                if(rcount++!=0)
-                    continue;
-
-            if(xlator.equalsIgnoreCase("stripe")){
-                if(scount++!=0)
-                    continue;
+    /* a translator group being parsed: "(<HEADER> child child ...)" */
+    private static class Group{
+        String type=null;
+        String name=null;
+        long stripeSize=0;
+        int redundancy=0;
+        ArrayList<GlusterFSLayout.Node> children=new ArrayList<GlusterFSLayout.Node>();
 
-                Pattern ps=Pattern.compile("\\[(\\d+)\\]");
-                Matcher ms=ps.matcher(enclosingXlVol);
+        Group(int redundancy){
+            this.redundancy=redundancy;
+        }
 
-                if(ms.find()){
-                    if(((cmd==CMD.GET_BLOCK_SIZE)||(cmd==CMD.GET_HINTS))&&(meta!=null))
-                        meta.put("block-size", Integer.parseInt(ms.group(1)));
-                }else
+        GlusterFSLayout.Node build() throws IOException{
+            if(type==null){
+                if(children.size()==1)
+                    return children.get(0);
+                throw new IOException("Translator group without a translator");
+            }
+            if(type.equalsIgnoreCase("distribute"))
+                return new GlusterFSLayout.Translator(GlusterFSLayout.Type.DISTRIBUTE, name, children);
+            if(type.equalsIgnoreCase("replicate"))
+                return new GlusterFSLayout.Translator(GlusterFSLayout.Type.REPLICATE, name, children);
+            if(type.equalsIgnoreCase("stripe")){
+                if(stripeSize<=0)
                     throw new IOException("Cannot get stripe size");
+                return new GlusterFSLayout.Stripe(name, stripeSize, children);
             }
-
-            if(xlator.equalsIgnoreCase("distribute"))
-                if(dcount++!=0)
-                    continue;
-
-            layout+=xlator.substring(0, 1);
-        }
-
-        if((dcount==0)&&(scount==0)&&(rcount==0))
-            throw new IOException("Cannot get layout");
-
-        if(meta!=null){
-            meta.put("dcount", dcount);
-            meta.put("scount", scount);
-            meta.put("rcount", rcount);
+            if(type.equalsIgnoreCase("disperse")||type.equalsIgnoreCase("ec")){
+                int r=redundancy>0 ? redundancy : GlusterFSLayout.defaultRedundancy(children.size());
+                if(2*r>=children.size())
+                    throw new IOException("Disperse set "+name+" of "+children.size()+" can't have redundancy "+r);
+                return new GlusterFSLayout.Disperse(name, r, children);
+            }
+            throw new IOException("Unknown Translator: "+type);
         }
-
-        vol.put("layout", new ArrayList<String>(1));
-        vol.get("layout").add(layout);
-
-        return vol;
     }
 
-    BlockLocation[] getHints(HashMap<String, ArrayList<String>> vol,HashMap<String, Integer> meta,long start,long len,TreeMap<Integer, GlusterFSBrickClass> hnts) throws IOException{
-        String brick=null;
-        String key=null;
-        boolean done=false;
-        int i=0;
-        int counter=0;
-        int stripeSize=0;
-        long stripeStart=0;
-        long stripeEnd=0;
-        int nrAllocs=0;
-        int allocCtr=0;
-        BlockLocation[] result=null;
-        ArrayList<String> brickList=null;
-        ArrayList<String> stripedBricks=null;
-        Iterator<String> it=null;
-
-        String[] blks=null;
-        GlusterFSBrickRepl[] repl=null;
-        int dcount,scount,rcount;
-
-        LAYOUT l=LAYOUT.valueOf(vol.get("layout").get(0));
-        dcount=meta.get("dcount");
-        scount=meta.get("scount");
-        rcount=meta.get("rcount");
-
-        switch (l){
-            case D:
-                key="DISTRIBUTE-"+dcount;
-                brick=vol.get(key).get(0);
-
-                if(hnts==null){
-                    result=new BlockLocation[1];
-                    result[0]=new BlockLocation(null, new String[]{brick2host(brick)}, start, len);
-                }else
-                    hnts.put(0, new GlusterFSBrickClass(brick, start, len, false, -1, -1, -1));
-                break;
-
-            case R:
-            case DR:
-                /* just the name says it's striped - the volume isn't */
-                stripedBricks=new ArrayList<String>();
-
-                for(i=1;i<=rcount;i++){
-                    key="REPLICATE-"+i;
-                    brickList=vol.get(key);
-                    it=brickList.iterator();
-                    while (it.hasNext()){
-                        stripedBricks.add(it.next());
-                    }
-                }
-
-                nrAllocs=stripedBricks.size();
-                if(hnts==null){
-                    result=new BlockLocation[1];
-                    blks=new String[nrAllocs];
-                }
-
-                for(i=0;i<nrAllocs;i++){
-                    if(hnts==null)
-                        blks[i]=brick2host(stripedBricks.get(i));
-                    else
-                        hnts.put(i, new GlusterFSBrickClass(stripedBricks.get(i), start, len, false, -1, -1, -1));
-                }
-
-                if(hnts==null)
-                    result[0]=new BlockLocation(null, blks, start, len);
-
-                break;
-
-            case SR:
-            case DSR:
-                int rsize=0;
-                ArrayList<ArrayList<String>> replicas=new ArrayList<ArrayList<String>>();
-
-                stripedBricks=new ArrayList<String>();
-
-                if(rcount==0)
-                    throw new IOException("got replicated volume with replication count 0");
-
-                for(i=1;i<=rcount;i++){
-                    key="REPLICATE-"+i;
-                    brickList=vol.get(key);
-                    it=brickList.iterator();
-                    replicas.add(i-1, new ArrayList<String>());
-                    while (it.hasNext()){
-                        replicas.get(i-1).add(it.next());
-                    }
-                }
-
-                stripeSize=meta.get("block-size");
-
-                nrAllocs=(int) (((len-start)/stripeSize)+1);
-                if(hnts==null){
-                    result=new BlockLocation[nrAllocs];
-                    repl=new GlusterFSBrickRepl[nrAllocs];
-                }
-
-                // starting stripe position
-                counter=(int) ((start/stripeSize)%rcount);
-                stripeStart=start;
-
-                key=null;
-                int currAlloc=0;
-                boolean hntsDone=false;
-                while ((stripeStart<len)&&!done){
-                    stripeEnd=(stripeStart-(stripeStart%stripeSize))+stripeSize-1;
-                    if(stripeEnd>start+len){
-                        stripeEnd=start+len-1;
-                        done=true;
-                    }
-
-                    rsize=replicas.get(counter).size();
-
-                    if(hnts==null)
-                        repl[allocCtr]=new GlusterFSBrickRepl(rsize, stripeStart, (stripeEnd-stripeStart));
-
-                    for(i=0;i<rsize;i++){
-                        brick=replicas.get(counter).get(i);
-                        currAlloc=(allocCtr*rsize)+i;
-
-                        if(hnts==null)
-                            repl[allocCtr].addHost(brick2host(brick));
-                        else if(currAlloc<=(rsize*rcount)-1){
-                            hnts.put(currAlloc, new GlusterFSBrickClass(brick, stripeStart, (stripeEnd-stripeStart), true, stripeSize, rcount, rsize));
-                        }else
-                            hntsDone=true;
-                    }
-
-                    if(hntsDone)
-                        break;
-
-                    stripeStart=stripeEnd+1;
-
-                    allocCtr++;
-                    counter++;
-
-                    if(counter>=replicas.size())
-                        counter=0;
-                }
-
-                if(hnts==null)
-                    for(int k=0;k<nrAllocs;k++)
-                        result[k]=new BlockLocation(null, repl[k].getReplHosts(), repl[k].getStartLen(), repl[k].getOffLen());
-
-                break;
+    /**
+     * Single pass over a pathinfo value, e.g.
+     * 
+     *   (<DISTRIBUTE:vol-dht> (<REPLICATE:vol-replicate-0> <POSIX(/b1):h1:/b1/f> <POSIX(/b2):h2:/b2/f>))
+     * 
+     * '(' opens a translator whose first <...> token names it, the tokens and
+     * groups after that are its children and POSIX tokens are bricks.
+     * getfattr's "# file:" header and key name around the value are skipped.
+     */
+    public static GlusterFSLayout parseLayout(String pathinfo) throws IOException{
+        return parseLayout(pathinfo, 0);
+    }
 
-            case S:
-            case DS:
-                if(scount==0)
-                    throw new IOException("got striped volume with stripe count 0");
+    /* pathinfo doesn't say how many fragments of a disperse set are redundancy, see setDisperseRedundancy */
+    public static GlusterFSLayout parseLayout(String pathinfo,int disperseRedundancy) throws IOException{
+        int pos=0;
+        int end=pathinfo.length();
+        ArrayList<Group> stack=new ArrayList<Group>();
+        GlusterFSLayout.Node root=null;
+
+        int value=pathinfo.indexOf("=\"");
+        if(value>=0){
+            pos=value+2;
+            int last=pathinfo.lastIndexOf('"');
+            if(last>pos)
+                end=last;
+        }
 
-                stripedBricks=new ArrayList<String>();
-                stripeSize=meta.get("block-size");
+        while (pos<end){
+            char c=pathinfo.charAt(pos);
+            GlusterFSLayout.Node node=null;
 
-                key="STRIPE-"+scount;
-                brickList=vol.get(key);
-                it=brickList.iterator();
-                while (it.hasNext()){
-                    stripedBricks.add(it.next());
+            if(c=='('){
+                stack.add(new Group(disperseRedundancy));
+                pos++;
+                continue;
+            }else if(c==')'){
+                if(stack.isEmpty())
+                    throw new IOException("Unbalanced pathinfo: "+pathinfo);
+                node=stack.remove(stack.size()-1).build();
+                pos++;
+            }else if(c=='<'){
+                int close=tokenEnd(pathinfo, pos, end);
+                if(pathinfo.regionMatches(true, pos+1, "POSIX", 0, 5)){
+                    node=parseBrick(pathinfo, pos+6, close);
+                }else{
+                    if(stack.isEmpty()||stack.get(stack.size()-1).type!=null)
+                        throw new IOException("Unexpected translator in pathinfo: "+pathinfo.substring(pos, close+1));
+                    parseHeader(stack.get(stack.size()-1), pathinfo, pos+1, close);
                 }
+                pos=close+1;
+            }else{
+                pos++;
+                continue;
+            }
 
-                nrAllocs=(int) ((len-start)/stripeSize)+1;
-                if(hnts==null)
-                    result=new BlockLocation[nrAllocs];
-
-                // starting stripe position
-                counter=(int) ((start/stripeSize)%stripedBricks.size());
-                stripeStart=start;
-
-                key=null;
-                while ((stripeStart<len)&&!done){
-                    brick=stripedBricks.get(counter);
-
-                    stripeEnd=(stripeStart-(stripeStart%stripeSize))+stripeSize-1;
-                    if(stripeEnd>start+len){
-                        stripeEnd=start+len-1;
-                        done=true;
-                    }
-
-                    if(hnts==null)
-                        result[allocCtr]=new BlockLocation(null, new String[]{brick2host(brick)}, stripeStart, (stripeEnd-stripeStart));
-                    else if(allocCtr<=stripedBricks.size()){
-                        hnts.put(allocCtr, new GlusterFSBrickClass(brick, stripeStart, (stripeEnd-stripeStart), true, stripeSize, stripedBricks.size(), -1));
-                    }else
-                        break;
+            if(node==null)
+                continue;
+            if(!stack.isEmpty()){
+                stack.get(stack.size()-1).children.add(node);
+            }else if(root==null){
+                root=node;
+            }else{
+                throw new IOException("More than one layout in pathinfo: "+pathinfo);
+            }
+        }
 
-                    stripeStart=stripeEnd+1;
+        if(root==null||!stack.isEmpty())
+            throw new IOException("Cannot get layout");
 
-                    counter++;
-                    allocCtr++;
+        return new GlusterFSLayout(root);
+    }
 
-                    if(counter>=stripedBricks.size())
-                        counter=0;
-                }
+    /* closing '>' of the token at pos; file names may contain '>' so it must be followed by a separator */
+    private static int tokenEnd(String s,int pos,int end) throws IOException{
+        int close=s.indexOf('>', pos);
 
+        while (close>=0&&close+1<end){
+            char n=s.charAt(close+1);
+            if(n==' '||n==')'||n=='('||n=='<'||n=='\t')
                 break;
+            close=s.indexOf('>', close+1);
         }
+        if(close<0||close>=end)
+            throw new IOException("Unterminated token in pathinfo: "+s.substring(pos, end));
 
-        return result;
+        return close;
     }
 
-    /* TODO: use meta{dcount,scount,rcount} for checking */
-    public int getReplicationFromLayout(HashMap<String, ArrayList<String>> vol,HashMap<String, Integer> meta) throws IOException{
-        int replication=0;
-        LAYOUT l=LAYOUT.valueOf(vol.get("layout").get(0));
-
-        switch (l){
-            case D:
-            case S:
-            case DS:
-                replication=1;
-                break;
+    /* TYPE:name or STRIPE:name:[size] */
+    private static void parseHeader(Group g,String s,int from,int to) throws IOException{
+        int colon=s.indexOf(':', from);
+        if(colon<0||colon>to)
+            colon=to;
+
+        g.type=s.substring(from, colon);
+        g.name=colon<to ? s.substring(colon+1, to) : "";
+
+        int open=colon;
+        while (open<to&&s.charAt(open)!='[')
+            open++;
+        if(open<to){
+            long size=0;
+            for(int i=open+1;i<to&&Character.isDigit(s.charAt(i));i++)
+                size=size*10+(s.charAt(i)-'0');
+            g.stripeSize=size;
+            int nameEnd=s.lastIndexOf(':', open);
+            if(nameEnd>colon)
+                g.name=s.substring(colon+1, nameEnd);
+        }
+    }
 
-            case R:
-            case DR:
-            case SR:
-            case DSR:
-                final String key="REPLICATION-1";
-                replication=vol.get(key).size();
+    /* (brick-root):host:path, the part of a POSIX token after "POSIX" */
+    private static GlusterFSLayout.Brick parseBrick(String s,int from,int to) throws IOException{
+        String root="";
+
+        if(from<to&&s.charAt(from)=='('){
+            int close=s.indexOf("):", from);
+            if(close<0||close>to)
+                throw new IOException("Cannot extract posix path");
+            root=s.substring(from+1, close);
+            from=close+2;
+        }else if(from<to&&s.charAt(from)==':'){
+            from++;
         }
 
-        return replication;
+        int colon=s.indexOf(':', from);
+        if(colon<0||colon>=to)
+            throw new IOException("Cannot extract posix path");
+
+        return new GlusterFSLayout.Brick(root, s.substring(from, colon), s.substring(colon+1, to));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,224 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.glusterfs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.util.Shell;
+
+/**
+ * What a GlusterFileStatus needs of a file: length, type, modification time,
+ * permission, owner and group.
+ *
+ * read() stats the file once through the JDK's "unix" attribute view and
+ * maps uid and gid to names through a cache, falling back to a
+ * PosixFileAttributes read (which resolves names on every call) for ids it
+ * hasn't seen or JDKs without that view.  readWithLs() is the old
+ * `ls -ld` fork, still used where the platform has no POSIX attributes.
+ */
+public class GlusterFileAttributes{
+
+    private static final String UNIX_ATTRIBUTES="unix:mode,uid,gid,size,lastModifiedTime,isDirectory,isSymbolicLink";
+    private static final LinkOption[] NOFOLLOW=new LinkOption[]{ LinkOption.NOFOLLOW_LINKS };
+    private static final LinkOption[] FOLLOW=new LinkOption[0];
+
+    private static final boolean posix=FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    private static volatile boolean unix=FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
+    private static final Map<Integer, String> users=new ConcurrentHashMap<Integer, String>();
+    private static final Map<Integer, String> groups=new ConcurrentHashMap<Integer, String>();
+
+    private final long length;
+    private final boolean directory;
+    private final boolean symlink;
+    private final long modificationTime;
+    private final FsPermission permission;
+    private final String owner;
+    private final String group;
+
+    GlusterFileAttributes(long length,boolean directory,boolean symlink,long modificationTime,FsPermission permission,String owner,String group){
+        this.length=length;
+        this.directory=directory;
+        this.symlink=symlink;
+        this.modificationTime=modificationTime;
+        this.permission=permission;
+        this.owner=owner;
+        this.group=group;
+    }
+
+    public long getLength(){
+        return length;
+    }
+
+    public boolean isDirectory(){
+        return directory;
+    }
+
+    /* only ever true when read without following links */
+    public boolean isSymbolicLink(){
+        return symlink;
+    }
+
+    public long getModificationTime(){
+        return modificationTime;
+    }
+
+    public FsPermission getPermission(){
+        return permission;
+    }
+
+    public String getOwner(){
+        return owner;
+    }
+
+    public String getGroup(){
+        return group;
+    }
+
+    /* false where only the ls fork works */
+    public static boolean isPosixAvailable(){
+        return posix;
+    }
+
+    /* attributes of f itself (like `ls -ld`), null if it doesn't exist (any more) */
+    public static GlusterFileAttributes read(File f) throws IOException{
+        return read(f, false);
+    }
+
+    /* with followLinks, attributes of what f points to */
+    public static GlusterFileAttributes read(File f,boolean followLinks) throws IOException{
+        if(!posix)
+            return readWithLs(f);
+
+        Path p=f.toPath();
+        LinkOption[] options=followLinks ? FOLLOW : NOFOLLOW;
+        try{
+            if(unix){
+                GlusterFileAttributes a=readUnix(p, options);
+                if(a!=null)
+                    return a;
+            }
+            return readPosix(p, options);
+        }catch (NoSuchFileException e){
+            return null;
+        }catch (FileSystemException e){
+            /* ENOTDIR and the like, a path through a file doesn't exist either */
+            if(!f.exists())
+                return null;
+            throw e;
+        }
+    }
+
+    /* one stat, null if uid or gid haven't been named yet */
+    private static GlusterFileAttributes readUnix(Path p,LinkOption[] options) throws IOException{
+        Map<String, Object> attrs=null;
+        try{
+            attrs=Files.readAttributes(p, UNIX_ATTRIBUTES, options);
+        }catch (UnsupportedOperationException e){
+            unix=false;
+            return null;
+        }catch (IllegalArgumentException e){
+            unix=false;
+            return null;
+        }
+
+        String owner=users.get(attrs.get("uid"));
+        String group=groups.get(attrs.get("gid"));
+        if(owner==null||group==null)
+            return null;
+
+        /* permission bits and sticky, as ls shows them */
+        int mode=((Integer) attrs.get("mode"))&01777;
+        return new GlusterFileAttributes((Long) attrs.get("size"), (Boolean) attrs.get("isDirectory"), (Boolean) attrs.get("isSymbolicLink"),
+                ((FileTime) attrs.get("lastModifiedTime")).toMillis(), new FsPermission((short) mode), owner, group);
+    }
+
+    /* resolves names on every call, remembers them for readUnix */
+    private static GlusterFileAttributes readPosix(Path p,LinkOption[] options) throws IOException{
+        PosixFileAttributes a=Files.readAttributes(p, PosixFileAttributes.class, options);
+        String owner=a.owner().getName();
+        String group=a.group().getName();
+        short mode=toMode(a.permissions());
+
+        if(unix){
+            Map<String, Object> attrs=Files.readAttributes(p, UNIX_ATTRIBUTES, options);
+            users.put((Integer) attrs.get("uid"), owner);
+            groups.put((Integer) attrs.get("gid"), group);
+            /* PosixFilePermission leaves out the sticky bit */
+            mode=(short) (((Integer) attrs.get("mode"))&01777);
+        }
+        return new GlusterFileAttributes(a.size(), a.isDirectory(), a.isSymbolicLink(), a.lastModifiedTime().toMillis(), new FsPermission(mode), owner, group);
+    }
+
+    static short toMode(Set<PosixFilePermission> perms){
+        int mode=0;
+        for(PosixFilePermission perm : perms){
+            /* OWNER_READ is the first constant and the highest bit */
+            mode|=1<<(8-perm.ordinal());
+        }
+        return (short) mode;
+    }
+
+    /* loads permissions, owner, and group from `ls -ld` */
+    public static GlusterFileAttributes readWithLs(File f) throws IOException{
+        try{
+            StringTokenizer t=new StringTokenizer(Util.execCommand(f, Util.getGET_PERMISSION_COMMAND()));
+            // expected format
+            // -rw------- 1 username groupname ...
+            String permission=t.nextToken();
+            if(permission.length()>10){ // files with ACLs might have a '+'
+                permission=permission.substring(0, 10);
+            }
+            FsPermission perm=FsPermission.valueOf(permission);
+            t.nextToken();
+            String owner=t.nextToken();
+            String group=t.nextToken();
+            return new GlusterFileAttributes(f.length(), f.isDirectory(), false, f.lastModified(), perm, owner, group);
+        }catch (Shell.ExitCodeException ioe){
+            if(ioe.getExitCode()!=1)
+                throw ioe;
+            return null;
+        }
+    }
+
+    public static void clearNameCache(){
+        users.clear();
+        groups.clear();
+    }
+
+    public String toString(){
+        return permission+" "+owner+" "+group;
+    }
+}
@@ -26,11 +26,10 @@ package org.apache.hadoop.fs.glusterfs;
 import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
-import java.util.StringTokenizer;
 
 import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.FsPermission;
-import org.apache.hadoop.util.Shell;
 import org.apache.hadoop.util.StringUtils;
 /*
  * Copied from org.apache.fs.RawLocalFileSystem.RawFileStatus
@@ -42,6 +41,8 @@ public class GlusterFileStatus extends FileStatus{
      * onwer.equals("").
      */
     protected GlusterVolume fs;
+    /* block size lined up with the file's layout, once the layout is known */
+    private long splitBlockSize=-1;
 
     private boolean isPermissionLoaded(){
         return !super.getOwner().equals("");
@@ -56,6 +57,31 @@ public class GlusterFileStatus extends FileStatus{
         this.fs=fs;
     }
 
+    /* everything from one stat, permission info included */
+    GlusterFileStatus(Path path, GlusterFileAttributes a, long defaultBlockSize, GlusterVolume fs){
+        super(a.getLength(), a.isDirectory(), 1, defaultBlockSize, a.getModificationTime(), 0, a.getPermission(), a.getOwner(), a.getGroup(), path);
+        this.fs=fs;
+    }
+
+    /*
+     * Only from a layout already looked up, by getFileBlockLocations or into
+     * the layout cache: FileStatus.write and LocatedFileStatus ask every
+     * status for this.
+     */
+    @Override
+    public long getBlockSize(){
+        if(splitBlockSize<0&&!isDirectory()){
+            splitBlockSize=fs.getSplitBlockSize(this, super.getBlockSize());
+        }
+        return splitBlockSize<0 ? super.getBlockSize() : splitBlockSize;
+    }
+
+    void setLayout(GlusterFSLayout layout){
+        if(!isDirectory()){
+            splitBlockSize=layout.alignBlockSize(super.getBlockSize());
+        }
+    }
+
     @Override
     public FsPermission getPermission(){
         if(!isPermissionLoaded()){
@@ -80,35 +106,21 @@ public class GlusterFileStatus extends FileStatus{
         return super.getGroup();
     }
 
-    // / loads permissions, owner, and group from `ls -ld`
+    // / loads permissions, owner, and group with a single stat, see GlusterFileAttributes
     private void loadPermissionInfo(){
-        IOException e=null;
         try{
-            StringTokenizer t=new StringTokenizer(Util.execCommand(fs.pathToFile(getPath()), Util.getGET_PERMISSION_COMMAND()));
-            // expected format
-            // -rw------- 1 username groupname ...
-            String permission=t.nextToken();
-            if(permission.length()>10){ // files with ACLs might have a '+'
-                permission=permission.substring(0, 10);
-            }
-            setPermission(FsPermission.valueOf(permission));
-            t.nextToken();
-            setOwner(t.nextToken());
-            setGroup(t.nextToken());
-        }catch (Shell.ExitCodeException ioe){
-            if(ioe.getExitCode()!=1){
-                e=ioe;
-            }else{
+            GlusterFileAttributes a=GlusterFileAttributes.read(fs.pathToFile(getPath()));
+            if(a==null){
                 setPermission(null);
                 setOwner(null);
                 setGroup(null);
+            }else{
+                setPermission(a.getPermission());
+                setOwner(a.getOwner());
+                setGroup(a.getGroup());
             }
-        }catch (IOException ioe){
-            e=ioe;
-        }finally{
-            if(e!=null){
-                throw new RuntimeException("Error while running command to get "+"file permissions : "+StringUtils.stringifyException(e));
-            }
+        }catch (IOException e){
+            throw new RuntimeException("Error while running command to get "+"file permissions : "+StringUtils.stringifyException(e));
         }
     }
 
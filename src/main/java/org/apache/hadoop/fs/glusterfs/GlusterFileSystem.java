@@ -33,11 +33,15 @@ import java.io.IOException;
 import java.net.URI;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,15 +63,10 @@ public class GlusterFileSystem extends FilterFileSystem{
     }
 
     /**
-     * Get file status.
+     * Get file status, through the volume's stat cache when it has one.
      */
     public boolean exists(Path f) throws IOException{
-        File path=pathToFile(f);
-        if(path.exists()){
-            return true;
-        }else{
-            return false;
-        }
+        return fs.exists(f);
     }
 
     public void setConf(Configuration conf){
@@ -85,13 +84,36 @@ public class GlusterFileSystem extends FilterFileSystem{
     public void copyFromLocalFile(boolean delSrc,Path src,Path dst) throws IOException{
         FileSystem srcFs=new Path("file:/"+src.toString()).getFileSystem(getConf());
         FileSystem dstFs=dst.getFileSystem(getConf());
-        FileUtil.copy(srcFs, src, dstFs, dst, delSrc, getConf());
+        ((GlusterVolume) fs).copy(srcFs, src, dstFs, dst, delSrc, getConf());
     }
 
     public void copyToLocalFile(boolean delSrc,Path src,Path dst) throws IOException{
         FileSystem srcFs=src.getFileSystem(getConf());
         FileSystem dstFs=new Path("file:/"+dst.toString()).getFileSystem(getConf());
-        FileUtil.copy(srcFs, src, dstFs, dst, delSrc, getConf());
+        ((GlusterVolume) fs).copy(srcFs, src, dstFs, dst, delSrc, getConf());
+    }
+
+    /* whole-file block locations of many files, see GlusterVolume */
+    public BlockLocation[][] getFileBlockLocations(FileStatus[] files) throws IOException{
+        return ((GlusterVolume) fs).getFileBlockLocations(files);
+    }
+
+    /* listStatus streamed a batch at a time, see GlusterFSLister */
+    public RemoteIterator<FileStatus> listStatusIterator(Path f) throws IOException{
+        return ((GlusterVolume) fs).listStatusIterator(f);
+    }
+
+    /* recursive listFiles and globStatus walk the volume in parallel, see GlusterFSTreeWalker */
+    public RemoteIterator<LocatedFileStatus> listFiles(Path f,boolean recursive) throws IOException{
+        return fs.listFiles(f, recursive);
+    }
+
+    public FileStatus[] globStatus(Path pathPattern) throws IOException{
+        return fs.globStatus(pathPattern);
+    }
+
+    public FileStatus[] globStatus(Path pathPattern,PathFilter filter) throws IOException{
+        return fs.globStatus(pathPattern, filter);
     }
 
     @Override
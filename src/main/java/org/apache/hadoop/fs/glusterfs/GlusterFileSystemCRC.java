@@ -30,7 +30,6 @@ import java.io.IOException;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
 import org.slf4j.Logger;
@@ -61,14 +60,14 @@ public class GlusterFileSystemCRC extends LocalFileSystem{
     public void copyFromLocalFile(boolean delSrc, Path src, Path dst)  throws IOException {
         FileSystem srcFs = new Path("file:/" + src.toString()).getFileSystem(getConf());
         FileSystem dstFs = dst.getFileSystem(getConf());
-        FileUtil.copy(srcFs, src, dstFs, dst, delSrc, getConf());
+        ((GlusterVolume) getRawFileSystem()).copy(srcFs, src, dstFs, dst, delSrc, getConf());
     }
 
     @Override
     public void copyToLocalFile(boolean delSrc, Path src, Path dst) throws IOException {
       FileSystem srcFs = src.getFileSystem(getConf());
       FileSystem dstFs = new Path("file:/" + dst.toString()).getFileSystem(getConf());
-      FileUtil.copy(srcFs, src, dstFs, dst, delSrc, getConf());
+      ((GlusterVolume) getRawFileSystem()).copy(srcFs, src, dstFs, dst, delSrc, getConf());
     }
     
     public String toString(){
@@ -25,19 +25,33 @@ package org.apache.hadoop.fs.glusterfs;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
-import java.util.Arrays;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.BufferedFSInputStream;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileAlreadyExistsException;
 import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.util.Progressable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,11 +70,79 @@ public class GlusterVolume extends RawLocalFileSystem{
     
     protected URI NAME = null;
  
-    protected Hashtable<String,String> volumes=new Hashtable<String,String>();
-    protected String default_volume = null;
+    /* replaced, never modified, so path translation doesn't lock */
+    protected volatile GlusterFSVolumeTable volumes = GlusterFSVolumeTable.EMPTY;
     
     
-    protected static GlusterFSXattr attr = null;
+    protected GlusterFSXattr attr = null;
+    
+    /*
+     * The caches below are shared by every volume instance in the JVM, so a
+     * change made through one instance drops what the others cached.  The
+     * first instance configured sizes them; later configurations don't
+     * resize them under the others.
+     */
+    private static boolean cachesConfigured = false;
+
+    /* parsed layouts */
+    protected static final GlusterFSLayoutCache layoutCache = new GlusterFSLayoutCache();
+    
+    /* directory layouts for placing files without looking each one up */
+    protected static final GlusterFSDhtPlacement dhtPlacement = new GlusterFSDhtPlacement();
+    
+    protected static final GlusterFSShards shards = new GlusterFSShards();
+    
+    /* set when files are read straight from local bricks */
+    protected GlusterFSLocalBricks localBricks = null;
+
+    /* memory mappings of small files, shared by every stream in the JVM */
+    protected static final GlusterFSMappingCache mappings = new GlusterFSMappingCache();
+
+    /*
+     * Engines with thread pools or settings of their own, one per distinct
+     * configuration: volumes configured alike share one, and one handed out
+     * is never reconfigured under the volumes using it.
+     */
+    private static final HashMap<String, Object> engines = new HashMap<String, Object>();
+
+    /* stats the entries of large directories in parallel */
+    protected GlusterFSLister lister = sharedLister(GlusterFSLister.DEFAULT_THREADS, GlusterFSLister.DEFAULT_BATCH_SIZE);
+
+    /* walks directory trees for listFiles, getContentSummary and globStatus */
+    protected GlusterFSTreeWalker walker = sharedWalker(GlusterFSTreeWalker.DEFAULT_PARALLELISM, false);
+
+    /* copies between files with transferTo, for the rename fallback and local copies */
+    protected GlusterFSCopier copier = sharedCopier(GlusterFSCopier.DEFAULT_THREADS, GlusterFSCopier.DEFAULT_CHUNK_SIZE);
+
+    /* removes directory trees for recursive deletes */
+    protected GlusterFSDeleter deleter = sharedDeleter(GlusterFSDeleter.DEFAULT_PARALLELISM);
+
+    /* reads ahead for sequential readers of the mount */
+    protected GlusterFSReadAhead readAhead = sharedReadAhead(0, GlusterFSReadAhead.DEFAULT_MIN_WINDOW, GlusterFSReadAhead.DEFAULT_MAX_WINDOW, GlusterFSReadAhead.DEFAULT_THREADS);
+
+    /* O_DIRECT streams for the paths configured */
+    protected GlusterFSDirectIO directIO = sharedDirectIO(null, GlusterFSDirectIO.DEFAULT_BUFFER_SIZE, GlusterFSDirectIO.DEFAULT_ALIGNMENT);
+
+    /* default page cache hints for streams of the mount */
+    protected GlusterFSFadvise fadvise = sharedFadvise(false, 0, false);
+
+    /* set when recursive deletes rename trees aside for a background purge */
+    protected GlusterFSPurger purger = null;
+
+    /* the purge directory, left out of listings whether or not this instance purges */
+    protected File purgeDir = null;
+
+    /* attributes of recently stat'ed paths, this instance's own */
+    protected final GlusterFSStatCache statCache = new GlusterFSStatCache();
+
+    /* getContentSummary from quota accounting where there is any */
+    protected boolean quotaSummary = false;
+
+    private static final PathFilter ACCEPT_ALL = new PathFilter() {
+        public boolean accept(Path file) {
+          return true;
+        }
+    };
     
     public GlusterVolume(){}
     
@@ -87,7 +169,7 @@ public class GlusterVolume extends RawLocalFileSystem{
     protected URI canonicalizeUri(URI uri) {
         String auth = uri.getAuthority();
         if(auth==null)
-            auth = default_volume;
+            auth = volumes.getDefaultVolume();
         return URI.create(uri.getScheme() + "://" + auth + "/" + uri.getPath()) ;
     }
     
@@ -109,7 +191,7 @@ public class GlusterVolume extends RawLocalFileSystem{
          
             try{
                 String[] v=conf.get("fs.glusterfs.volumes", "").split(",");
-                default_volume = v[0];
+                GlusterFSVolumeTable table = GlusterFSVolumeTable.EMPTY;
                 for(int i=0;i<v.length;i++){
                     String vol = conf.get("fs.glusterfs.volume.fuse." + v[i] , null);
                     
@@ -117,14 +199,70 @@ public class GlusterVolume extends RawLocalFileSystem{
                         log.error("Could not find property: fs.glusterfs.fuse." + v[i]);
                         throw new RuntimeException("Could not find mount point for volume: "+ v[i]);
                     }
-                    volumes.put(v[i],vol);
-                    log.info("Gluster volume: " + v[i] + " at : " + volumes.get(v[i]));
+                    table = table.withVolume(v[i],vol);
+                    log.info("Gluster volume: " + v[i] + " at : " + vol);
                 }
+                volumes = table;
                 getfattrcmd = conf.get("fs.glusterfs.getfattrcmd", null);
-                if(getfattrcmd!=null){
-                	attr = new GlusterFSXattr(getfattrcmd);
+                GlusterFSGetfattrPathInfo getfattr = getfattrcmd!=null ?
+                        new GlusterFSGetfattrPathInfo(getfattrcmd) : new GlusterFSGetfattrPathInfo();
+                getfattr.setBatchSize(conf.getInt("fs.glusterfs.getfattr.batch", GlusterFSGetfattrPathInfo.DEFAULT_BATCH_SIZE));
+                if(getfattrcmd==null && GlusterFSNativePathInfo.isAvailable()){
+                	attr = new GlusterFSXattr(new GlusterFSNativePathInfo(getfattr));
                 }else{
-                	attr = new GlusterFSXattr();
+                	attr = new GlusterFSXattr(getfattr);
+                }
+                attr.setDisperseRedundancy(conf.getInt("fs.glusterfs.disperse.redundancy", 0));
+                log.info("Pathinfo provider : " + attr.getPathInfoProvider());
+                configureCaches(conf);
+                log.info("DHT placement : " + dhtPlacement.isEnabled());
+                log.info("Shard locations : " + shards);
+                log.info("Memory mapped reads : " + mappings);
+                lister = sharedLister(conf.getInt("fs.glusterfs.list.threads", GlusterFSLister.DEFAULT_THREADS),
+                                      conf.getInt("fs.glusterfs.list.batch", GlusterFSLister.DEFAULT_BATCH_SIZE));
+                log.info("Directory listing : " + lister);
+                walker = sharedWalker(conf.getInt("fs.glusterfs.walk.threads", GlusterFSTreeWalker.DEFAULT_PARALLELISM),
+                                      conf.getBoolean("fs.glusterfs.walk.ordered", false));
+                log.info("Directory tree walks : " + walker);
+                copier = sharedCopier(conf.getInt("fs.glusterfs.copy.threads", GlusterFSCopier.DEFAULT_THREADS),
+                                      conf.getLong("fs.glusterfs.copy.chunk", GlusterFSCopier.DEFAULT_CHUNK_SIZE));
+                log.info("Copies : " + copier);
+                deleter = sharedDeleter(conf.getInt("fs.glusterfs.delete.threads", GlusterFSDeleter.DEFAULT_PARALLELISM));
+                log.info("Recursive deletes : " + deleter);
+                readAhead = sharedReadAhead(conf.getInt("fs.glusterfs.readahead.windows", 0),
+                                            conf.getInt("fs.glusterfs.readahead.min", GlusterFSReadAhead.DEFAULT_MIN_WINDOW),
+                                            conf.getInt("fs.glusterfs.readahead.max", GlusterFSReadAhead.DEFAULT_MAX_WINDOW),
+                                            conf.getInt("fs.glusterfs.readahead.threads", GlusterFSReadAhead.DEFAULT_THREADS));
+                log.info("Read-ahead : " + readAhead);
+                directIO = sharedDirectIO(conf.get("fs.glusterfs.direct.paths"),
+                                          conf.getInt("fs.glusterfs.direct.buffer", GlusterFSDirectIO.DEFAULT_BUFFER_SIZE),
+                                          conf.getInt("fs.glusterfs.direct.alignment", GlusterFSDirectIO.DEFAULT_ALIGNMENT));
+                log.info("Direct I/O : " + directIO);
+                fadvise = sharedFadvise(conf.getBoolean("fs.glusterfs.fadvise.sequential", false),
+                                        conf.getLong("fs.glusterfs.fadvise.willneed", 0),
+                                        conf.getBoolean("fs.glusterfs.fadvise.dontneed", false));
+                log.info("Page cache hints : " + fadvise);
+                purgeDir = volumes.toFile(NAME==null ? null : NAME.getAuthority(), conf.get("fs.glusterfs.purge.dir", GlusterFSPurger.DEFAULT_DIRECTORY));
+                if(conf.getBoolean("fs.glusterfs.delete.purge", false)){
+                    if(purgeDir==null){
+                        log.warn("No purge directory for " + NAME + ", deleting in the foreground");
+                    }else{
+                        purger = GlusterFSPurger.get(purgeDir);
+                        purger.configure(conf.getLong("fs.glusterfs.purge.rate", GlusterFSPurger.DEFAULT_RATE),
+                                         conf.getInt("fs.glusterfs.purge.threads", GlusterFSPurger.DEFAULT_THREADS),
+                                         conf.getLong("fs.glusterfs.purge.interval", GlusterFSPurger.DEFAULT_INTERVAL));
+                        log.info("Background purge : " + purger);
+                    }
+                }
+                statCache.configure(conf.getInt("fs.glusterfs.stat.cache.size", 0),
+                                    conf.getLong("fs.glusterfs.stat.cache.ttl", GlusterFSStatCache.DEFAULT_TTL),
+                                    conf.getBoolean("fs.glusterfs.stat.cache.negative", true));
+                log.info("Stat cache : " + statCache.isEnabled());
+                quotaSummary = conf.getBoolean("fs.glusterfs.quota.summary", false);
+                log.info("Content summaries from quota : " + quotaSummary);
+                if(conf.getBoolean("fs.glusterfs.read.local", false)){
+                    localBricks = new GlusterFSLocalBricks(conf.getBoolean("fs.glusterfs.read.local.verify", true));
+                    log.info("Local brick reads : " + localBricks);
                 }
                 String jtSysDir = conf.get("mapreduce.jobtracker.system.dir", null);
                 Path mapredSysDirectory = null;
@@ -198,15 +336,13 @@ public class GlusterVolume extends RawLocalFileSystem{
       if(scheme==null || "".equals(scheme)){
          return pathToFile(path.makeQualified(this));
         
-      }else if(volume==null){
-          volume = default_volume;
       }
-      String volPath = this.volumes.get(volume);
-      if(volPath==null){
+      File f = volumes.toFile(volume, path.toUri().getPath());
+      if(f==null){
           throw new RuntimeException("Error undefined volume:" + volume + " in path: " + path);
       }
               
-      return new File(volPath + "/" + path.toUri().getPath());
+      return f;
     }
     
     protected Path getInitialWorkingDirectory() {
@@ -215,40 +351,39 @@ public class GlusterVolume extends RawLocalFileSystem{
 	}
     
 	public Path fileToPath(File path) {
-	    Enumeration<String> all = volumes.keys();
-	    String rawPath = path.getAbsolutePath();
-	    
-	    String volume = null;
-	    String root = null;
-	    
-	    while(volume==null && all.hasMoreElements()){
-	        String nextVolume = all.nextElement();
-	        String nextPath = volumes.get(nextVolume);
-	        if(rawPath.startsWith(nextPath)){
-	            volume = nextVolume;
-	            root = nextPath;
-	        }
-	    }
+	    Path p = volumes.toPath(path);
 	  
-	    if(volume==null){
+	    if(p==null){
 	        throw new RuntimeException("No volume matching path: " + path);
 	    }
-	    
-	    if(default_volume.equalsIgnoreCase(volume))
-	        volume = "";
-	    return new Path("glusterfs://" + volume + "/" + rawPath.substring(root.length()));
+	    return p;
      }
 
      public boolean rename(Path src, Path dst) throws IOException {
+		File source = pathToFile(src);
 		File dest = pathToFile(dst);
+		invalidate(src);
+		invalidate(dst);
 		
-		/* two HCFS semantics java.io.File doesn't honor */
-		if(dest.exists() && dest.isFile() || !(new File(dest.getParent()).exists())) return false;
-		
-		if (!dest.exists() && pathToFile(src).renameTo(dest)) {
-	      return true;
-	    }
-	    return FileUtil.copy(this, src, this, dst, true, getConf());
+		try {
+		    /* two HCFS semantics java.io.File doesn't honor */
+		    if(dest.exists() && dest.isFile() || !(new File(dest.getParent()).exists())) return false;
+
+		    if (!dest.exists() && source.renameTo(dest)) {
+		        dhtPlacement.renamed(dest.getPath());
+		        return true;
+		    }
+		    /* e.g. onto an existing directory, copied into it and removed like FileUtil.copy would */
+		    File target = dest.isDirectory() ? new File(dest, source.getName()) : dest;
+		    boolean deleted = copier.copy(source, dest, true);
+		    /* copied, even if the source couldn't all be removed */
+		    dhtPlacement.renamed(target.getPath());
+		    return deleted;
+		} finally {
+		    /* the copy fallback stats through this instance while it works */
+		    invalidated(src);
+		    invalidated(dst);
+		}
 	}
 	  /**
 	   * Delete the given path to a file or directory.
@@ -260,6 +395,15 @@ public class GlusterVolume extends RawLocalFileSystem{
 	@Override
 	public boolean delete(Path p, boolean recursive) throws IOException {
 	    File f = pathToFile(p);
+	    invalidate(p);
+	    try {
+	      return deleteFile(f, recursive);
+	    } finally {
+	      invalidated(p);
+	    }
+	}
+
+	private boolean deleteFile(File f, boolean recursive) throws IOException {
 	    if(!f.exists()){
 	    	/* HCFS semantics expect 'false' if attempted file deletion on non existent file */
 	    	return false;
@@ -269,52 +413,490 @@ public class GlusterVolume extends RawLocalFileSystem{
 	        (FileUtil.listFiles(f).length != 0)) {
 	      throw new IOException("Directory " + f.toString() + " is not empty");
 	    }
-	    return FileUtil.fullyDelete(f);
+	    if(purger!=null && purger.moveAside(f)){
+	        return true;
+	    }
+	    /* false, like FileUtil.fullyDelete, if anything is left; what was is logged */
+	    return deleter.delete(f).isComplete();
+	}
+	public FSDataInputStream open(Path f, int bufferSize) throws IOException {
+	    /* direct paths bypass the page cache, which mappings and brick reads go through */
+	    boolean direct = isDirect(f);
+	    if(direct){
+	        if(!exists(f)){
+	            throw new FileNotFoundException(f.toString());
+	        }
+	        FSInputStream in = directIO.open(pathToFile(f), statistics);
+	        if(in!=null){
+	            return new FSDataInputStream(in);
+	        }
+	    }else if(mappings.isEnabled()){
+	        FSInputStream in = openMapped(f);
+	        if(in!=null){
+	            return new FSDataInputStream(in);
+	        }
+	    }
+	    if(localBricks!=null && !direct){
+	        FSInputStream in = openLocal(f, bufferSize);
+	        if(in!=null){
+	            log.debug("Reading " + f + " from local bricks");
+	            /* ours buffers itself, and passes ByteBuffer reads through */
+	            return new FSDataInputStream(in instanceof GlusterFSInputStream ? in : new BufferedFSInputStream(in, bufferSize));
+	        }
+	    }
+	    if(!exists(f)){
+	        throw new FileNotFoundException(f.toString());
+	    }
+	    return new FSDataInputStream(new GlusterFSInputStream(pathToFile(f), statistics, bufferSize, readAhead, fadvise));
+	}
+
+	/* out, writing f from offset on: drops what this instance stat'ed of f once it's closed, and what it wrote from the page cache if asked to */
+	protected FSDataOutputStream closing(FSDataOutputStream out, Path f, long offset) throws IOException {
+	    return new GlusterFSDataOutputStream(out.getWrappedStream(), statistics, out.getPos(), this, f, pathToFile(f), offset, fadvise);
+	}
+
+	/* whether f is read and written with O_DIRECT */
+	protected boolean isDirect(Path f) {
+	    return directIO.isEnabled() && directIO.accepts(makeQualified(f).toUri().getPath());
+	}
+
+	/* the same checks as RawLocalFileSystem's create, null to create f the ordinary way */
+	protected FSDataOutputStream createDirect(Path f, boolean overwrite, boolean createParent) throws IOException {
+	    if(exists(f) && !overwrite){
+	        throw new IOException("File already exists: " + f);
+	    }
+	    Path parent = f.getParent();
+	    if(createParent && parent!=null && !mkdirs(parent)){
+	        throw new IOException("Mkdirs failed to create " + parent.toString());
+	    }
+	    File file = pathToFile(f);
+	    OutputStream out = directIO.create(file);
+	    /* nothing of it in the page cache to drop */
+	    return out==null ? null : new GlusterFSDataOutputStream(out, statistics, 0, this, f, file, 0, GlusterFSFadvise.NONE);
+	}
+
+	/* the file read from a shared mapping, null if it's too large or there's no room */
+	protected FSInputStream openMapped(Path f) throws IOException {
+	    /* not through the stat cache: a mapping longer than the file faults */
+	    File file = pathToFile(f);
+	    if(!file.isFile())
+	        return null;
+	    long len = file.length();
+	    long mtime = file.lastModified();
+	    if(!mappings.accepts(len))
+	        return null;
+	    GlusterFSMappingCache.Mapping m = mappings.acquire(file, mtime, len);
+	    return m==null ? null : new GlusterFSMappedInputStream(m, statistics);
+	}
+
+	/* the file read from bricks of this host, null to read it through the mount */
+	protected FSInputStream openLocal(Path f, int bufferSize) throws IOException {
+	    FileStatus status = getFileStatus(f);
+	    GlusterFSLayout layout = null;
+	    if(status.isDirectory())
+	        return null;
+	    try{
+	        layout = getLayout(status);
+	    }catch(IOException e){
+	        log.debug("No layout for " + f + ", reading through the mount: " + e.getMessage());
+	        return null;
+	    }
+	    return localBricks.open(pathToFile(f), layout, status.getLen(), bufferSize, statistics);
+	}
+
+	public FSDataOutputStream create(Path f, boolean overwrite, int bufferSize,
+	        short replication, long blockSize, Progressable progress) throws IOException {
+	    invalidate(f);
+	    try {
+	      if(isDirect(f)){
+	        FSDataOutputStream out = createDirect(f, overwrite, true);
+	        if(out!=null)
+	          return out;
+	      }
+	      return closing(super.create(f, overwrite, bufferSize, replication, blockSize, progress), f, 0);
+	    } finally {
+	      invalidated(f);
+	    }
+	}
+
+	public FSDataOutputStream createNonRecursive(Path f, FsPermission permission,
+	        boolean overwrite, int bufferSize, short replication, long blockSize,
+	        Progressable progress) throws IOException {
+	    invalidate(f);
+	    try {
+	      if(isDirect(f)){
+	        FSDataOutputStream out = createDirect(f, overwrite, false);
+	        if(out!=null){
+	          setPermission(f, permission);
+	          return out;
+	        }
+	      }
+	      return closing(super.createNonRecursive(f, permission, overwrite, bufferSize, replication, blockSize, progress), f, 0);
+	    } finally {
+	      invalidated(f);
+	    }
+	}
+
+	public FSDataOutputStream append(Path f, int bufferSize, Progressable progress) throws IOException {
+	    invalidate(f);
+	    try {
+	      long offset = pathToFile(f).length();
+	      return closing(super.append(f, bufferSize, progress), f, offset);
+	    } finally {
+	      invalidated(f);
+	    }
+	}
+
+	/* forget anything cached about a path (and its children) this instance is about to change */
+	protected void invalidate(Path p) {
+	    String path = pathToFile(p).getPath();
+	    layoutCache.invalidate(path);
+	    dhtPlacement.invalidate(path);
+	    statCache.invalidate(path);
+	    mappings.invalidate(path);
+	}
+
+	/* FileUtil.copy through this volume's copier, dropping what either end cached of the paths it changes */
+	boolean copy(FileSystem srcFs, Path src, FileSystem dstFs, Path dst, boolean delSrc, Configuration conf) throws IOException {
+	    invalidate(dstFs, dst);
+	    if(delSrc)
+	        invalidate(srcFs, src);
+	    try {
+	        return copier.copy(srcFs, src, dstFs, dst, delSrc, conf);
+	    } finally {
+	        invalidate(dstFs, dst);
+	        if(delSrc)
+	            invalidate(srcFs, src);
+	    }
+	}
+
+	/* invalidate p on fs if that is a gluster volume */
+	static void invalidate(FileSystem fs, Path p) {
+	    while(fs instanceof FilterFileSystem)
+	        fs = ((FilterFileSystem) fs).getRawFileSystem();
+	    if(fs instanceof GlusterVolume)
+	        ((GlusterVolume) fs).invalidate(p);
+	}
+
+	/* after a change: drop what was stat'ed through this instance while it was being made */
+	protected void invalidated(Path p) {
+	    statCache.invalidate(pathToFile(p).getPath());
+	}
+
+	public static GlusterFSLayoutCache getLayoutCache() {
+	    return layoutCache;
+	}
+
+	public static GlusterFSDhtPlacement getDhtPlacement() {
+	    return dhtPlacement;
+	}
+
+	public GlusterFSCopier getCopier() {
+	    return copier;
+	}
+
+	public static GlusterFSMappingCache getMappingCache() {
+	    return mappings;
+	}
+
+	public GlusterFSReadAhead getReadAhead() {
+	    return readAhead;
+	}
+
+	public GlusterFSDirectIO getDirectIO() {
+	    return directIO;
+	}
+
+	public GlusterFSFadvise getFadvise() {
+	    return fadvise;
+	}
+
+	/* the JVM-wide caches take the first configuration they're given */
+	private static synchronized void configureCaches(Configuration conf) {
+	    if(cachesConfigured) {
+	        log.debug("Layout, placement, shard and mapping caches already configured, keeping " + layoutCache + ", " + mappings);
+	        return;
+	    }
+	    cachesConfigured = true;
+	    long ttl = conf.getLong("fs.glusterfs.layout.cache.ttl", GlusterFSLayoutCache.DEFAULT_TTL);
+	    layoutCache.configure(conf.getInt("fs.glusterfs.layout.cache.size", GlusterFSLayoutCache.DEFAULT_MAX_ENTRIES), ttl);
+	    dhtPlacement.configure(conf.getBoolean("fs.glusterfs.dht.placement", false),
+	                           conf.getInt("fs.glusterfs.dht.cache.size", GlusterFSDhtPlacement.DEFAULT_MAX_DIRS),
+	                           ttl,
+	                           conf.getInt("fs.glusterfs.dht.verify", GlusterFSDhtPlacement.DEFAULT_VERIFY));
+	    shards.configure(conf.getLong("fs.glusterfs.shard.block-size", 0), ttl);
+	    mappings.configure(conf.getLong("fs.glusterfs.mmap.threshold", 0),
+	                       conf.getLong("fs.glusterfs.mmap.cache.bytes", GlusterFSMappingCache.DEFAULT_MAX_BYTES));
+	}
+
+	private static synchronized GlusterFSLister sharedLister(int threads, int batchSize) {
+	    String key = "lister/" + threads + "/" + batchSize;
+	    GlusterFSLister lister = (GlusterFSLister) engines.get(key);
+	    if(lister==null) {
+	        lister = new GlusterFSLister();
+	        lister.configure(threads, batchSize);
+	        engines.put(key, lister);
+	    }
+	    return lister;
+	}
+
+	private static synchronized GlusterFSTreeWalker sharedWalker(int parallelism, boolean ordered) {
+	    String key = "walker/" + parallelism + "/" + ordered;
+	    GlusterFSTreeWalker walker = (GlusterFSTreeWalker) engines.get(key);
+	    if(walker==null) {
+	        walker = new GlusterFSTreeWalker();
+	        walker.configure(parallelism, ordered);
+	        engines.put(key, walker);
+	    }
+	    return walker;
+	}
+
+	private static synchronized GlusterFSCopier sharedCopier(int threads, long chunkSize) {
+	    String key = "copier/" + threads + "/" + chunkSize;
+	    GlusterFSCopier copier = (GlusterFSCopier) engines.get(key);
+	    if(copier==null) {
+	        copier = new GlusterFSCopier();
+	        copier.configure(threads, chunkSize);
+	        engines.put(key, copier);
+	    }
+	    return copier;
+	}
+
+	private static synchronized GlusterFSDeleter sharedDeleter(int parallelism) {
+	    String key = "deleter/" + parallelism;
+	    GlusterFSDeleter deleter = (GlusterFSDeleter) engines.get(key);
+	    if(deleter==null) {
+	        deleter = new GlusterFSDeleter();
+	        deleter.configure(parallelism);
+	        engines.put(key, deleter);
+	    }
+	    return deleter;
+	}
+
+	private static synchronized GlusterFSReadAhead sharedReadAhead(int windows, int minWindow, int maxWindow, int threads) {
+	    String key = "readahead/" + windows + "/" + minWindow + "/" + maxWindow + "/" + threads;
+	    GlusterFSReadAhead readAhead = (GlusterFSReadAhead) engines.get(key);
+	    if(readAhead==null) {
+	        readAhead = new GlusterFSReadAhead();
+	        readAhead.configure(windows, minWindow, maxWindow, threads);
+	        engines.put(key, readAhead);
+	    }
+	    return readAhead;
+	}
+
+	private static synchronized GlusterFSDirectIO sharedDirectIO(String paths, int bufferSize, int alignment) {
+	    String key = "direct/" + bufferSize + "/" + alignment + "/" + paths;
+	    GlusterFSDirectIO directIO = (GlusterFSDirectIO) engines.get(key);
+	    if(directIO==null) {
+	        directIO = new GlusterFSDirectIO();
+	        directIO.configure(paths, bufferSize, alignment);
+	        engines.put(key, directIO);
+	    }
+	    return directIO;
+	}
+
+	private static synchronized GlusterFSFadvise sharedFadvise(boolean sequential, long willNeed, boolean dropBehind) {
+	    String key = "fadvise/" + sequential + "/" + willNeed + "/" + dropBehind;
+	    GlusterFSFadvise fadvise = (GlusterFSFadvise) engines.get(key);
+	    if(fadvise==null) {
+	        fadvise = new GlusterFSFadvise();
+	        fadvise.configure(sequential, willNeed, dropBehind);
+	        engines.put(key, fadvise);
+	    }
+	    return fadvise;
+	}
+
+	/* whether f is left out of listings */
+	boolean isHidden(File f) {
+	    return purgeDir != null && purgeDir.equals(f);
 	}
+
+	/* whether something left out of listings exists in the tree at dir */
+	boolean hidesBelow(File dir) {
+	    if(purgeDir == null || !purgeDir.exists())
+	        return false;
+	    String d = dir.getPath();
+	    return purgeDir.getPath().startsWith(d.endsWith("/") ? d : d + "/");
+	}
+
+	/* null unless fs.glusterfs.delete.purge is set */
+	public GlusterFSPurger getPurger() {
+	    return purger;
+	}
+
+	public GlusterFSStatCache getStatCache() {
+	    return statCache;
+	}
+
 	public boolean mkdirs(Path f) throws IOException {
 	      if(f == null) {
 	        throw new IllegalArgumentException("mkdirs path arg is null");
 	      }
 	      
 	      f = f.makeQualified(this);
+	      invalidate(f);
 	      
-	      return super.mkdirs(f);
+	      try {
+	        return super.mkdirs(f);
+	      } finally {
+	        invalidated(f);
+	      }
 	}
 	  
     public FileStatus[] listStatus(Path f) throws IOException {
         File localf = pathToFile(f);
-        FileStatus[] results;
+        FileStatus status = getFileStatus(f);
 
-        if (!localf.exists()) {
-          throw new FileNotFoundException("File " + f + " does not exist");
+        if (!status.isDirectory()) {
+          return new FileStatus[] { status };
         }
-        if (localf.isFile()) {
-          return new FileStatus[] {
-            new GlusterFileStatus(localf, getDefaultBlockSize(), this) };
+        /* the directory's path is resolved once, entries are named relative to it */
+        return lister.list(this, localf, status.getPath());
+    }
+
+    /* entries of a path known to be a directory */
+    FileStatus[] listDirectory(Path dir) throws IOException {
+        return lister.list(this, pathToFile(dir), dir);
+    }
+
+    /* recursive listings walk the tree in parallel, see GlusterFSTreeWalker */
+    @Override
+    public RemoteIterator<LocatedFileStatus> listFiles(Path f, boolean recursive) throws IOException {
+        if (!recursive) {
+          return super.listFiles(f, recursive);
         }
-        
-        if(localf.isDirectory() && !localf.canRead()){
-            throw new IOException("Access denied : " + f.toString());
+        FileStatus status = getFileStatus(f);
+
+        if (!status.isDirectory()) {
+          return new Single<LocatedFileStatus>(locate(new FileStatus[] { status })[0]);
         }
+        final GlusterFSTreeWalker.Files files = walker.openFiles(this, status);
+        final int batchSize = lister.getBatchSize();
+        return new GlusterFSLister.Batches<LocatedFileStatus>() {
+          protected LocatedFileStatus[] nextBatch() throws IOException {
+            FileStatus[] batch = files.next(batchSize);
+            return batch == null ? null : locate(batch);
+          }
 
-        File[] names = localf.listFiles();
-        if (names == null) {
-          return null;
+          public void close() throws IOException {
+            super.close();
+            files.close();
+          }
+        };
+    }
+
+    @Override
+    public ContentSummary getContentSummary(Path f) throws IOException {
+        FileStatus status = getFileStatus(f);
+
+        if (!status.isDirectory()) {
+          return new ContentSummary(status.getLen(), 1, 0);
+        }
+        /* quota would count the purge directory, which listings leave out */
+        if (quotaSummary && !hidesBelow(pathToFile(f))) {
+          ContentSummary quota = GlusterFSQuota.getContentSummary(pathToFile(f).getPath());
+          if (quota != null)
+            return quota;
         }
-        results = new FileStatus[names.length];
-        int j = 0;
-        for (int i = 0; i < names.length; i++) {
-          try {
-            results[j] = getFileStatus(fileToPath(names[i]));
-            j++;
-          } catch (FileNotFoundException e) {
-        	  log.info("ignoring invisible path :  " + names[i]);
+        return walker.getContentSummary(this, status);
+    }
+
+    @Override
+    public FileStatus[] globStatus(Path pathPattern) throws IOException {
+        return globStatus(pathPattern, ACCEPT_ALL);
+    }
+
+    /* the same scheme, authority and working directory handling as FileSystem's Globber */
+    @Override
+    public FileStatus[] globStatus(Path pathPattern, PathFilter filter) throws IOException {
+        URI uri = pathPattern.toUri();
+        String scheme = uri.getScheme() != null ? uri.getScheme() : getUri().getScheme();
+        String authority = uri.getAuthority() != null ? uri.getAuthority() : getUri().getAuthority();
+        Path abs = new Path(uri.getPath().isEmpty() ? Path.CUR_DIR : uri.getPath());
+        if (!abs.isUriPathAbsolute()) {
+          abs = new Path(getWorkingDirectory(), abs);
+        }
+
+        FileStatus[] matches = walker.glob(this, new Path(scheme, authority, Path.SEPARATOR), abs.toUri().getPath(), filter);
+        return matches != null ? matches : super.globStatus(pathPattern, filter);
+    }
+
+    /* like listStatus, streamed from the directory a batch at a time */
+    public RemoteIterator<FileStatus> listStatusIterator(Path f) throws IOException {
+        FileStatus status = getFileStatus(f);
+
+        if (!status.isDirectory()) {
+          return new Single<FileStatus>(status);
+        }
+        final GlusterFSLister.Listing listing = lister.open(this, pathToFile(f), status.getPath(), null);
+        return new GlusterFSLister.Batches<FileStatus>() {
+          protected FileStatus[] nextBatch() throws IOException {
+            return listing.next();
+          }
+
+          public void close() throws IOException {
+            super.close();
+            listing.close();
+          }
+        };
+    }
+
+    /* streamed too, block locations of each batch are looked up together */
+    @Override
+    protected RemoteIterator<LocatedFileStatus> listLocatedStatus(Path f, PathFilter filter) throws IOException {
+        FileStatus status = getFileStatus(f);
+
+        if (!status.isDirectory()) {
+          return new Single<LocatedFileStatus>(locate(new FileStatus[] { status })[0]);
+        }
+        final GlusterFSLister.Listing listing = lister.open(this, pathToFile(f), status.getPath(), filter);
+        return new GlusterFSLister.Batches<LocatedFileStatus>() {
+          protected LocatedFileStatus[] nextBatch() throws IOException {
+            FileStatus[] batch = listing.next();
+            return batch == null ? null : locate(batch);
           }
+
+          public void close() throws IOException {
+            super.close();
+            listing.close();
+          }
+        };
+    }
+
+    private LocatedFileStatus[] locate(FileStatus[] batch) throws IOException {
+        List<FileStatus> files = new ArrayList<FileStatus>(batch.length);
+        for (FileStatus s : batch) {
+          if (s.isFile())
+            files.add(s);
         }
-        if (j == names.length) {
-          return results;
+        BlockLocation[][] locations = getFileBlockLocations(files.toArray(new FileStatus[files.size()]));
+
+        LocatedFileStatus[] located = new LocatedFileStatus[batch.length];
+        for (int i = 0, j = 0; i < batch.length; i++) {
+          located[i] = new LocatedFileStatus(batch[i], batch[i].isFile() ? locations[j++] : null);
+        }
+        return located;
+    }
+
+    /* listing of a plain file: the file itself */
+    static class Single<T> implements RemoteIterator<T> {
+        private T next;
+
+        Single(T status) {
+          this.next = status;
+        }
+
+        public boolean hasNext() {
+          return next != null;
+        }
+
+        public T next() {
+          if (next == null)
+            throw new java.util.NoSuchElementException("No more entries");
+          T t = next;
+          next = null;
+          return t;
         }
-        return Arrays.copyOf(results, j);
     }
     
     public FileStatus getFileStatus(Path f) throws IOException {
@@ -327,12 +909,33 @@ public class GlusterVolume extends RawLocalFileSystem{
             throw new FileNotFoundException( "File " + f + " does not exist on this volume." + ex);
         }
         
-        if (path.exists()) {
-          return new GlusterFileStatus(pathToFile(f), getDefaultBlockSize(), this);
-        } else {
+        GlusterFileStatus status = getFileStatus(path, null);
+        if (status == null) {
           throw new FileNotFoundException( "File " + f + " does not exist.");
         }
+        return status;
       }
+
+    /* status of f, known to be at p (resolved from f if null), or null if it doesn't exist */
+    GlusterFileStatus getFileStatus(File f, Path p) throws IOException {
+        GlusterFileAttributes a = null;
+        GlusterFSStatCache.CachedStat cached = statCache.isEnabled() ? statCache.get(f.getPath()) : null;
+
+        if (cached != null) {
+          a = cached.getAttributes();
+        } else {
+          /* one stat for everything, a second one only for symlinks */
+          a = GlusterFileAttributes.read(f);
+          if (a != null && a.isSymbolicLink()) {
+            a = GlusterFileAttributes.read(f, true);
+          }
+          statCache.put(f.getPath(), a);
+        }
+        if (a == null) {
+          return null;
+        }
+        return new GlusterFileStatus(p != null ? p : fileToPath(f), a, getDefaultBlockSize(), this);
+    }
     
     public long getBlockSize(Path path) throws IOException{
         long blkSz;
@@ -347,28 +950,167 @@ public class GlusterVolume extends RawLocalFileSystem{
     
     public void setOwner(Path p, String username, String groupname)
             throws IOException {
-    	super.setOwner(p,username,groupname);
-    	
+    	invalidate(p);
+    	try {
+    	    super.setOwner(p,username,groupname);
+    	} finally {
+    	    invalidated(p);
+    	}
     }
     
     public void setPermission(Path p, FsPermission permission)
             throws IOException {
-    	super.setPermission(p,permission);
+    	invalidate(p);
+    	try {
+    	    super.setPermission(p,permission);
+    	} finally {
+    	    invalidated(p);
+    	}
+    }
+
+    public void setTimes(Path p, long mtime, long atime) throws IOException {
+        invalidate(p);
+        try {
+            super.setTimes(p, mtime, atime);
+        } finally {
+            invalidated(p);
+        }
     }
 
     public BlockLocation[] getFileBlockLocations(FileStatus file,long start,long len) throws IOException{
-        File f=pathToFile(file.getPath());
         BlockLocation[] result=null;
+        GlusterFSLayout layout=getLayout(file);
 
-        result=attr.getPathInfo(f.getPath(), start, len);
+        aligned(file, layout);
+        result=attr.getPathInfo(layout, start, len);
         if(result==null){
-            log.info("Problem getting destination host for file "+f.getPath());
+            log.info("Problem getting destination host for file "+file.getPath());
             return null;
         }
 
         return result;
     }
+
+    /* layout of a file from the layout cache, its directory or its own pathinfo */
+    public GlusterFSLayout getLayout(FileStatus file) throws IOException{
+        String name=pathToFile(file.getPath()).getPath();
+        GlusterFSLayout[] layouts=new GlusterFSLayout[1];
+
+        if(!findLayouts(new FileStatus[]{file}, new String[]{name}, layouts).isEmpty()){
+            layouts[0]=cache(file, name, attr.getLayout(name));
+        }
+        return layouts[0];
+    }
+
+    /*
+     * The block size FileInputFormat should split a file at, see
+     * GlusterFSLayout.alignBlockSize, or -1 while the file's layout isn't
+     * cached: statuses don't look layouts up, getFileBlockLocations does.
+     */
+    long getSplitBlockSize(FileStatus file,long blockSize){
+        GlusterFSLayout layout=layoutCache.get(pathToFile(file.getPath()).getPath(), file.getModificationTime(), file.getLen());
+        return layout==null ? -1 : layout.alignBlockSize(blockSize);
+    }
+
+    /* a status whose layout was just looked up splits along it */
+    private static void aligned(FileStatus file,GlusterFSLayout layout){
+        if(layout!=null&&file instanceof GlusterFileStatus)
+            ((GlusterFileStatus) file).setLayout(layout);
+    }
     
+    /**
+     * Whole-file block locations of many files at once.  Layouts that aren't
+     * cached are looked up together, which lets the getfattr provider cover
+     * many files per fork.  An entry is null if its location is unknown.
+     */
+    public BlockLocation[][] getFileBlockLocations(FileStatus[] files) throws IOException{
+        BlockLocation[][] result=new BlockLocation[files.length][];
+        GlusterFSLayout[] layouts=new GlusterFSLayout[files.length];
+        String[] names=new String[files.length];
+
+        for(int i=0;i<files.length;i++)
+            names[i]=pathToFile(files[i].getPath()).getPath();
+
+        List<Integer> missing=findLayouts(files, names, layouts);
+        if(!missing.isEmpty()){
+            List<String> lookup=new ArrayList<String>(missing.size());
+            for(Integer i : missing)
+                lookup.add(names[i]);
+
+            Map<String, GlusterFSLayout> fetched=attr.getLayouts(lookup);
+            for(Integer i : missing){
+                layouts[i]=fetched.get(names[i]);
+                if(layouts[i]!=null)
+                    layouts[i]=cache(files[i], names[i], layouts[i]);
+            }
+        }
+
+        for(int i=0;i<files.length;i++){
+            if(layouts[i]==null){
+                log.info("Problem getting destination host for file "+names[i]);
+                continue;
+            }
+            aligned(files[i], layouts[i]);
+            result[i]=attr.getPathInfo(layouts[i], 0, files[i].getLen());
+        }
+
+        return result;
+    }
+
+    /* adds what shards add to a freshly looked up layout, and caches it */
+    private GlusterFSLayout cache(FileStatus file,String name,GlusterFSLayout layout){
+        if(shards.isEnabled()){
+            String root=pathToFile(new Path(file.getPath(), "/")).getPath();
+            layout=shards.shard(attr, root, name, file.getLen(), layout);
+        }
+        layoutCache.put(name, file.getModificationTime(), file.getLen(), layout);
+        return layout;
+    }
+
+    /*
+     * Fills in layouts from the layout cache and, if enabled, from the layout
+     * of each file's directory.  Returns the indexes still to be looked up.
+     */
+    private List<Integer> findLayouts(FileStatus[] files,String[] names,GlusterFSLayout[] layouts) throws IOException{
+        List<Integer> missing=new ArrayList<Integer>();
+        Map<Path, List<Integer>> byDir=new LinkedHashMap<Path, List<Integer>>();
+
+        for(int i=0;i<files.length;i++){
+            layouts[i]=layoutCache.get(names[i], files[i].getModificationTime(), files[i].getLen());
+            if(layouts[i]!=null)
+                continue;
+
+            Path parent=files[i].getPath().getParent();
+            if(!dhtPlacement.isEnabled()||files[i].isDirectory()||parent==null){
+                missing.add(i);
+                continue;
+            }
+            List<Integer> inDir=byDir.get(parent);
+            if(inDir==null){
+                inDir=new ArrayList<Integer>();
+                byDir.put(parent, inDir);
+            }
+            inDir.add(i);
+        }
+
+        for(Map.Entry<Path, List<Integer>> e : byDir.entrySet()){
+            List<String> dirFiles=new ArrayList<String>(e.getValue().size());
+            for(Integer i : e.getValue())
+                dirFiles.add(names[i]);
+
+            Map<String, GlusterFSLayout> placed=dhtPlacement.place(attr, pathToFile(e.getKey()).getPath(), e.getKey().toUri().getPath(), dirFiles);
+            for(Integer i : e.getValue()){
+                layouts[i]=placed.get(names[i]);
+                if(layouts[i]==null)
+                    missing.add(i);
+                else
+                    layouts[i]=cache(files[i], names[i], layouts[i]);
+            }
+        }
+
+        return missing;
+    }
+
     public String toString(){
         return "Gluster volume: " + this.NAME;
     }
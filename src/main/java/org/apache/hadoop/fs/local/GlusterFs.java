@@ -34,7 +34,11 @@ import java.net.URI;
 import java.net.URISyntaxException;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FilterFs;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 
 public class GlusterFs extends FilterFs{
 
@@ -46,5 +50,17 @@ public class GlusterFs extends FilterFs{
         this(conf);
     }
 
+    /* FilterFs would list through listStatus() and hold the whole directory */
+    @Override
+    public RemoteIterator<FileStatus> listStatusIterator(Path f) throws IOException{
+        checkPath(f);
+        return getMyFs().listStatusIterator(f);
+    }
+
+    @Override
+    public RemoteIterator<LocatedFileStatus> listLocatedStatus(Path f) throws IOException{
+        checkPath(f);
+        return getMyFs().listLocatedStatus(f);
+    }
 
 }
@@ -5,9 +5,12 @@ import java.net.URI;
 import java.net.URISyntaxException;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FsConstants;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.glusterfs.GlusterFileSystemCRC;
 import org.apache.hadoop.fs.glusterfs.GlusterVolume;
 import org.slf4j.Logger;
@@ -36,6 +39,19 @@ public class GlusterVol extends RawLocalFsG{
     GlusterVol(final URI theUri, final Configuration conf) throws IOException, URISyntaxException {
         super(theUri, new GlusterVolume(), conf, false);
     }
+
+    /* stream listings instead of AbstractFileSystem's listStatus() based ones */
+    @Override
+    public RemoteIterator<FileStatus> listStatusIterator(Path f) throws IOException{
+        checkPath(f);
+        return ((GlusterVolume) fsImpl).listStatusIterator(f);
+    }
+
+    @Override
+    public RemoteIterator<LocatedFileStatus> listLocatedStatus(Path f) throws IOException{
+        checkPath(f);
+        return fsImpl.listLocatedStatus(f);
+    }
     
     
     
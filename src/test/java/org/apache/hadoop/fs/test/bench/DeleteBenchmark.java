@@ -0,0 +1,87 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.glusterfs.GlusterFSDeleter;
+
+/**
+ * Recursive delete throughput of FileUtil.fullyDelete against the parallel
+ * deleter at several thread counts, each run on a freshly built tree of
+ * -Ddirs directories (two levels) of -Dfiles files under the given directory,
+ * a local disk or a mount:
+ *
+ *   java -cp glusterfs-hadoop.jar:test-classes:... \
+ *       -Ddirs=100 -Dfiles=200 -Dthreads=1,4,16,32 org.apache.hadoop.fs.test.bench.DeleteBenchmark /mnt/gv0/tmp
+ */
+public class DeleteBenchmark{
+
+    public static void main(String[] args) throws IOException{
+        if(args.length!=1){
+            System.err.println("usage: DeleteBenchmark <dir>");
+            System.exit(1);
+        }
+        int dirs=Integer.getInteger("dirs", 100);
+        int files=Integer.getInteger("files", 100);
+        String[] threads=System.getProperty("threads", "1,2,4,8,16").split(",");
+        File top=new File(args[0], "delete-benchmark");
+
+        build(top, dirs, files);
+        report("fullyDelete", dirs, files, time(null, top));
+
+        GlusterFSDeleter deleter=new GlusterFSDeleter();
+        for(String t : threads){
+            deleter.configure(Integer.parseInt(t.trim()));
+            build(top, dirs, files);
+            report("threads="+t.trim(), dirs, files, time(deleter, top));
+        }
+    }
+
+    /* sqrt(dirs) directories of sqrt(dirs) directories, files in the leaves */
+    static void build(File top,int dirs,int files) throws IOException{
+        int fanout=Math.max(1, (int) Math.round(Math.sqrt(dirs)));
+        for(int i=0;i<dirs;i++){
+            File dir=new File(top, "d"+(i/fanout)+"/d"+(i%fanout));
+            if(!dir.mkdirs())
+                throw new IOException("Cannot create "+dir);
+            for(int j=0;j<files;j++){
+                if(!new File(dir, "part-"+j).createNewFile())
+                    throw new IOException("Cannot create "+dir+"/part-"+j);
+            }
+        }
+    }
+
+    static long time(GlusterFSDeleter deleter,File top) throws IOException{
+        long start=System.nanoTime();
+        boolean done=deleter==null ? FileUtil.fullyDelete(top) : deleter.delete(top).isComplete();
+        long elapsed=System.nanoTime()-start;
+        if(!done||top.exists())
+            throw new IOException("Could not delete "+top);
+        return elapsed;
+    }
+
+    static void report(String name,int dirs,int files,long elapsed){
+        long entries=(long) dirs*files;
+        System.out.println(String.format("%-12s: %d files in %.2f s, %.0f files/s", name, entries, elapsed/1e9, entries/(elapsed/1e9)));
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import org.apache.hadoop.fs.glusterfs.GlusterFSFadvise;
+import org.apache.hadoop.fs.glusterfs.GlusterFSInputStream;
+import org.apache.hadoop.fs.glusterfs.GlusterFSNative;
+
+/**
+ * A mixed workload: a lookup file read over and over while a large file is
+ * scanned once, without hints and with SEQUENTIAL and DONTNEED.  Reports the
+ * scan's throughput, how much of each file is left in the page cache after
+ * the scan (mincore, through MappedByteBuffer.isLoaded, per -Dchunk) and how
+ * long the lookups take afterwards.  The scan evicts the lookup file only
+ * if it's larger than the free memory, size -Dscan accordingly:
+ *
+ *   java -cp glusterfs-hadoop.jar:test-classes:... \
+ *       -Dlookup=67108864 -Dscan=4294967296 -Dlookups=10000 org.apache.hadoop.fs.test.bench.FadviseBenchmark /mnt/gv0/tmp
+ */
+public class FadviseBenchmark{
+
+    public static void main(String[] args) throws IOException{
+        if(args.length!=1){
+            System.err.println("usage: FadviseBenchmark <dir>");
+            System.exit(1);
+        }
+        if(!GlusterFSNative.isAvailable()){
+            System.err.println("JNA unavailable, no hints to measure");
+            System.exit(1);
+        }
+        long lookupSize=Long.getLong("lookup", 64*1024*1024);
+        long scanSize=Long.getLong("scan", 1024*1024*1024);
+        int lookups=Integer.getInteger("lookups", 10000);
+        int chunk=Integer.getInteger("chunk", 1024*1024);
+        File lookup=new File(args[0], "fadvise-lookup.dat");
+        File scan=new File(args[0], "fadvise-scan.dat");
+
+        try{
+            build(lookup, lookupSize);
+            build(scan, scanSize);
+
+            GlusterFSFadvise hinted=new GlusterFSFadvise();
+            hinted.configure(true, 0, true);
+            run("none", GlusterFSFadvise.NONE, lookup, scan, lookups, chunk);
+            run("hinted", hinted, lookup, scan, lookups, chunk);
+        }finally{
+            lookup.delete();
+            scan.delete();
+        }
+    }
+
+    static void run(String name,GlusterFSFadvise fadvise,File lookup,File scan,int lookups,int chunk) throws IOException{
+        evict(lookup);
+        evict(scan);
+        lookups(lookup, lookups);
+
+        long start=System.nanoTime();
+        long bytes=scan(scan, fadvise);
+        long elapsed=System.nanoTime()-start;
+
+        double lookupResident=resident(lookup, chunk);
+        double scanResident=resident(scan, chunk);
+        long lookupTime=lookups(lookup, lookups);
+        System.out.println(String.format("%-7s: scan %.1f MB/s, resident after scan: lookup %.0f%% scan %.0f%%, %d lookups in %.1f ms",
+                name, bytes/1048576.0/(elapsed/1e9), lookupResident*100, scanResident*100, lookups, lookupTime/1e6));
+    }
+
+    static void build(File f,long size) throws IOException{
+        byte[] b=new byte[1024*1024];
+        new Random(1).nextBytes(b);
+        FileOutputStream out=new FileOutputStream(f);
+        try{
+            for(long done=0;done<size;done+=b.length)
+                out.write(b, 0, (int) Math.min(b.length, size-done));
+            /* clean pages, which DONTNEED can drop */
+            out.getFD().sync();
+        }finally{
+            out.close();
+        }
+    }
+
+    static void evict(File f){
+        GlusterFSFadvise.Hints hints=GlusterFSFadvise.NONE.hints(f, null);
+        hints.advise(0, 0, GlusterFSNative.POSIX_FADV_DONTNEED);
+        hints.close();
+    }
+
+    static long scan(File f,GlusterFSFadvise fadvise) throws IOException{
+        GlusterFSInputStream in=new GlusterFSInputStream(f, null, 1024*1024, null, fadvise);
+        byte[] b=new byte[1024*1024];
+        long bytes=0;
+        try{
+            int n;
+            while ((n=in.read(b, 0, b.length))>0)
+                bytes+=n;
+        }finally{
+            in.close();
+        }
+        return bytes;
+    }
+
+    /* random 4KB reads, nanoseconds */
+    static long lookups(File f,int lookups) throws IOException{
+        Random random=new Random(2);
+        GlusterFSInputStream in=new GlusterFSInputStream(f, null);
+        byte[] b=new byte[4096];
+        long start=System.nanoTime();
+        try{
+            long blocks=Math.max(1, f.length()/b.length);
+            for(int i=0;i<lookups;i++)
+                in.readFully((long) (random.nextDouble()*blocks)*b.length, b, 0, (int) Math.min(b.length, f.length()));
+        }finally{
+            in.close();
+        }
+        return System.nanoTime()-start;
+    }
+
+    /* share of the chunks of f entirely in the page cache */
+    static double resident(File f,int chunk) throws IOException{
+        FileInputStream in=new FileInputStream(f);
+        int loaded=0;
+        int chunks=0;
+        try{
+            FileChannel channel=in.getChannel();
+            for(long off=0;off<f.length();off+=chunk){
+                MappedByteBuffer m=channel.map(FileChannel.MapMode.READ_ONLY, off, Math.min(chunk, f.length()-off));
+                if(m.isLoaded())
+                    loaded++;
+                chunks++;
+            }
+        }finally{
+            in.close();
+        }
+        return chunks==0 ? 0 : (double) loaded/chunks;
+    }
+}
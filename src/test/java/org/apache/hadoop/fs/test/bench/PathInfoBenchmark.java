@@ -0,0 +1,69 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.glusterfs.GlusterFSGetfattrPathInfo;
+import org.apache.hadoop.fs.glusterfs.GlusterFSNativePathInfo;
+import org.apache.hadoop.fs.glusterfs.GlusterFSPathInfoProvider;
+
+/**
+ * Per-call latency of the pathinfo providers, run against files on a real
+ * gluster FUSE mount:
+ * 
+ *   java -cp glusterfs-hadoop.jar:test-classes:jna.jar:... \
+ *       -Diterations=2000 org.apache.hadoop.fs.test.bench.PathInfoBenchmark /mnt/gv0/a /mnt/gv0/b
+ * 
+ * -Dgetfattrcmd overrides the forked command (e.g. to drop sudo when running as root).
+ */
+public class PathInfoBenchmark{
+
+    public static void main(String[] args) throws IOException{
+        if(args.length==0){
+            System.err.println("usage: PathInfoBenchmark <file on gluster mount>...");
+            System.exit(1);
+        }
+        int iterations=Integer.getInteger("iterations", 1000);
+        String cmd=System.getProperty("getfattrcmd", GlusterFSGetfattrPathInfo.DEFAULT_GETFATTR_CMD);
+
+        GlusterFSPathInfoProvider forked=new GlusterFSGetfattrPathInfo(cmd);
+        run("getfattr", forked, args, iterations);
+
+        if(GlusterFSNativePathInfo.isAvailable()){
+            run("native", new GlusterFSNativePathInfo(forked), args, iterations);
+        }else{
+            System.out.println("native   : unavailable (JNA not loadable)");
+        }
+    }
+
+    static void run(String name,GlusterFSPathInfoProvider p,String[] files,int iterations) throws IOException{
+        /* warm up, and make sure the provider actually answers */
+        for(int i=0;i<Math.min(iterations, 50);i++)
+            p.getPathInfo(files[i%files.length]);
+
+        long start=System.nanoTime();
+        for(int i=0;i<iterations;i++)
+            p.getPathInfo(files[i%files.length]);
+        long elapsed=System.nanoTime()-start;
+
+        System.out.println(String.format("%-9s: %d calls, %.1f us/call (%s)", name, iterations, elapsed/1000.0/iterations, p));
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.glusterfs.GlusterFSLayout;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattr;
+
+/**
+ * Parser throughput on synthetic distribute-replicate and
+ * distribute-stripe-replicate pathinfo values, as returned for a directory
+ * (every subvolume listed), plus the cost of turning a parsed layout into the
+ * block locations of one 64MB split:
+ * 
+ *   java -cp ... -Dbricks=4000 -Dseconds=5 org.apache.hadoop.fs.test.bench.PathInfoParseBenchmark
+ */
+public class PathInfoParseBenchmark{
+
+    static final long SPLIT=64L*1024*1024;
+
+    public static void main(String[] args) throws IOException{
+        int bricks=Integer.getInteger("bricks", 4000);
+        int seconds=Integer.getInteger("seconds", 5);
+
+        run("DR  file", dr(2, 2), seconds);
+        run("DR  dir", dr(bricks, 2), seconds);
+        run("DSR file", dsr(1, 4, 2), seconds);
+        run("DSR dir", dsr(bricks/8, 4, 2), seconds);
+    }
+
+    static String posix(int i){
+        return "<POSIX(/bricks/brick"+i+"):server"+i+".example.com:/bricks/brick"+i+"/warehouse/table/part-00000>";
+    }
+
+    static String dr(int nbricks,int replica){
+        StringBuilder b=new StringBuilder("(<DISTRIBUTE:vol-dht>");
+        for(int i=0;i<nbricks/replica;i++){
+            b.append(" (<REPLICATE:vol-replicate-").append(i).append('>');
+            for(int r=0;r<replica;r++)
+                b.append(' ').append(posix(i*replica+r));
+            b.append(')');
+        }
+        return b.append(')').toString();
+    }
+
+    static String dsr(int nstripes,int stripe,int replica){
+        StringBuilder b=new StringBuilder("(<DISTRIBUTE:vol-dht>");
+        int brick=0;
+        for(int s=0;s<nstripes;s++){
+            b.append(" (<STRIPE:vol-stripe-").append(s).append(":[131072]>");
+            for(int i=0;i<stripe;i++){
+                b.append(" (<REPLICATE:vol-replicate-").append(s*stripe+i).append('>');
+                for(int r=0;r<replica;r++)
+                    b.append(' ').append(posix(brick++));
+                b.append(')');
+            }
+            b.append(')');
+        }
+        return b.append(')').toString();
+    }
+
+    static void run(String name,String pathinfo,int seconds) throws IOException{
+        GlusterFSLayout layout=GlusterFSXattr.parseLayout(pathinfo);
+        int bricks=layout.getBricks().size();
+        long sink=0;
+
+        /* warm up */
+        long until=System.nanoTime()+1000L*1000*1000;
+        while (System.nanoTime()<until)
+            sink+=GlusterFSXattr.parseLayout(pathinfo).getBlockLocations(0, SPLIT).length;
+
+        long ops=0;
+        long start=System.nanoTime();
+        until=start+seconds*1000L*1000*1000;
+        while (System.nanoTime()<until){
+            sink+=GlusterFSXattr.parseLayout(pathinfo).hashCode();
+            ops++;
+        }
+        double parseSecs=(System.nanoTime()-start)/1e9;
+
+        long hints=0;
+        start=System.nanoTime();
+        until=start+seconds*1000L*1000*1000;
+        while (System.nanoTime()<until){
+            sink+=layout.getBlockLocations(hints%1024*SPLIT, SPLIT).length;
+            hints++;
+        }
+        double hintSecs=(System.nanoTime()-start)/1e9;
+
+        System.out.println(String.format("%-9s %5d bricks %7d chars: %10.0f parses/s %7.1f MB/s, %10.0f splits/s (%d)", name, bricks,
+                pathinfo.length(), ops/parseSecs, ops*pathinfo.length()/parseSecs/1024/1024, hints/hintSecs, sink%10));
+    }
+}
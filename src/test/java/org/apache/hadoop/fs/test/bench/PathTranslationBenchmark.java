@@ -0,0 +1,158 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.File;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterFSVolumeTable;
+
+/**
+ * File to glusterfs:// path and back, from several threads at once, for the
+ * synchronized Hashtable scan GlusterVolume used to do against the volume
+ * table.  Nothing is read from disk, so no mount is needed:
+ *
+ *   java -cp glusterfs-hadoop.jar:test-classes:... \
+ *       -Dthreads=16 -Dvolumes=8 -Diterations=200000 org.apache.hadoop.fs.test.bench.PathTranslationBenchmark
+ */
+public class PathTranslationBenchmark{
+
+    interface Translator{
+        Path toPath(File f);
+
+        File toFile(String volume,String path);
+    }
+
+    /* what fileToPath and pathToFile did before the volume table */
+    static class HashtableTranslator implements Translator{
+        final Hashtable<String, String> volumes=new Hashtable<String, String>();
+        final String defaultVolume;
+
+        HashtableTranslator(String[] names,String[] mounts){
+            for(int i=0;i<names.length;i++)
+                volumes.put(names[i], mounts[i]);
+            defaultVolume=names[0];
+        }
+
+        public Path toPath(File path){
+            Enumeration<String> all=volumes.keys();
+            String rawPath=path.getAbsolutePath();
+            String volume=null;
+            String root=null;
+
+            while (volume==null&&all.hasMoreElements()){
+                String nextVolume=all.nextElement();
+                String nextPath=volumes.get(nextVolume);
+                if(rawPath.startsWith(nextPath)){
+                    volume=nextVolume;
+                    root=nextPath;
+                }
+            }
+            if(defaultVolume.equalsIgnoreCase(volume))
+                volume="";
+            return new Path("glusterfs://"+volume+"/"+rawPath.substring(root.length()));
+        }
+
+        public File toFile(String volume,String path){
+            return new File(volumes.get(volume==null ? defaultVolume : volume)+"/"+path);
+        }
+    }
+
+    static class TableTranslator implements Translator{
+        volatile GlusterFSVolumeTable table=GlusterFSVolumeTable.EMPTY;
+
+        TableTranslator(String[] names,String[] mounts){
+            for(int i=0;i<names.length;i++)
+                table=table.withVolume(names[i], mounts[i]);
+        }
+
+        public Path toPath(File f){
+            return table.toPath(f);
+        }
+
+        public File toFile(String volume,String path){
+            return table.toFile(volume, path);
+        }
+    }
+
+    public static void main(String[] args) throws Exception{
+        int threads=Integer.getInteger("threads", 16);
+        int nvolumes=Integer.getInteger("volumes", 8);
+        int iterations=Integer.getInteger("iterations", 200000);
+
+        /* distinct names, so the old scan's prefix matching can't pick the wrong one */
+        String[] names=new String[nvolumes];
+        String[] mounts=new String[nvolumes];
+        for(int i=0;i<nvolumes;i++){
+            names[i]="vol"+(char) ('a'+i%26)+i;
+            mounts[i]="/mnt/glusterfs/"+names[i];
+        }
+        File[] files=new File[256];
+        for(int i=0;i<files.length;i++)
+            files[i]=new File(mounts[i%nvolumes]+"/user/hadoop/job_"+i+"/part-"+i);
+
+        Translator[] translators=new Translator[]{ new HashtableTranslator(names, mounts), new TableTranslator(names, mounts) };
+        String[] labels=new String[]{ "hashtable", "table" };
+
+        for(int round=0;round<2;round++){
+            for(int t=0;t<translators.length;t++){
+                long elapsed=run(translators[t], files, threads, round==0 ? iterations/10 : iterations);
+                if(round>0)
+                    System.out.println(String.format("%-9s: %d threads x %d round trips, %.0f ns/round trip, %.0f round trips/s", labels[t], threads, iterations,
+                            (double) elapsed/iterations, (double) iterations*threads/elapsed*1e9));
+            }
+        }
+    }
+
+    static long run(final Translator translator,final File[] files,int threads,final int iterations) throws InterruptedException{
+        final CountDownLatch start=new CountDownLatch(1);
+        final CountDownLatch done=new CountDownLatch(threads);
+
+        for(int i=0;i<threads;i++){
+            final int offset=i;
+            Thread t=new Thread(){
+                public void run(){
+                    try{
+                        start.await();
+                        for(int j=0;j<iterations;j++){
+                            Path p=translator.toPath(files[(offset+j)%files.length]);
+                            if(translator.toFile(p.toUri().getAuthority(), p.toUri().getPath())==null)
+                                throw new IllegalStateException("lost "+p);
+                        }
+                    }catch (InterruptedException e){
+                        Thread.currentThread().interrupt();
+                    }finally{
+                        done.countDown();
+                    }
+                }
+            };
+            t.setDaemon(true);
+            t.start();
+        }
+
+        long begin=System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime()-begin;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.fs.glusterfs.GlusterFileAttributes;
+
+/**
+ * Per-status cost of loading permission, owner and group, the forked
+ * `ls -ld` against the stat plus name cache GlusterFileStatus uses now:
+ * 
+ *   java -cp glusterfs-hadoop.jar:test-classes:... \
+ *       -Diterations=2000 org.apache.hadoop.fs.test.bench.PermissionBenchmark /mnt/gv0/a /mnt/gv0/b
+ */
+public class PermissionBenchmark{
+
+    public static void main(String[] args) throws IOException{
+        if(args.length==0){
+            System.err.println("usage: PermissionBenchmark <file>...");
+            System.exit(1);
+        }
+        int iterations=Integer.getInteger("iterations", 1000);
+        File[] files=new File[args.length];
+        for(int i=0;i<args.length;i++)
+            files[i]=new File(args[i]);
+
+        run("ls -ld", false, files, iterations);
+        if(GlusterFileAttributes.isPosixAvailable()){
+            run("stat", true, files, iterations);
+        }else{
+            System.out.println("stat     : unavailable (no POSIX attributes)");
+        }
+    }
+
+    static void run(String name,boolean stat,File[] files,int iterations) throws IOException{
+        GlusterFileAttributes last=null;
+
+        /* warm up, and fill the name cache */
+        for(int i=0;i<Math.min(iterations, 50);i++)
+            last=read(stat, files[i%files.length]);
+
+        long start=System.nanoTime();
+        for(int i=0;i<iterations;i++)
+            last=read(stat, files[i%files.length]);
+        long elapsed=System.nanoTime()-start;
+
+        System.out.println(String.format("%-9s: %d calls, %.1f us/call (%s)", name, iterations, elapsed/1000.0/iterations, last));
+    }
+
+    static GlusterFileAttributes read(boolean stat,File f) throws IOException{
+        return stat ? GlusterFileAttributes.read(f) : GlusterFileAttributes.readWithLs(f);
+    }
+}
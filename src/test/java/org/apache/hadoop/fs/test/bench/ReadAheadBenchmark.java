@@ -0,0 +1,74 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.glusterfs.GlusterFSInputStream;
+import org.apache.hadoop.fs.glusterfs.GlusterFSReadAhead;
+
+/**
+ * Single stream sequential read throughput of a file on the mount, without
+ * read-ahead and with each of -Dwindows windows read ahead.  Drop the page
+ * cache (or use a file larger than memory) between runs for numbers that
+ * mean anything:
+ *
+ *   java -cp glusterfs-hadoop.jar:test-classes:... \
+ *       -Dwindows=0,2,4,8 -Dmax=4194304 -Dbuffer=65536 org.apache.hadoop.fs.test.bench.ReadAheadBenchmark /mnt/gv0/big.dat
+ */
+public class ReadAheadBenchmark{
+
+    public static void main(String[] args) throws IOException{
+        if(args.length!=1){
+            System.err.println("usage: ReadAheadBenchmark <file>");
+            System.exit(1);
+        }
+        File file=new File(args[0]);
+        String[] windows=System.getProperty("windows", "0,2,4,8").split(",");
+        int min=Integer.getInteger("min", GlusterFSReadAhead.DEFAULT_MIN_WINDOW);
+        int max=Integer.getInteger("max", GlusterFSReadAhead.DEFAULT_MAX_WINDOW);
+        int buffer=Integer.getInteger("buffer", 64*1024);
+
+        for(String w : windows){
+            GlusterFSReadAhead readAhead=new GlusterFSReadAhead();
+            readAhead.configure(Integer.parseInt(w.trim()), min, max, GlusterFSReadAhead.DEFAULT_THREADS);
+            long start=System.nanoTime();
+            long bytes=scan(file, buffer, readAhead);
+            long elapsed=System.nanoTime()-start;
+            System.out.println(String.format("windows=%-3s: %d bytes in %.2f s, %.1f MB/s (%s)", w.trim(), bytes, elapsed/1e9, bytes/1048576.0/(elapsed/1e9), readAhead));
+        }
+    }
+
+    static long scan(File file,int buffer,GlusterFSReadAhead readAhead) throws IOException{
+        GlusterFSInputStream in=new GlusterFSInputStream(file, new FileSystem.Statistics("glusterfs"), buffer, readAhead);
+        byte[] b=new byte[buffer];
+        long bytes=0;
+        try{
+            int n;
+            while ((n=in.read(b, 0, b.length))>0)
+                bytes+=n;
+        }finally{
+            in.close();
+        }
+        return bytes;
+    }
+}
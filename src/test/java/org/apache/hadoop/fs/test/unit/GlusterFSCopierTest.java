@@ -0,0 +1,144 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.glusterfs.GlusterFSCopier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Copying files and trees in chunks, against the temp directory.
+ */
+public class GlusterFSCopierTest{
+
+    File root;
+
+    @Before
+    public void setUp() throws IOException{
+        root=Files.createTempDirectory("copier").toFile();
+    }
+
+    @After
+    public void tearDown(){
+        FileUtil.fullyDelete(root);
+    }
+
+    static byte[] write(File f,int len) throws IOException{
+        byte[] data=new byte[len];
+        new Random(len).nextBytes(data);
+        FileOutputStream out=new FileOutputStream(f);
+        try{
+            out.write(data);
+        }finally{
+            out.close();
+        }
+        return data;
+    }
+
+    @Test
+    public void testChunks() throws IOException{
+        GlusterFSCopier c=new GlusterFSCopier();
+        c.configure(4, 1000);
+        File src=new File(root, "src");
+        byte[] data=write(src, 10500);
+
+        File dst=new File(root, "dst");
+        write(dst, 20000);
+        assertTrue(c.copy(src, dst, false));
+        assertArrayEquals(data, Files.readAllBytes(dst.toPath()));
+        assertEquals(10500, c.getBytesCopied());
+
+        /* single threaded, onto nothing */
+        c.configure(1, 1000);
+        File moved=new File(root, "a/b/moved");
+        assertTrue(c.copy(src, moved, true));
+        assertArrayEquals(data, Files.readAllBytes(moved.toPath()));
+        assertFalse(src.exists());
+    }
+
+    @Test
+    public void testTree() throws IOException{
+        GlusterFSCopier c=new GlusterFSCopier();
+        c.configure(2, 100);
+        File src=new File(root, "src");
+        new File(src, "d/e").mkdirs();
+        byte[] data=write(new File(src, "d/f"), 1000);
+        write(new File(src, "d/.f.crc"), 12);
+        File dst=new File(root, "dst");
+        dst.mkdir();
+        /* stale checksum of a file that will be replaced */
+        new File(dst, "src/d").mkdirs();
+        write(new File(dst, "src/d/g"), 5);
+        write(new File(dst, "src/d/.g.crc"), 12);
+        write(new File(src, "d/g"), 7);
+
+        assertTrue(c.copy(src, dst, true, true, true));
+        assertFalse(src.exists());
+        assertArrayEquals(data, Files.readAllBytes(new File(dst, "src/d/f").toPath()));
+        assertEquals(12, new File(dst, "src/d/.f.crc").length());
+        assertEquals(7, new File(dst, "src/d/g").length());
+        assertFalse(new File(dst, "src/d/.g.crc").exists());
+        assertTrue(new File(dst, "src/d/e").isDirectory());
+
+        try{
+            c.copy(new File(dst, "src"), new File(dst, "src/d/e"), false);
+            fail("copied a directory into itself");
+        }catch (IOException e){
+        }
+    }
+
+    @Test
+    public void testChecksumsLeftBehind() throws IOException{
+        GlusterFSCopier c=new GlusterFSCopier();
+        File src=new File(root, "src");
+        new File(src, "d").mkdirs();
+        write(new File(src, "d/f"), 100);
+        write(new File(src, "d/.f.crc"), 12);
+        write(new File(src, "g"), 10);
+        write(new File(src, ".g.crc"), 12);
+
+        /* to a file system without checksums */
+        File dst=new File(root, "dst");
+        assertTrue(c.copy(src, dst, false, true, false));
+        assertEquals(100, new File(dst, "d/f").length());
+        assertFalse(new File(dst, "d/.f.crc").exists());
+        assertTrue(c.copy(new File(src, "g"), new File(dst, "g"), false, true, false));
+        assertFalse(new File(dst, ".g.crc").exists());
+
+        /* within one, they're files like any other */
+        File same=new File(root, "same");
+        assertTrue(c.copy(src, same, false));
+        assertEquals(12, new File(same, "d/.f.crc").length());
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.glusterfs.GlusterFSDeleter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Parallel recursive deletes, against the temp directory.
+ */
+public class GlusterFSDeleterTest{
+
+    File root;
+
+    @Before
+    public void setUp() throws IOException{
+        root=Files.createTempDirectory("deleter").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException, InterruptedException{
+        FileUtil.chmod(root.getPath(), "u+rwx", true);
+        FileUtil.fullyDelete(root);
+    }
+
+    static void tree(File dir,int depth,int files) throws IOException{
+        dir.mkdirs();
+        for(int i=0;i<files;i++)
+            new File(dir, "f"+i).createNewFile();
+        if(depth>0){
+            for(int i=0;i<3;i++)
+                tree(new File(dir, "d"+i), depth-1, files);
+        }
+    }
+
+    @Test
+    public void testTree() throws IOException{
+        GlusterFSDeleter d=new GlusterFSDeleter();
+        d.configure(4);
+        File top=new File(root, "top");
+        /* 1+3+9 directories of 100 files, chunks and a remainder each */
+        tree(top, 2, 100);
+        File outside=new File(root, "outside");
+        outside.mkdir();
+        new File(outside, "kept").createNewFile();
+        Files.createSymbolicLink(new File(top, "link").toPath(), outside.toPath());
+
+        GlusterFSDeleter.Result r=d.delete(top);
+        assertTrue(r.isComplete());
+        assertEquals(1301, r.getFiles());
+        assertEquals(13, r.getDirectories());
+        assertFalse(top.exists());
+        assertTrue(new File(outside, "kept").exists());
+
+        /* gone already, and plain files */
+        assertTrue(d.delete(top).isComplete());
+        assertEquals(1, d.delete(new File(outside, "kept")).getFiles());
+    }
+
+    @Test
+    public void testPartialFailure() throws IOException, InterruptedException{
+        assumeTrue(!"root".equals(System.getProperty("user.name")));
+        GlusterFSDeleter d=new GlusterFSDeleter();
+        File top=new File(root, "top");
+        tree(top, 1, 10);
+        File locked=new File(top, "d1");
+        FileUtil.chmod(locked.getPath(), "a-w");
+
+        GlusterFSDeleter.Result r=d.delete(top);
+        assertFalse(r.isComplete());
+        /* what could go is gone; d1, its files and top are left */
+        assertEquals(30, r.getFiles());
+        assertEquals(2, r.getDirectories());
+        assertEquals(12, r.getFailures());
+        assertEquals(10, new File(top, "d1").list().length);
+        assertEquals(1, top.list().length);
+    }
+}
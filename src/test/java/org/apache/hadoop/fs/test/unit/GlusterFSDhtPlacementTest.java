@@ -0,0 +1,260 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.glusterfs.GlusterFSDhtLayout;
+import org.apache.hadoop.fs.glusterfs.GlusterFSDhtPlacement;
+import org.apache.hadoop.fs.glusterfs.GlusterFSLayout;
+import org.apache.hadoop.fs.glusterfs.GlusterFSPathInfoProvider;
+import org.apache.hadoop.fs.glusterfs.GlusterFSShardedLayout;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattr;
+import org.junit.Test;
+
+/**
+ * Client side distribute placement against hashes from glusterfs' own
+ * gf_dm_hashfn, no gluster mount needed.
+ */
+public class GlusterFSDhtPlacementTest{
+
+    /* subvolumes listed out of name order on purpose */
+    static final String DIR="(<DISTRIBUTE:gv0-dht> "
+            +"(<REPLICATE:gv0-replicate-2> <POSIX(/b5):host5:/b5/dir> <POSIX(/b6):host6:/b6/dir>) "
+            +"(<REPLICATE:gv0-replicate-0> <POSIX(/b1):host1:/b1/dir> <POSIX(/b2):host2:/b2/dir>) "
+            +"(<REPLICATE:gv0-replicate-1> <POSIX(/b3):host3:/b3/dir> <POSIX(/b4):host4:/b4/dir>))";
+
+    static String file(int replicate,String name){
+        int a=replicate*2+1;
+        int b=a+1;
+        return "(<DISTRIBUTE:gv0-dht> (<REPLICATE:gv0-replicate-"+replicate+"> <POSIX(/b"+a+"):host"+a+":/b"+a+"/dir/"+name+"> "
+                +"<POSIX(/b"+b+"):host"+b+":/b"+b+"/dir/"+name+">))";
+    }
+
+    /* pathinfo from a map, counting lookups */
+    static class FakePathInfo implements GlusterFSPathInfoProvider{
+        final Map<String, String> values=new HashMap<String, String>();
+        int lookups=0;
+
+        public String getPathInfo(String filename) throws IOException{
+            lookups++;
+            String v=values.get(filename);
+            if(v==null)
+                throw new IOException("no pathinfo for "+filename);
+            return v;
+        }
+
+        public Map<String, String> getPathInfo(List<String> filenames) throws IOException{
+            Map<String, String> out=new HashMap<String, String>();
+            for(String f : filenames){
+                lookups++;
+                if(values.containsKey(f))
+                    out.put(f, values.get(f));
+            }
+            return out;
+        }
+    }
+
+    @Test
+    public void testHash(){
+        /* printed by gf_dm_hashfn from libglusterfs */
+        assertEquals(974644454L, GlusterFSDhtLayout.hash("a"));
+        assertEquals(361508684L, GlusterFSDhtLayout.hash("part-00000"));
+        assertEquals(3383850742L, GlusterFSDhtLayout.hash("part-m-00001"));
+        assertEquals(884353860L, GlusterFSDhtLayout.hash("/user/hive/warehouse"));
+        assertEquals(2877117390L, GlusterFSDhtLayout.hash("abcdefghijklmnopqrstuvwxyz0123456789"));
+        assertEquals(3072091089L, GlusterFSDhtLayout.hash("h\u00e9llo"));
+        assertEquals(2853341232L, GlusterFSDhtLayout.hash("_SUCCESS"));
+    }
+
+    @Test
+    public void testDefaultLayout() throws IOException{
+        GlusterFSDhtLayout dht=GlusterFSDhtLayout.forDirectory(GlusterFSXattr.parseLayout(DIR), "/dir");
+        assertEquals(3, dht.getSubvolumeCount());
+
+        assertEquals("gv0-replicate-0", dht.subvolumeOf("part-00000").getName());
+        assertEquals("gv0-replicate-2", dht.subvolumeOf("part-00001").getName());
+        assertEquals("gv0-replicate-1", dht.subvolumeOf("part-00002").getName());
+        /* rsync temp files hash like the file they become */
+        assertEquals("gv0-replicate-0", dht.subvolumeOf(".part-00003.Xy12ab").getName());
+
+        GlusterFSLayout l=dht.layoutOf("part-00001");
+        assertEquals(GlusterFSXattr.LAYOUT.DR, l.getLayoutType());
+        assertArrayEquals(new String[]{"host5","host6"}, l.getBlockLocations(0, 10)[0].getHosts());
+        assertEquals("/b5/dir/part-00001", l.getBricks().get(0).getPath());
+        assertTrue(l.sameBricks(GlusterFSXattr.parseLayout(file(2, "part-00001"))));
+    }
+
+    @Test
+    public void testPlacementAfterVerify() throws IOException{
+        FakePathInfo p=new FakePathInfo();
+        p.values.put("/mnt/dir", DIR);
+        p.values.put("/mnt/dir/part-00000", file(0, "part-00000"));
+        p.values.put("/mnt/dir/part-00001", file(2, "part-00001"));
+        GlusterFSXattr attr=new GlusterFSXattr(p);
+        GlusterFSDhtPlacement placement=new GlusterFSDhtPlacement();
+        placement.configure(true, 10, 0, 2);
+
+        List<String> files=new ArrayList<String>();
+        for(int i=0;i<1000;i++)
+            files.add("/mnt/dir/part-"+String.format("%05d", i));
+
+        Map<String, GlusterFSLayout> placed=placement.place(attr, "/mnt/dir", "/dir", files);
+        assertEquals(1000, placed.size());
+        /* the directory and two samples */
+        assertEquals(3, p.lookups);
+        assertArrayEquals(new String[]{"host3","host4"}, placed.get("/mnt/dir/part-00002").getBlockLocations(0, 1)[0].getHosts());
+
+        placement.place(attr, "/mnt/dir", "/dir", files);
+        assertEquals(3, p.lookups);
+        assertEquals(998+1000, placement.getPlaced());
+    }
+
+    @Test
+    public void testMismatchFallsBack() throws IOException{
+        FakePathInfo p=new FakePathInfo();
+        p.values.put("/mnt/dir", DIR);
+        /* renamed or rebalanced: not where the name hashes to */
+        p.values.put("/mnt/dir/part-00000", file(1, "part-00000"));
+        GlusterFSXattr attr=new GlusterFSXattr(p);
+        GlusterFSDhtPlacement placement=new GlusterFSDhtPlacement();
+        placement.configure(true, 10, 0, 2);
+
+        List<String> files=Arrays.asList("/mnt/dir/part-00000", "/mnt/dir/part-00001");
+        Map<String, GlusterFSLayout> placed=placement.place(attr, "/mnt/dir", "/dir", files);
+        assertEquals(1, placed.size());
+        assertArrayEquals(new String[]{"host3","host4"}, placed.get("/mnt/dir/part-00000").getBlockLocations(0, 1)[0].getHosts());
+        assertEquals(1, placement.getMismatches());
+
+        /* the directory isn't read again, nothing is placed */
+        int lookups=p.lookups;
+        assertEquals(0, placement.place(attr, "/mnt/dir", "/dir", files).size());
+        assertEquals(lookups, p.lookups);
+    }
+
+    @Test
+    public void testRenamedFileIsLookedUp() throws IOException{
+        FakePathInfo p=new FakePathInfo();
+        p.values.put("/mnt/dir", DIR);
+        GlusterFSXattr attr=new GlusterFSXattr(p);
+        GlusterFSDhtPlacement placement=new GlusterFSDhtPlacement();
+        placement.configure(true, 10, 0, 0);
+
+        List<String> files=Arrays.asList("/mnt/dir/part-00000", "/mnt/dir/part-00001");
+        assertEquals(2, placement.place(attr, "/mnt/dir", "/dir", files).size());
+
+        placement.renamed("/mnt/dir/part-00001");
+        Map<String, GlusterFSLayout> placed=placement.place(attr, "/mnt/dir", "/dir", files);
+        assertEquals(1, placed.size());
+        assertTrue(placed.containsKey("/mnt/dir/part-00000"));
+
+        /* e.g. renamed into again: the layout goes, what was renamed into it stays */
+        placement.invalidate("/mnt");
+        assertEquals(1, placement.size());
+        int lookups=p.lookups;
+        placed=placement.place(attr, "/mnt/dir", "/dir", files);
+        assertEquals(lookups+1, p.lookups);
+        assertEquals(1, placed.size());
+        assertTrue(placed.containsKey("/mnt/dir/part-00000"));
+    }
+
+    @Test
+    public void testRenamedBeforeDirectoryIsCached() throws IOException{
+        FakePathInfo p=new FakePathInfo();
+        p.values.put("/mnt/dir", DIR);
+        GlusterFSXattr attr=new GlusterFSXattr(p);
+        GlusterFSDhtPlacement placement=new GlusterFSDhtPlacement();
+        placement.configure(true, 10, 0, 0);
+
+        placement.renamed("/mnt/dir/part-00001");
+        List<String> files=Arrays.asList("/mnt/dir/part-00000", "/mnt/dir/part-00001");
+        Map<String, GlusterFSLayout> placed=placement.place(attr, "/mnt/dir", "/dir", files);
+        assertEquals(1, placed.size());
+        assertTrue(placed.containsKey("/mnt/dir/part-00000"));
+    }
+
+    @Test
+    public void testChangedDirectoryIsVerifiedAgain() throws IOException{
+        File dir=File.createTempFile("dht", "");
+        dir.delete();
+        dir.mkdir();
+        try{
+            String mount=dir.getPath();
+            FakePathInfo p=new FakePathInfo();
+            p.values.put(mount, DIR);
+            p.values.put(mount+"/part-00000", file(0, "part-00000"));
+            GlusterFSXattr attr=new GlusterFSXattr(p);
+            GlusterFSDhtPlacement placement=new GlusterFSDhtPlacement();
+            placement.configure(true, 10, 0, 1);
+
+            List<String> files=Arrays.asList(mount+"/part-00000", mount+"/part-00001");
+            assertEquals(2, placement.place(attr, mount, "/dir", files).size());
+            assertEquals(2, p.lookups);
+            placement.place(attr, mount, "/dir", files);
+            assertEquals(2, p.lookups);
+
+            /* another client rebalanced or renamed into it */
+            p.values.put(mount+"/part-00000", file(1, "part-00000"));
+            assertTrue(dir.setLastModified(dir.lastModified()-10000));
+            Map<String, GlusterFSLayout> placed=placement.place(attr, mount, "/dir", files);
+            assertEquals(4, p.lookups);
+            assertEquals(1, placed.size());
+            assertEquals(1, placement.getMismatches());
+        }finally{
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testShards() throws IOException{
+        String shardDir=DIR.replace("/dir>", "/.shard>");
+        String gfid="4e1c6b1a-29a1-4c3c-9d11-6e0d8f1f7a55";
+        GlusterFSDhtLayout dht=GlusterFSDhtLayout.forDirectory(GlusterFSXattr.parseLayout(shardDir), "/.shard");
+        GlusterFSLayout base=GlusterFSXattr.parseLayout(file(0, "big"));
+        GlusterFSShardedLayout l=new GlusterFSShardedLayout(base, 100, 250, gfid, dht);
+
+        BlockLocation[] b=l.getBlockLocations(50, 200);
+        assertEquals(3, b.length);
+        assertEquals(50, b[0].getOffset());
+        assertEquals(50, b[0].getLength());
+        assertArrayEquals(new String[]{"host1","host2"}, b[0].getHosts());
+        for(int n=1;n<3;n++){
+            assertEquals(n*100, b[n].getOffset());
+            assertEquals(n==2 ? 50 : 100, b[n].getLength());
+            assertArrayEquals(dht.subvolumeOf(gfid+"."+n).getHosts(), b[n].getHosts());
+        }
+        assertTrue(l.getShard(2).getBricks().get(0).getPath().endsWith("/.shard/"+gfid+".2"));
+
+        assertEquals(100, l.alignBlockSize(64*1024*1024));
+        assertEquals(2, l.getBrickHints(0, 100).size());
+        assertEquals(0, l.getBrickHints(0, 101).size());
+    }
+}
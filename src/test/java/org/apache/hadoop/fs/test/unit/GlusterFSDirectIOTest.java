@@ -0,0 +1,138 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.glusterfs.GlusterFSDirectIO;
+import org.apache.hadoop.fs.glusterfs.GlusterFSNative;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Writes and reads through O_DIRECT streams; either they're direct or they
+ * fell back, the data must come out the same.
+ */
+public class GlusterFSDirectIOTest{
+
+    File file;
+    byte[] data;
+    GlusterFSDirectIO directIO;
+
+    @Before
+    public void setUp() throws IOException{
+        assumeTrue(GlusterFSNative.isAvailable());
+        /* not a multiple of the alignment */
+        data=new byte[100003];
+        new Random(1).nextBytes(data);
+        file=File.createTempFile("direct", ".dat");
+        directIO=new GlusterFSDirectIO();
+        directIO.configure(".*\\.dat", 8192, 4096);
+    }
+
+    @After
+    public void tearDown(){
+        if(file!=null)
+            file.delete();
+    }
+
+    @Test
+    public void testAccepts(){
+        assertTrue(directIO.accepts(file.getPath()));
+        assertFalse(directIO.accepts("/tmp/lookup.idx"));
+        directIO.configure("", 8192, 4096);
+        assertFalse(directIO.isEnabled());
+        assertFalse(directIO.accepts(file.getPath()));
+    }
+
+    @Test
+    public void testWriteRead() throws IOException{
+        OutputStream out=directIO.create(file);
+        if(out==null){
+            /* the file system refused O_DIRECT */
+            assertTrue(directIO.getFallbacks()>0);
+            return;
+        }
+        try{
+            out.write(data, 0, 5000);
+            out.flush();
+            /* the partial block too */
+            assertEquals(5000, file.length());
+            out.write(data[5000]);
+            out.write(data, 5001, data.length-5001);
+        }finally{
+            out.close();
+        }
+        assertEquals(data.length, file.length());
+        byte[] written=new byte[data.length];
+        RandomAccessFile raf=new RandomAccessFile(file, "r");
+        try{
+            raf.readFully(written);
+        }finally{
+            raf.close();
+        }
+        assertArrayEquals(data, written);
+
+        FileSystem.Statistics stats=new FileSystem.Statistics("glusterfs");
+        FSInputStream in=directIO.open(file, stats);
+        try{
+            byte[] read=new byte[data.length];
+            int off=0;
+            int n;
+            while ((n=in.read(read, off, Math.min(3000, read.length-off)))>0)
+                off+=n;
+            assertEquals(data.length, off);
+            assertArrayEquals(data, read);
+            assertEquals(-1, in.read());
+            assertEquals(data.length, stats.getBytesRead());
+
+            /* unaligned seek and positional reads */
+            in.seek(12345);
+            assertEquals(data[12345]&0xff, in.read());
+            byte[] b=new byte[100];
+            in.readFully(99950, b, 0, 53);
+            assertEquals(data[100002], b[52]);
+            assertEquals(12346, in.getPos());
+        }finally{
+            in.close();
+        }
+        assertTrue(directIO.getOpened()>0);
+    }
+
+    @Test(expected=FileNotFoundException.class)
+    public void testMissing() throws IOException{
+        file.delete();
+        directIO.open(file, null);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import org.apache.hadoop.fs.glusterfs.GlusterFSDataOutputStream;
+import org.apache.hadoop.fs.glusterfs.GlusterFSFadvise;
+import org.apache.hadoop.fs.glusterfs.GlusterFSInputStream;
+import org.apache.hadoop.fs.glusterfs.GlusterFSNative;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Which hints streams give, by default and by their own settings.
+ */
+public class GlusterFSFadviseTest{
+
+    File file;
+    byte[] data;
+
+    @Before
+    public void setUp() throws IOException{
+        assumeTrue(GlusterFSNative.isAvailable());
+        data=new byte[100000];
+        new Random(1).nextBytes(data);
+        file=File.createTempFile("fadvise", ".dat");
+    }
+
+    @After
+    public void tearDown(){
+        if(file!=null)
+            file.delete();
+    }
+
+    void write(GlusterFSFadvise fadvise,Boolean dropBehind) throws IOException{
+        GlusterFSDataOutputStream out=new GlusterFSDataOutputStream(new FileOutputStream(file), null, 0, null, null, file, 0, fadvise);
+        try{
+            out.setDropBehind(dropBehind);
+            out.write(data, 0, 50000);
+            out.write(data[50000]);
+            out.write(data, 50001, data.length-50001);
+        }finally{
+            out.close();
+        }
+    }
+
+    byte[] read(GlusterFSFadvise fadvise,Long readahead,Boolean dropBehind) throws IOException{
+        GlusterFSInputStream in=new GlusterFSInputStream(file, null, 4096, null, fadvise);
+        byte[] read=new byte[data.length];
+        try{
+            in.setReadahead(readahead);
+            in.setDropBehind(dropBehind);
+            in.readFully(0, read, 0, 10);
+            in.seek(0);
+            int off=0;
+            int n;
+            while ((n=in.read(read, off, read.length-off))>0)
+                off+=n;
+        }finally{
+            in.close();
+        }
+        return read;
+    }
+
+    @Test
+    public void testDefaults() throws IOException{
+        GlusterFSFadvise fadvise=new GlusterFSFadvise();
+        write(fadvise, null);
+        assertArrayEquals(data, read(fadvise, null, null));
+        assertEquals(0, fadvise.getAdvised());
+
+        /* dropped behind on close */
+        fadvise.configure(false, 0, true);
+        write(fadvise, null);
+        assertEquals(1, fadvise.getAdvised());
+
+        /* sequential on open, only on the stream's own descriptor, willneed where reading starts, dontneed on close */
+        fadvise.configure(true, 65536, true);
+        assertArrayEquals(data, read(fadvise, null, null));
+        assertEquals(GlusterFSNative.descriptor(FileDescriptor.in)>=0 ? 4 : 3, fadvise.getAdvised());
+        assertEquals(0, fadvise.getFailures());
+    }
+
+    @Test
+    public void testPerStream() throws IOException{
+        GlusterFSFadvise fadvise=new GlusterFSFadvise();
+        fadvise.configure(false, 65536, true);
+        write(fadvise, false);
+        assertEquals(0, fadvise.getAdvised());
+
+        /* neither willneed nor dontneed */
+        assertArrayEquals(data, read(fadvise, 0L, false));
+        assertEquals(0, fadvise.getAdvised());
+
+        fadvise.configure(false, 0, false);
+        assertArrayEquals(data, read(fadvise, 4096L, true));
+        assertEquals(2, fadvise.getAdvised());
+
+        byte[] written=new byte[data.length];
+        RandomAccessFile raf=new RandomAccessFile(file, "r");
+        try{
+            raf.readFully(written);
+        }finally{
+            raf.close();
+        }
+        assertArrayEquals(data, written);
+    }
+}
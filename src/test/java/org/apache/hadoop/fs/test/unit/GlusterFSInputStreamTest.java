@@ -0,0 +1,161 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.glusterfs.GlusterFSInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Buffered, positional and ByteBuffer reads of GlusterFSInputStream.
+ */
+public class GlusterFSInputStreamTest{
+
+    File file;
+    byte[] data;
+
+    @Before
+    public void setUp() throws IOException{
+        data=new byte[100000];
+        new Random(1).nextBytes(data);
+        file=File.createTempFile("stream", ".dat");
+        FileOutputStream out=new FileOutputStream(file);
+        try{
+            out.write(data);
+        }finally{
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown(){
+        file.delete();
+    }
+
+    @Test
+    public void testSequential() throws IOException{
+        FileSystem.Statistics stats=new FileSystem.Statistics("glusterfs");
+        GlusterFSInputStream in=new GlusterFSInputStream(file, stats, 1000);
+        try{
+            assertEquals(data[0]&0xff, in.read());
+            byte[] b=new byte[10];
+            assertEquals(10, in.read(b, 0, 10));
+            assertEquals(data[10], b[9]);
+            /* all from the first fill */
+            assertEquals(1000, stats.getBytesRead());
+
+            /* lazy, and back inside the buffer */
+            in.seek(500);
+            assertEquals(500, in.getPos());
+            assertEquals(data[500]&0xff, in.read());
+            assertEquals(1000, stats.getBytesRead());
+
+            /* larger than the buffer, straight into b */
+            byte[] big=new byte[5000];
+            in.seek(90000);
+            assertEquals(5000, in.read(big, 0, 5000));
+            assertEquals(data[94999], big[4999]);
+            assertEquals(95000, in.getPos());
+
+            in.seek(99999);
+            assertEquals(data[99999]&0xff, in.read());
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(b, 0, 10));
+        }finally{
+            in.close();
+        }
+    }
+
+    @Test
+    public void testByteBuffers() throws IOException{
+        FSDataInputStream in=new FSDataInputStream(new GlusterFSInputStream(file, null, 1000));
+        try{
+            in.read();
+            /* what's buffered comes first */
+            ByteBuffer buf=ByteBuffer.allocateDirect(4096);
+            assertEquals(999, in.read(buf));
+            assertEquals(4096-999, in.read(buf));
+            assertEquals(4097, in.getPos());
+            buf.flip();
+            assertEquals(data[1], buf.get(0));
+            assertEquals(data[4096], buf.get(4095));
+
+            in.seek(99990);
+            buf.clear();
+            assertEquals(10, in.read(buf));
+            assertEquals(-1, in.read(buf));
+        }finally{
+            in.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentPositionalReads() throws Exception{
+        final GlusterFSInputStream in=new GlusterFSInputStream(file, null, 1000);
+        final AtomicInteger errors=new AtomicInteger();
+        Thread[] threads=new Thread[8];
+        try{
+            in.seek(1234);
+            for(int t=0;t<threads.length;t++){
+                final int seed=t;
+                threads[t]=new Thread(){
+                    public void run(){
+                        Random r=new Random(seed);
+                        byte[] b=new byte[100];
+                        try{
+                            for(int i=0;i<2000;i++){
+                                int pos=r.nextInt(data.length-b.length);
+                                in.readFully(pos, b, 0, b.length);
+                                for(int j=0;j<b.length;j++){
+                                    if(b[j]!=data[pos+j])
+                                        errors.incrementAndGet();
+                                }
+                            }
+                        }catch (IOException e){
+                            errors.incrementAndGet();
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for(Thread t : threads)
+                t.join();
+            assertEquals(0, errors.get());
+            /* positional reads leave the stream where it was */
+            assertEquals(1234, in.getPos());
+            assertTrue(in.read()==(data[1234]&0xff));
+        }finally{
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.apache.hadoop.fs.glusterfs.GlusterFSLayout;
+import org.apache.hadoop.fs.glusterfs.GlusterFSLayoutCache;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattr;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Layout cache bookkeeping, no gluster mount needed.
+ */
+public class GlusterFSLayoutCacheTest{
+
+    static final String PATHINFO="(<DISTRIBUTE:gv0-dht> <POSIX(/bricks/b1):host1:/bricks/b1/f>)";
+
+    GlusterFSLayoutCache cache;
+    GlusterFSLayout layout;
+
+    @Before
+    public void setUp() throws Exception{
+        cache=new GlusterFSLayoutCache();
+        layout=GlusterFSXattr.parseLayout(PATHINFO);
+    }
+
+    @Test
+    public void testHitRequiresSameMtimeAndLength(){
+        cache.put("/mnt/gv0/f", 10, 100, layout);
+        assertNotNull(cache.get("/mnt/gv0/f", 10, 100));
+        assertNull(cache.get("/mnt/gv0/f", 11, 100));
+        assertNull(cache.get("/mnt/gv0/f", 10, 100));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testLruEviction(){
+        cache.configure(2, 0);
+        cache.put("/a", 1, 1, layout);
+        cache.put("/b", 1, 1, layout);
+        cache.get("/a", 1, 1);
+        cache.put("/c", 1, 1, layout);
+        assertEquals(2, cache.size());
+        assertNull(cache.get("/b", 1, 1));
+        assertNotNull(cache.get("/a", 1, 1));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testInvalidateDirectory(){
+        cache.put("/mnt/gv0/dir/a", 1, 1, layout);
+        cache.put("/mnt/gv0/dir/sub/b", 1, 1, layout);
+        cache.put("/mnt/gv0/dir2", 1, 1, layout);
+        cache.invalidate("/mnt/gv0/dir");
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get("/mnt/gv0/dir2", 1, 1));
+    }
+
+    @Test
+    public void testInvalidateAfterEviction(){
+        cache.configure(2, 0);
+        cache.put("/dir/a", 1, 1, layout);
+        cache.put("/dir/b", 1, 1, layout);
+        cache.put("/other/c", 1, 1, layout);
+        cache.invalidate("/dir/b");
+        assertEquals(1, cache.size());
+        cache.put("/dir/a", 1, 1, layout);
+        cache.put("/dir/sub/d", 1, 1, layout);
+        cache.invalidate("/dir");
+        assertEquals(0, cache.size());
+        cache.put("/dir/a", 1, 1, layout);
+        assertNotNull(cache.get("/dir/a", 1, 1));
+    }
+
+    @Test
+    public void testDisabled(){
+        cache.configure(0, 0);
+        cache.put("/a", 1, 1, layout);
+        assertNull(cache.get("/a", 1, 1));
+    }
+}
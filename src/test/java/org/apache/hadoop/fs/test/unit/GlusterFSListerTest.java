@@ -0,0 +1,204 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.apache.hadoop.fs.FileSystemTestHelper.getTestRootPath;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileContext;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.glusterfs.GlusterFileSystem;
+import org.apache.hadoop.fs.test.connector.HcfsTestConnectorFactory;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Listing directories small enough to be stat'ed serially and large enough
+ * to go through the lister's pool.
+ */
+public class GlusterFSListerTest{
+
+    static FileSystem fs;
+    static Configuration conf;
+
+    @BeforeClass
+    public static void setup() throws Exception{
+        conf=HcfsTestConnectorFactory.getHcfsTestConnector().createConfiguration();
+        /* small batches, so iterators go through several */
+        conf.setInt("fs.glusterfs.list.batch", 70);
+        fs=FileSystem.newInstance(conf);
+    }
+
+    @AfterClass
+    public static void after() throws IOException{
+        fs.close();
+    }
+
+    @After
+    public void tearDown() throws Exception{
+        fs.delete(getTestRootPath(fs, "test"), true);
+    }
+
+    Path create(int entries) throws IOException{
+        Path dir=getTestRootPath(fs, "test/list"+entries);
+        for(int i=0;i<entries;i++){
+            FSDataOutputStream out=fs.create(new Path(dir, "f"+i));
+            out.write(new byte[i%7]);
+            out.close();
+        }
+        fs.mkdirs(new Path(dir, "sub"));
+        return dir;
+    }
+
+    void check(int entries) throws IOException{
+        Path dir=create(entries);
+        FileStatus[] list=fs.listStatus(dir);
+        assertEquals(entries+1, list.length);
+        check(dir, list);
+    }
+
+    void check(Path dir,FileStatus[] list) throws IOException{
+        Set<String> names=new HashSet<String>();
+        for(FileStatus s : list){
+            names.add(s.getPath().getName());
+            assertEquals(fs.getFileStatus(s.getPath()), s);
+            assertEquals(new Path(dir, s.getPath().getName()).makeQualified(fs), s.getPath());
+            if(s.isDirectory()){
+                assertEquals("sub", s.getPath().getName());
+            }else{
+                assertEquals(Integer.parseInt(s.getPath().getName().substring(1))%7, s.getLen());
+            }
+        }
+        assertEquals(list.length, names.size());
+        assertTrue(names.contains("f0"));
+    }
+
+    static FileStatus[] drain(RemoteIterator<? extends FileStatus> it) throws IOException{
+        Set<FileStatus> all=new HashSet<FileStatus>();
+        while (it.hasNext())
+            assertTrue(all.add(it.next()));
+        assertFalse(it.hasNext());
+        return all.toArray(new FileStatus[all.size()]);
+    }
+
+    @Test
+    public void testSmallDirectory() throws IOException{
+        check(5);
+    }
+
+    @Test
+    public void testLargeDirectory() throws IOException{
+        check(300);
+    }
+
+    @Test
+    public void testFile() throws IOException{
+        Path f=getTestRootPath(fs, "test/file");
+        fs.create(f).close();
+        FileStatus[] list=fs.listStatus(f);
+        assertEquals(1, list.length);
+        assertEquals(fs.getFileStatus(f), list[0]);
+    }
+
+    @Test
+    public void testIterator() throws IOException{
+        Path dir=create(300);
+        FileStatus[] list=drain(((GlusterFileSystem) fs).listStatusIterator(dir));
+        assertEquals(301, list.length);
+        check(dir, list);
+
+        list=drain(FileContext.getFileContext(conf).listStatus(dir));
+        assertEquals(301, list.length);
+        check(dir, list);
+
+        Path f=new Path(dir, "f1");
+        list=drain(((GlusterFileSystem) fs).listStatusIterator(f));
+        assertEquals(1, list.length);
+        assertEquals(fs.getFileStatus(f), list[0]);
+    }
+
+    @Test
+    public void testEarlyClose() throws IOException{
+        Path dir=create(300);
+        File fds=new File("/proc/self/fd");
+        int open=fds.list().length;
+
+        RemoteIterator<FileStatus> it=((GlusterFileSystem) fs).listStatusIterator(dir);
+        assertTrue(it.hasNext());
+        it.next();
+        assertTrue(it instanceof Closeable);
+        ((Closeable) it).close();
+        assertFalse(it.hasNext());
+        /* the directory's descriptor is released, not left to the collector */
+        assertEquals(open, fds.list().length);
+    }
+
+    @Test
+    public void testLocatedDirectories() throws IOException{
+        Path dir=getTestRootPath(fs, "test/dirs");
+        for(int i=0;i<150;i++)
+            fs.mkdirs(new Path(dir, "d"+i));
+
+        RemoteIterator<LocatedFileStatus> it=fs.listLocatedStatus(dir);
+        int n=0;
+        while (it.hasNext()){
+            LocatedFileStatus s=it.next();
+            assertTrue(s.isDirectory());
+            assertNull(s.getBlockLocations());
+            n++;
+        }
+        assertEquals(150, n);
+    }
+
+    @Test
+    public void testPurgeDirectoryHidden() throws IOException{
+        Path dir=create(3);
+        Configuration c=new Configuration(conf);
+        c.set("fs.glusterfs.purge.dir", dir.toUri().getPath()+"/.purge");
+        FileSystem hiding=FileSystem.newInstance(c);
+        try{
+            hiding.mkdirs(new Path(dir, ".purge/claim"));
+            assertEquals(4, hiding.listStatus(dir).length);
+            assertEquals(5, fs.listStatus(dir).length);
+            assertEquals(4, drain(((GlusterFileSystem) hiding).listStatusIterator(dir)).length);
+            assertEquals(3, hiding.getContentSummary(dir).getFileCount());
+            assertEquals(2, hiding.getContentSummary(dir).getDirectoryCount());
+        }finally{
+            hiding.close();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.fs.glusterfs.GlusterFSInputStream;
+import org.apache.hadoop.fs.glusterfs.GlusterFSLayout;
+import org.apache.hadoop.fs.glusterfs.GlusterFSLocalBricks;
+import org.apache.hadoop.fs.glusterfs.GlusterFSStripedInputStream;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattr;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Picking a local brick copy to read, with a plain file standing in for the
+ * brick's backend file.
+ */
+public class GlusterFSLocalBricksTest{
+
+    File brick;
+    File stripe;
+
+    @Before
+    public void setUp() throws IOException{
+        brick=write("brick", "0123456789");
+        /* stripe 0 of "0123456789abcdef" in chunks of 4, coalesced */
+        stripe=write("stripe", "012389ab");
+    }
+
+    static File write(String name,String content) throws IOException{
+        File f=File.createTempFile(name, ".dat");
+        FileOutputStream out=new FileOutputStream(f);
+        try{
+            out.write(content.getBytes("UTF-8"));
+        }finally{
+            out.close();
+        }
+        return f;
+    }
+
+    @After
+    public void tearDown(){
+        brick.delete();
+        stripe.delete();
+    }
+
+    GlusterFSLayout layout(String host) throws IOException{
+        return GlusterFSXattr.parseLayout("(<DISTRIBUTE:gv0-dht> (<REPLICATE:gv0-replicate-0> <POSIX(/b1):remotehost.invalid:/b1/f> <POSIX("
+                +brick.getParent()+"):"+host+":"+brick.getPath()+">))");
+    }
+
+    @Test
+    public void testLocalCopy() throws IOException{
+        assertTrue(GlusterFSLocalBricks.isLocal("localhost"));
+        assertFalse(GlusterFSLocalBricks.isLocal("remotehost.invalid"));
+
+        /* a temp file has no gluster xattrs, so it only passes unverified */
+        assertEquals(brick, new GlusterFSLocalBricks(false).find(layout("localhost"), 10));
+        assertNull(new GlusterFSLocalBricks(true).find(layout("localhost"), 10));
+    }
+
+    @Test
+    public void testIncompleteCopy() throws IOException{
+        assertNull(new GlusterFSLocalBricks(false).find(layout("localhost"), 11));
+        assertNull(new GlusterFSLocalBricks(false).find(layout("remotehost.invalid"), 10));
+    }
+
+    @Test
+    public void testStream() throws IOException{
+        GlusterFSInputStream in=new GlusterFSInputStream(brick, null);
+        try{
+            byte[] b=new byte[4];
+            in.seek(3);
+            assertEquals(4, in.read(b, 0, 4));
+            assertEquals("3456", new String(b, "UTF-8"));
+            assertEquals(7, in.getPos());
+            assertEquals(2, in.read(1, b, 0, 2));
+            assertEquals('1', b[0]);
+            assertEquals(7, in.getPos());
+        }finally{
+            in.close();
+        }
+    }
+
+    @Test
+    public void testStripes() throws IOException{
+        File fuse=write("fuse", "0123456789abcdef");
+        try{
+            GlusterFSLayout l=GlusterFSXattr.parseLayout("(<DISTRIBUTE:gv0-dht> (<STRIPE:gv0-stripe-0:[4]> <POSIX(/b1):localhost:"
+                    +stripe.getPath()+"> <POSIX(/b2):remotehost.invalid:/b2/f>))");
+            GlusterFSLocalBricks local=new GlusterFSLocalBricks(false);
+            assertNull(local.find(l, 16));
+
+            File[] stripes=local.findStripes(l, 16);
+            assertEquals(stripe, stripes[0]);
+            assertNull(stripes[1]);
+
+            GlusterFSStripedInputStream in=(GlusterFSStripedInputStream) local.open(fuse, l, 16, 4096, null);
+            try{
+                byte[] b=new byte[16];
+                int off=0;
+                int n;
+                while (off<16&&(n=in.read(b, off, 16-off))>0)
+                    off+=n;
+                assertEquals("0123456789abcdef", new String(b, 0, off, "UTF-8"));
+                assertEquals(-1, in.read());
+                assertEquals(8, in.getLocalBytes());
+                assertEquals(8, in.getRemoteBytes());
+
+                in.seek(9);
+                assertEquals('9', in.read());
+                assertEquals(9, in.getLocalBytes());
+            }finally{
+                in.close();
+            }
+        }finally{
+            fuse.delete();
+        }
+    }
+
+    /* reads the 16 byte file through its stripes, with stripe 0 local as content */
+    GlusterFSStripedInputStream openStripes(File fuse,String content) throws IOException{
+        stripe.delete();
+        stripe=write("stripe", content);
+        GlusterFSLayout l=GlusterFSXattr.parseLayout("(<DISTRIBUTE:gv0-dht> (<STRIPE:gv0-stripe-0:[4]> <POSIX(/b1):localhost:"
+                +stripe.getPath()+"> <POSIX(/b2):remotehost.invalid:/b2/f>))");
+        return (GlusterFSStripedInputStream) new GlusterFSLocalBricks(false).open(fuse, l, 16, 4096, null);
+    }
+
+    static String readAll(GlusterFSStripedInputStream in) throws IOException{
+        byte[] b=new byte[16];
+        int off=0;
+        int n;
+        while (off<16&&(n=in.read(b, off, 16-off))>0)
+            off+=n;
+        return new String(b, 0, off, "UTF-8");
+    }
+
+    @Test
+    public void testSparseStripes() throws IOException{
+        File fuse=write("fuse", "0123456789abcdef");
+        try{
+            /* chunks at their offsets: a hole where stripe 1's chunk is */
+            GlusterFSStripedInputStream in=openStripes(fuse, "0123\0\0\0\089ab");
+            try{
+                assertEquals("0123456789abcdef", readAll(in));
+                assertEquals(8, in.getLocalBytes());
+                assertEquals(8, in.getRemoteBytes());
+            }finally{
+                in.close();
+            }
+        }finally{
+            fuse.delete();
+        }
+    }
+
+    @Test
+    public void testStripeOfUnknownLength() throws IOException{
+        File fuse=write("fuse", "0123456789abcdef");
+        try{
+            /* neither packed nor sparse, e.g. still being written */
+            GlusterFSStripedInputStream in=openStripes(fuse, "0123xx");
+            try{
+                assertEquals("0123456789abcdef", readAll(in));
+                assertEquals(0, in.getLocalBytes());
+                assertEquals(16, in.getRemoteBytes());
+            }finally{
+                in.close();
+            }
+        }finally{
+            fuse.delete();
+        }
+    }
+}
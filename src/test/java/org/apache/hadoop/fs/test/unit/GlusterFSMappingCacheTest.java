@@ -0,0 +1,141 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.ReadOption;
+import org.apache.hadoop.fs.glusterfs.GlusterFSMappedInputStream;
+import org.apache.hadoop.fs.glusterfs.GlusterFSMappingCache;
+import org.apache.hadoop.io.ElasticByteBufferPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Sharing, invalidating and evicting mappings, and reading out of them.
+ */
+public class GlusterFSMappingCacheTest{
+
+    File a;
+    File b;
+
+    @Before
+    public void setUp() throws IOException{
+        a=write("mapped-a", "0123456789");
+        b=write("mapped-b", "abcdefghij");
+    }
+
+    @After
+    public void tearDown(){
+        a.delete();
+        b.delete();
+    }
+
+    static File write(String name,String content) throws IOException{
+        File f=File.createTempFile(name, ".dat");
+        FileOutputStream out=new FileOutputStream(f);
+        try{
+            out.write(content.getBytes("UTF-8"));
+        }finally{
+            out.close();
+        }
+        return f;
+    }
+
+    @Test
+    public void testSharing() throws IOException{
+        GlusterFSMappingCache c=new GlusterFSMappingCache();
+        assertNull(c.acquire(a, 1, 10));
+
+        c.configure(10, 15);
+        assertNull(c.acquire(a, 1, 11));
+        GlusterFSMappingCache.Mapping m=c.acquire(a, 1, 10);
+        assertSame(m, c.acquire(a, 1, 10));
+        assertEquals(1, c.getHits());
+
+        /* changed: a new mapping, the old one stays with its readers */
+        GlusterFSMappingCache.Mapping changed=c.acquire(a, 2, 10);
+        assertNotSame(m, changed);
+        assertEquals(10, c.getMappedBytes());
+
+        /* no room beside a mapping in use */
+        assertNull(c.acquire(b, 1, 10));
+        changed.release();
+        assertNotNull(c.acquire(b, 1, 10));
+        assertEquals(1, c.getEvictions());
+        assertEquals(1, c.size());
+
+        c.invalidate(b.getParent());
+        assertEquals(0, c.size());
+        assertEquals(0, c.getMappedBytes());
+    }
+
+    @Test
+    public void testReads() throws IOException{
+        GlusterFSMappingCache c=new GlusterFSMappingCache();
+        c.configure(100, 100);
+        FSDataInputStream in=new FSDataInputStream(new GlusterFSMappedInputStream(c.acquire(a, 1, 10), null));
+        try{
+            in.seek(2);
+            assertEquals('2', in.read());
+            byte[] buf=new byte[4];
+            assertEquals(2, in.read(8, buf, 0, 4));
+            assertEquals('8', buf[0]);
+            assertEquals(3, in.getPos());
+
+            ByteBuffer direct=ByteBuffer.allocateDirect(3);
+            assertEquals(3, in.read(direct));
+            assertEquals('3', direct.get(0));
+
+            /* zero copy, straight out of the mapping */
+            ByteBuffer slice=in.read(new ElasticByteBufferPool(), 100, EnumSet.noneOf(ReadOption.class));
+            assertEquals(4, slice.remaining());
+            assertEquals('6', slice.get());
+            in.releaseBuffer(slice);
+            assertNull(in.read(new ElasticByteBufferPool(), 100, EnumSet.noneOf(ReadOption.class)));
+            assertEquals(-1, in.read());
+        }finally{
+            in.close();
+        }
+    }
+
+    @Test
+    public void testStaleLength() throws IOException{
+        GlusterFSMappingCache c=new GlusterFSMappingCache();
+        c.configure(100, 100);
+        /* mapping past the end of the file would fault on reads */
+        assertNull(c.acquire(a, 1, 11));
+        assertNull(c.acquire(a, 1, 9));
+        assertEquals(0, c.size());
+        assertNotNull(c.acquire(a, 1, 10));
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.glusterfs.GlusterFSPurger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Moving trees aside and purging them, against the temp directory.
+ */
+public class GlusterFSPurgerTest{
+
+    File root;
+
+    @Before
+    public void setUp() throws IOException{
+        root=Files.createTempDirectory("purger").toFile();
+    }
+
+    @After
+    public void tearDown(){
+        FileUtil.fullyDelete(root);
+    }
+
+    static File tree(File dir,int files) throws IOException{
+        new File(dir, "sub").mkdirs();
+        for(int i=0;i<files;i++)
+            new File(dir, "sub/f"+i).createNewFile();
+        return dir;
+    }
+
+    @Test
+    public void testMoveAside() throws IOException{
+        GlusterFSPurger p=GlusterFSPurger.get(new File(root, ".purge"));
+        p.configure(0, 2, 60000);
+        File job=tree(new File(root, "job"), 10);
+
+        /* not the purge directory itself, nor what holds it */
+        assertFalse(p.moveAside(p.getDirectory()));
+        assertFalse(p.moveAside(root));
+
+        assertTrue(p.moveAside(job));
+        assertFalse(job.exists());
+        assertEquals(1, p.getMoved());
+
+        long deadline=System.currentTimeMillis()+10000;
+        while (p.getPurged()==0&&System.currentTimeMillis()<deadline)
+            Thread.yield();
+        /* the claim is left, empty */
+        assertEquals(1, p.getDirectory().list().length);
+        assertEquals(0, p.getClaim().list().length);
+        assertEquals(1, p.getPurged());
+    }
+
+    @Test
+    public void testRate() throws IOException{
+        File dir=new File(root, "purge");
+        tree(new File(dir, "a"), 28);
+        /* nothing moved, so no daemon: purged on this thread like the standalone purger does */
+        GlusterFSPurger p=GlusterFSPurger.get(dir);
+        /* 30 entries at 100 a second */
+        p.configure(100, 4, 60000);
+        long start=System.nanoTime();
+        assertTrue(p.purgeAll());
+        assertTrue(System.nanoTime()-start>=200*1000000L);
+        assertEquals(0, dir.list().length);
+        assertEquals(1, p.getAdopted());
+    }
+
+    @Test
+    public void testAdoptStale() throws IOException{
+        File dir=new File(root, "shared");
+        /* another JVM's claim, active, and one left by a JVM that exited */
+        tree(new File(dir, "live/t"), 3);
+        tree(new File(dir, "dead/t"), 3);
+        new File(dir, "dead").setLastModified(System.currentTimeMillis()-60000);
+        GlusterFSPurger p=GlusterFSPurger.get(dir);
+        p.configure(0, 2, 1000);
+        assertTrue(p.purge());
+        assertEquals(1, p.getAdopted());
+        assertFalse(new File(dir, "dead").exists());
+        assertTrue(new File(dir, "live/t").exists());
+        assertEquals(0, p.getClaim().list().length);
+    }
+}
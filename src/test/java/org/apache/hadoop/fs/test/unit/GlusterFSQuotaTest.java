@@ -0,0 +1,69 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.glusterfs.GlusterFSQuota;
+import org.junit.Test;
+
+/**
+ * Content summaries from raw quota xattr values.
+ */
+public class GlusterFSQuotaTest{
+
+    static byte[] longs(long... values){
+        ByteBuffer b=ByteBuffer.allocate(values.length*8);
+        for(long v : values)
+            b.putLong(v);
+        return b.array();
+    }
+
+    @Test
+    public void testSize(){
+        ContentSummary c=GlusterFSQuota.parse(longs(40L<<40, 123456, 789), null, null);
+        assertEquals(40L<<40, c.getLength());
+        assertEquals(40L<<40, c.getSpaceConsumed());
+        assertEquals(123456, c.getFileCount());
+        assertEquals(789, c.getDirectoryCount());
+        assertEquals(-1, c.getQuota());
+        assertEquals(-1, c.getSpaceQuota());
+    }
+
+    @Test
+    public void testLimits(){
+        ContentSummary c=GlusterFSQuota.parse(longs(4096, 1, 1), longs(1L<<30, 80), longs(1000, 80));
+        assertEquals(1L<<30, c.getSpaceQuota());
+        assertEquals(1000, c.getQuota());
+    }
+
+    @Test
+    public void testUnusable(){
+        /* pre 3.7, size only */
+        assertNull(GlusterFSQuota.parse(longs(4096), null, null));
+        assertNull(GlusterFSQuota.parse(longs(-512, 3, 1), null, null));
+        assertNull(GlusterFSQuota.parse(longs(4096, -1, 1), null, null));
+        assertNull(GlusterFSQuota.parse(null, null, null));
+    }
+}
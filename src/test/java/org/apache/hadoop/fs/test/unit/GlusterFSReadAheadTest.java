@@ -0,0 +1,155 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.glusterfs.GlusterFSInputStream;
+import org.apache.hadoop.fs.glusterfs.GlusterFSReadAhead;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Sequential and random reads through GlusterFSReadAhead.
+ */
+public class GlusterFSReadAheadTest{
+
+    File file;
+    byte[] data;
+    GlusterFSReadAhead readAhead;
+
+    @Before
+    public void setUp() throws IOException{
+        /* not a multiple of any window */
+        data=new byte[1000003];
+        new Random(1).nextBytes(data);
+        file=File.createTempFile("readahead", ".dat");
+        FileOutputStream out=new FileOutputStream(file);
+        try{
+            out.write(data);
+        }finally{
+            out.close();
+        }
+        readAhead=new GlusterFSReadAhead();
+        readAhead.configure(3, 4096, 65536, 2);
+    }
+
+    @After
+    public void tearDown(){
+        file.delete();
+    }
+
+    @Test
+    public void testDisabled() throws IOException{
+        GlusterFSReadAhead off=new GlusterFSReadAhead();
+        FileInputStream in=new FileInputStream(file);
+        try{
+            assertNull(off.open(in.getChannel()));
+            off.configure(0, 4096, 65536, 1);
+            assertNull(off.open(in.getChannel()));
+        }finally{
+            in.close();
+        }
+    }
+
+    @Test
+    public void testSequential() throws IOException{
+        FileSystem.Statistics stats=new FileSystem.Statistics("glusterfs");
+        GlusterFSInputStream in=new GlusterFSInputStream(file, stats, 1000, readAhead);
+        byte[] read=new byte[data.length];
+        Random random=new Random(2);
+        try{
+            int off=0;
+            while (off<read.length){
+                int n;
+                if(random.nextBoolean()){
+                    n=in.read(read, off, Math.min(read.length-off, 1+random.nextInt(20000)));
+                }else{
+                    ByteBuffer buf=ByteBuffer.allocateDirect(1+random.nextInt(20000));
+                    n=in.read(buf);
+                    if(n>0){
+                        buf.flip();
+                        buf.get(read, off, Math.min(n, read.length-off));
+                    }
+                }
+                assertTrue(n>0);
+                off+=n;
+            }
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(ByteBuffer.allocate(10)));
+        }finally{
+            in.close();
+        }
+        assertArrayEquals(data, read);
+        /* what the stream was handed, not what was read ahead of it */
+        assertEquals(data.length, stats.getBytesRead());
+        assertTrue(readAhead.getServed()>data.length/2);
+        assertTrue(readAhead.getFetched()>=readAhead.getServed());
+    }
+
+    @Test
+    public void testRandom() throws IOException{
+        FileInputStream in=new FileInputStream(file);
+        try{
+            GlusterFSReadAhead.Reader reader=readAhead.open(in.getChannel());
+            ByteBuffer buf=ByteBuffer.allocate(1000);
+
+            /* sequential: windows get queued */
+            long pos=0;
+            for(int i=0;i<10;i++){
+                buf.clear();
+                pos+=reader.read(buf, pos);
+            }
+            assertTrue(readAhead.getFetched()>0);
+            assertTrue(readAhead.getServed()>0);
+
+            /* random: windows dropped, nothing more fetched */
+            Random random=new Random(3);
+            long dropped=readAhead.getDropped();
+            long served=readAhead.getServed();
+            for(int i=0;i<20;i++){
+                long at=random.nextInt(data.length-1000);
+                buf.clear();
+                assertEquals(1000, reader.read(buf, at));
+                byte[] expected=new byte[1000];
+                System.arraycopy(data, (int) at, expected, 0, 1000);
+                assertArrayEquals(expected, buf.array());
+            }
+            assertTrue(readAhead.getDropped()>dropped);
+            assertEquals(served, readAhead.getServed());
+            assertEquals(4096, reader.getWindow());
+            reader.drop();
+        }finally{
+            in.close();
+        }
+    }
+}
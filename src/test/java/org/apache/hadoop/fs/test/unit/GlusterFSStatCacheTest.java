@@ -0,0 +1,168 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.apache.hadoop.fs.FileSystemTestHelper.getTestRootPath;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterFSStatCache;
+import org.apache.hadoop.fs.glusterfs.GlusterFileAttributes;
+import org.apache.hadoop.fs.test.connector.HcfsTestConnectorFactory;
+import org.junit.Test;
+
+/**
+ * Stat cache entries, expiry and invalidation, alone and behind a volume.
+ */
+public class GlusterFSStatCacheTest{
+
+    static GlusterFileAttributes attrs() throws IOException{
+        return GlusterFileAttributes.read(new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    @Test
+    public void testEntries() throws IOException{
+        GlusterFSStatCache c=new GlusterFSStatCache();
+        c.put("/mnt/gv0/a", attrs());
+        assertFalse(c.isEnabled());
+        assertEquals(0, c.size());
+
+        c.configure(2, 60000, true);
+        c.put("/mnt/gv0/a", attrs());
+        c.put("/mnt/gv0/missing", null);
+        assertNotNull(c.get("/mnt/gv0/a").getAttributes());
+        assertNull(c.get("/mnt/gv0/missing").getAttributes());
+        assertNull(c.get("/mnt/gv0/b"));
+        assertEquals(1, c.getHits());
+        assertEquals(1, c.getNegativeHits());
+        assertEquals(1, c.getMisses());
+        assertEquals(2.0/3, c.getHitRate(), 0.001);
+
+        /* LRU, missing was used last */
+        c.put("/mnt/gv0/b", attrs());
+        assertEquals(2, c.size());
+        assertNull(c.get("/mnt/gv0/a"));
+        assertNotNull(c.get("/mnt/gv0/missing"));
+        assertEquals(1, c.getEvictions());
+
+        c.configure(2, 60000, false);
+        c.put("/mnt/gv0/other", null);
+        assertNull(c.get("/mnt/gv0/other"));
+    }
+
+    @Test
+    public void testExpiry() throws Exception{
+        GlusterFSStatCache c=new GlusterFSStatCache();
+        c.configure(10, 50, true);
+        c.put("/mnt/gv0/a", attrs());
+        Thread.sleep(100);
+        assertNull(c.get("/mnt/gv0/a"));
+        assertEquals(1, c.getExpirations());
+    }
+
+    @Test
+    public void testInvalidate() throws IOException{
+        GlusterFSStatCache c=new GlusterFSStatCache();
+        c.configure(100, 60000, true);
+        for(String p : new String[]{ "/mnt/gv0", "/mnt/gv0/d", "/mnt/gv0/d/f", "/mnt/gv0/d/f/x", "/mnt/gv0/d/fx", "/mnt/gv0/e" })
+            c.put(p, null);
+
+        c.invalidate("/mnt/gv0/d/f");
+        assertNull(c.get("/mnt/gv0"));
+        assertNull(c.get("/mnt/gv0/d"));
+        assertNull(c.get("/mnt/gv0/d/f"));
+        assertNull(c.get("/mnt/gv0/d/f/x"));
+        assertNotNull(c.get("/mnt/gv0/d/fx"));
+        assertNotNull(c.get("/mnt/gv0/e"));
+    }
+
+    @Test
+    public void testVolume() throws IOException{
+        Configuration conf=HcfsTestConnectorFactory.getHcfsTestConnector().createConfiguration();
+        conf.setInt("fs.glusterfs.stat.cache.size", 100);
+        conf.setLong("fs.glusterfs.stat.cache.ttl", 60000);
+        FileSystem fs=FileSystem.newInstance(conf);
+        try{
+            Path dir=getTestRootPath(fs, "test/statcache");
+            Path f=new Path(dir, "f");
+            assertFalse(fs.exists(f));
+            assertFalse(fs.exists(dir));
+
+            /* create probes f and its parent itself, neither answer may stick */
+            FSDataOutputStream out=fs.create(f);
+            out.write(new byte[3]);
+            out.close();
+            assertTrue(fs.exists(dir));
+            assertTrue(fs.exists(f));
+
+            Path g=new Path(dir, "g");
+            assertTrue(fs.rename(f, g));
+            assertFalse(fs.exists(f));
+            assertEquals(3, fs.getFileStatus(g).getLen());
+
+            fs.setPermission(g, new org.apache.hadoop.fs.permission.FsPermission((short) 0600));
+            assertEquals((short) 0600, fs.getFileStatus(g).getPermission().toShort());
+
+            assertTrue(fs.delete(dir, true));
+            assertFalse(fs.exists(g));
+            assertFalse(fs.exists(dir));
+        }finally{
+            fs.delete(getTestRootPath(fs, "test"), true);
+            fs.close();
+        }
+    }
+
+    @Test
+    public void testStreamClose() throws IOException{
+        Configuration conf=HcfsTestConnectorFactory.getHcfsTestConnector().createConfiguration();
+        conf.setInt("fs.glusterfs.stat.cache.size", 100);
+        conf.setLong("fs.glusterfs.stat.cache.ttl", 60000);
+        FileSystem fs=FileSystem.newInstance(conf);
+        try{
+            Path f=getTestRootPath(fs, "test/statcache/f");
+            FSDataOutputStream out=fs.create(f);
+            out.write(new byte[3]);
+            out.hflush();
+            /* stat'ed, and cached, while being written */
+            assertEquals(3, fs.getFileStatus(f).getLen());
+            out.write(new byte[5]);
+            out.close();
+            assertEquals(8, fs.getFileStatus(f).getLen());
+
+            out=fs.append(f);
+            out.write(new byte[2]);
+            out.close();
+            assertEquals(10, fs.getFileStatus(f).getLen());
+        }finally{
+            fs.delete(getTestRootPath(fs, "test"), true);
+            fs.close();
+        }
+    }
+}
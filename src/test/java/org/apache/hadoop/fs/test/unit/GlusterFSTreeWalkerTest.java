@@ -0,0 +1,184 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.apache.hadoop.fs.FileSystemTestHelper.getTestRootPath;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.glusterfs.GlusterFSTreeWalker;
+import org.apache.hadoop.fs.glusterfs.GlusterVolume;
+import org.apache.hadoop.fs.test.connector.HcfsTestConnectorFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * The parallel tree walks have to come up with what FileSystem's serial
+ * recursion and Globber find.
+ */
+public class GlusterFSTreeWalkerTest{
+
+    static FileSystem fs;
+    static GlusterVolume volume;
+    static Path root;
+    static long length=0;
+
+    @BeforeClass
+    public static void setup() throws Exception{
+        Configuration conf=HcfsTestConnectorFactory.getHcfsTestConnector().createConfiguration();
+        fs=FileSystem.newInstance(conf);
+        volume=new GlusterVolume();
+        volume.initialize(fs.getUri(), conf);
+
+        /* d0..d9/e0..e3 holding f0..f2, and a few files at every level */
+        root=getTestRootPath(fs, "test/tree").makeQualified(fs);
+        for(int i=0;i<10;i++){
+            for(int j=0;j<4;j++){
+                for(int k=0;k<3;k++)
+                    write(new Path(root, "d"+i+"/e"+j+"/f"+k), i+j+k);
+            }
+            write(new Path(root, "d"+i+"/top"), i);
+        }
+        write(new Path(root, "file"), 5);
+        fs.mkdirs(new Path(root, "empty"));
+    }
+
+    static void write(Path p,int len) throws IOException{
+        FSDataOutputStream out=fs.create(p);
+        out.write(new byte[len]);
+        out.close();
+        length+=len;
+    }
+
+    @AfterClass
+    public static void after() throws IOException{
+        fs.delete(getTestRootPath(fs, "test"), true);
+        fs.close();
+    }
+
+    /* what FileSystem.listFiles(path, true) walks through, in the same order */
+    static void serial(Path dir,List<FileStatus> files) throws IOException{
+        for(FileStatus s : volume.listStatus(dir)){
+            if(s.isDirectory())
+                serial(s.getPath(), files);
+            else
+                files.add(s);
+        }
+    }
+
+    /* the files a stream gives, a few at a time */
+    static List<FileStatus> drain(GlusterFSTreeWalker.Files files) throws IOException{
+        List<FileStatus> all=new ArrayList<FileStatus>();
+        FileStatus[] batch;
+        while ((batch=files.next(7))!=null)
+            all.addAll(Arrays.asList(batch));
+        return all;
+    }
+
+    @Test
+    public void testListFiles() throws IOException{
+        List<FileStatus> expected=new ArrayList<FileStatus>();
+        serial(root, expected);
+        assertEquals(10*4*3+10+1, expected.size());
+
+        GlusterFSTreeWalker walker=new GlusterFSTreeWalker();
+        walker.configure(4, false);
+        assertEquals(expected, drain(walker.openFiles(volume, volume.getFileStatus(root))));
+
+        /* streamed through the volume, a batch of block locations at a time */
+        List<FileStatus> listed=new ArrayList<FileStatus>();
+        RemoteIterator<LocatedFileStatus> it=volume.listFiles(root, true);
+        while (it.hasNext())
+            listed.add(it.next());
+        assertEquals(expected, listed);
+
+        walker.configure(1, true);
+        List<FileStatus> ordered=drain(walker.openFiles(volume, volume.getFileStatus(root)));
+        assertEquals(expected.size(), ordered.size());
+        assertEquals(new Path(root, "d0/e0/f0"), ordered.get(0).getPath());
+        assertEquals(new Path(root, "file"), ordered.get(ordered.size()-1).getPath());
+    }
+
+    @Test
+    public void testContentSummary() throws IOException{
+        ContentSummary c=fs.getContentSummary(root);
+        assertEquals(length, c.getLength());
+        assertEquals(10*4*3+10+1, c.getFileCount());
+        assertEquals(1+1+10+10*4, c.getDirectoryCount());
+
+        c=fs.getContentSummary(new Path(root, "file"));
+        assertEquals(5, c.getLength());
+        assertEquals(1, c.getFileCount());
+        assertEquals(0, c.getDirectoryCount());
+    }
+
+    /* paths below prefix, sorted */
+    static String[] names(FileStatus[] statuses,String prefix){
+        if(statuses==null)
+            return null;
+        String[] names=new String[statuses.length];
+        for(int i=0;i<statuses.length;i++){
+            String p=statuses[i].getPath().toUri().getPath();
+            assertEquals(p, 0, p.indexOf(prefix));
+            names[i]=p.substring(prefix.length());
+        }
+        Arrays.sort(names);
+        return names;
+    }
+
+    /* FileSystem's Globber on the local file system, over the same directory */
+    static void checkGlob(String pattern) throws IOException{
+        String local=volume.pathToFile(root).getPath();
+        FileStatus[] expected=FileSystem.getLocal(fs.getConf()).globStatus(new Path("file://"+local+"/"+pattern));
+        assertArrayEquals(pattern, names(expected, local), names(fs.globStatus(new Path(root, pattern)), root.toUri().getPath()));
+    }
+
+    @Test
+    public void testGlob() throws IOException{
+        checkGlob("d*");
+        checkGlob("d?/e[12]/f*");
+        checkGlob("*/e0/f1");
+        checkGlob("*/top");
+        checkGlob("*/*");
+        checkGlob("d1/*/f[!0]");
+        checkGlob("file/*");
+        checkGlob("missing*/x");
+        checkGlob("d1/e1/f1");
+        checkGlob("d{1,2}/e0");
+        checkGlob("d[0-3]/e*/f2");
+        assertNull(fs.globStatus(new Path(root, "missing")));
+        assertEquals(0, fs.globStatus(new Path(root, "missing*")).length);
+    }
+}
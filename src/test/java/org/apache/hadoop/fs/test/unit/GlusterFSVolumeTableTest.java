@@ -0,0 +1,76 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.glusterfs.GlusterFSVolumeTable;
+import org.junit.Test;
+
+/**
+ * Translating between glusterfs:// paths and files on the mounts.
+ */
+public class GlusterFSVolumeTableTest{
+
+    static GlusterFSVolumeTable table(){
+        return GlusterFSVolumeTable.EMPTY.withVolume("gv0", "/mnt/gv0").withVolume("gv01", "/mnt/gv01/").withVolume("gv1", "/mnt/gv0/gv1");
+    }
+
+    @Test
+    public void testToFile(){
+        GlusterFSVolumeTable t=table();
+        assertEquals("gv0", t.getDefaultVolume());
+        assertEquals(new File("/mnt/gv0/a/b"), t.toFile(null, "/a/b"));
+        assertEquals(new File("/mnt/gv01/a"), t.toFile("gv01", "/a"));
+        assertEquals(new File("/mnt/gv0/gv1"), t.toFile("gv1", "/"));
+        assertNull(t.toFile("gv2", "/a"));
+        assertNull(GlusterFSVolumeTable.EMPTY.toFile(null, "/a"));
+    }
+
+    @Test
+    public void testPrefixes(){
+        GlusterFSVolumeTable t=table();
+        /* a string prefix of /mnt/gv01 but not a mount point of it */
+        assertEquals(new Path("glusterfs://gv01/a"), t.toPath(new File("/mnt/gv01/a")));
+        assertEquals(new Path("glusterfs:///a"), t.toPath(new File("/mnt/gv0/a")));
+        /* the longest mount point wins */
+        assertEquals(new Path("glusterfs://gv1/a"), t.toPath(new File("/mnt/gv0/gv1/a")));
+        assertEquals(new Path("glusterfs://gv1/"), t.toPath(new File("/mnt/gv0/gv1")));
+        assertEquals(new Path("glusterfs:///"), t.toPath(new File("/mnt/gv0")));
+        assertEquals(new Path("glusterfs:///gv10"), t.toPath(new File("/mnt/gv0/gv10")));
+        assertNull(t.toPath(new File("/mnt/gv")));
+        assertNull(t.toPath(new File("/mnt")));
+    }
+
+    @Test
+    public void testCopyOnWrite(){
+        GlusterFSVolumeTable t=GlusterFSVolumeTable.EMPTY.withVolume("gv0", "/mnt/gv0");
+        GlusterFSVolumeTable moved=t.withVolume("gv0", "/mnt/other");
+        assertEquals("/mnt/gv0", t.getMount("gv0"));
+        assertEquals(new Path("glusterfs:///a"), t.toPath(new File("/mnt/gv0/a")));
+        assertNull(moved.toPath(new File("/mnt/gv0/a")));
+        assertEquals(new Path("glusterfs:///a"), moved.toPath(new File("/mnt/other/a")));
+        assertEquals(0, GlusterFSVolumeTable.EMPTY.getVolumes().size());
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.TreeMap;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.glusterfs.GlusterFSBrickClass;
+import org.apache.hadoop.fs.glusterfs.GlusterFSLayout;
+import org.apache.hadoop.fs.glusterfs.GlusterFSXattr;
+import org.junit.Test;
+
+/**
+ * Pathinfo parsing and block location math, no gluster mount needed.
+ */
+public class GlusterFSXattrParseTest{
+
+    static final String D="(<DISTRIBUTE:gv0-dht> <POSIX(/bricks/b1):host1:/bricks/b1/dir/f>)";
+
+    static final String DR="(<DISTRIBUTE:gv0-dht> (<REPLICATE:gv0-replicate-1> <POSIX(/bricks/b3):host3:/bricks/b3/f> <POSIX(/bricks/b4):host4:/bricks/b4/f>))";
+
+    static final String DS="(<DISTRIBUTE:gv0-dht> (<STRIPE:gv0-stripe-0:[131072]> <POSIX(/b1):host1:/b1/f> <POSIX(/b2):host2:/b2/f>))";
+
+    static final String DSR="(<DISTRIBUTE:gv0-dht> (<STRIPE:gv0-stripe-0:[1024]> "
+            +"(<REPLICATE:gv0-replicate-0> <POSIX(/b1):host1:/b1/f> <POSIX(/b2):host2:/b2/f>) "
+            +"(<REPLICATE:gv0-replicate-1> <POSIX(/b3):host3:/b3/f> <POSIX(/b4):host4:/b4/f>)))";
+
+    @Test
+    public void testDistribute() throws IOException{
+        GlusterFSLayout l=GlusterFSXattr.parseLayout(D);
+        assertEquals(GlusterFSXattr.LAYOUT.D, l.getLayoutType());
+        assertEquals(1, l.getReplication());
+        assertEquals(0, l.getStripeSize());
+
+        BlockLocation[] b=l.getBlockLocations(0, 100);
+        assertEquals(1, b.length);
+        assertArrayEquals(new String[]{"host1"}, b[0].getHosts());
+        assertEquals("/bricks/b1/dir/f", l.getBricks().get(0).getPath());
+    }
+
+    @Test
+    public void testGetfattrOutput() throws IOException{
+        String out="# file: /mnt/gv0/dir/f (copy)trusted.glusterfs.pathinfo=\""+DR+"\"";
+        GlusterFSLayout l=GlusterFSXattr.parseLayout(out);
+        assertEquals(GlusterFSXattr.LAYOUT.DR, l.getLayoutType());
+        assertEquals(2, l.getReplication());
+        assertArrayEquals(new String[]{"host3","host4"}, l.getBlockLocations(10, 20)[0].getHosts());
+    }
+
+    @Test
+    public void testStripedRanges() throws IOException{
+        GlusterFSLayout l=GlusterFSXattr.parseLayout(DS);
+        assertEquals(GlusterFSXattr.LAYOUT.DS, l.getLayoutType());
+        assertEquals(131072, l.getStripeSize());
+
+        BlockLocation[] b=l.getBlockLocations(131072-10, 131072+20);
+        assertEquals(3, b.length);
+        assertEquals(10, b[0].getLength());
+        assertArrayEquals(new String[]{"host1"}, b[0].getHosts());
+        assertEquals(131072, b[1].getOffset());
+        assertEquals(131072, b[1].getLength());
+        assertArrayEquals(new String[]{"host2"}, b[1].getHosts());
+        assertEquals(10, b[2].getLength());
+        assertArrayEquals(new String[]{"host1"}, b[2].getHosts());
+    }
+
+    @Test
+    public void testStripedReplicated() throws IOException{
+        GlusterFSLayout l=GlusterFSXattr.parseLayout(DSR);
+        assertEquals(GlusterFSXattr.LAYOUT.DSR, l.getLayoutType());
+        assertEquals(2, l.getReplication());
+
+        BlockLocation[] b=l.getBlockLocations(1024, 2048);
+        assertEquals(2, b.length);
+        assertArrayEquals(new String[]{"host3","host4"}, b[0].getHosts());
+        assertArrayEquals(new String[]{"host1","host2"}, b[1].getHosts());
+
+        TreeMap<Integer, GlusterFSBrickClass> hints=l.getBrickHints(0, 4096);
+        assertEquals(4, hints.size());
+        assertEquals("/b4/f", hints.get(3).brickIsLocal("host4"));
+    }
+
+    @Test
+    public void testDisperse() throws IOException{
+        /* 4+2 over three hosts */
+        String de="(<DISTRIBUTE:gv0-dht> (<EC:gv0-disperse-0> <POSIX(/b1):host1:/b1/f> <POSIX(/b2):host2:/b2/f> "
+                +"<POSIX(/b3):host3:/b3/f> <POSIX(/b4):host1:/b4/f> <POSIX(/b5):host2:/b5/f> <POSIX(/b6):host3:/b6/f>))";
+        GlusterFSLayout l=GlusterFSXattr.parseLayout(de);
+        assertEquals(GlusterFSXattr.LAYOUT.DE, l.getLayoutType());
+        assertArrayEquals(new String[]{"host1","host2","host3"}, l.getBlockLocations(0, 100)[0].getHosts());
+        assertEquals(64*1024*1024, l.alignBlockSize(64*1024*1024));
+        assertEquals(0, l.getBrickHints(0, 100).size());
+
+        GlusterFSLayout.Disperse ec=(GlusterFSLayout.Disperse) l.getRoot().getChildren().get(0);
+        assertEquals(2, ec.getRedundancy());
+        assertEquals(4, ec.getDataCount());
+
+        /* 3+1: rows of 1536 bytes */
+        String e="(<DISPERSE:gv1-disperse-0> <POSIX(/b1):host1:/b1/f> <POSIX(/b2):host2:/b2/f> "
+                +"<POSIX(/b3):host3:/b3/f> <POSIX(/b4):host4:/b4/f>)";
+        l=GlusterFSXattr.parseLayout(e);
+        assertEquals(GlusterFSXattr.LAYOUT.E, l.getLayoutType());
+        assertEquals(67107840, l.alignBlockSize(64*1024*1024));
+        assertEquals(1536, l.alignBlockSize(100));
+    }
+
+    @Test(expected=IOException.class)
+    public void testDisperseRedundancyTooHigh() throws IOException{
+        GlusterFSXattr.parseLayout("(<EC:gv0-disperse-0> <POSIX(/b1):host1:/b1/f> <POSIX(/b2):host2:/b2/f> <POSIX(/b3):host3:/b3/f>)", 2);
+    }
+
+    @Test(expected=IOException.class)
+    public void testUnknownTranslator() throws IOException{
+        GlusterFSXattr.parseLayout("(<DISTRIBUTE:gv0-dht> (<NUFA:gv0-nufa> <POSIX(/b1):host1:/b1/f>))");
+    }
+
+    @Test(expected=IOException.class)
+    public void testEmpty() throws IOException{
+        GlusterFSXattr.parseLayout("");
+    }
+}
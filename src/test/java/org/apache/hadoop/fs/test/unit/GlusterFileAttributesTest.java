@@ -0,0 +1,106 @@
+/**
+ *
+ * Copyright (c) 2014 Red Hat, Inc. <http://www.redhat.com>
+ * This file is part of GlusterFS.
+ *
+ * Licensed under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ *
+ */
+
+package org.apache.hadoop.fs.test.unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.glusterfs.GlusterFileAttributes;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * The stat based attributes have to match what `ls -ld` reports.
+ */
+public class GlusterFileAttributesTest{
+
+    static void assertSame(File f) throws IOException{
+        GlusterFileAttributes ls=GlusterFileAttributes.readWithLs(f);
+        /* once to fill the name cache, once from it */
+        for(int i=0;i<2;i++){
+            GlusterFileAttributes stat=GlusterFileAttributes.read(f);
+            assertEquals(ls.getPermission(), stat.getPermission());
+            assertEquals(ls.getOwner(), stat.getOwner());
+            assertEquals(ls.getGroup(), stat.getGroup());
+        }
+    }
+
+    @Test
+    public void testMatchesLs() throws IOException,InterruptedException{
+        Assume.assumeTrue(GlusterFileAttributes.isPosixAvailable());
+        GlusterFileAttributes.clearNameCache();
+
+        File dir=File.createTempFile("attrs", "");
+        dir.delete();
+        dir.mkdir();
+        try{
+            File f=new File(dir, "f");
+            f.createNewFile();
+            FileUtil.chmod(f.getPath(), "640");
+            assertSame(f);
+
+            FileUtil.chmod(dir.getPath(), "1751");
+            assertSame(dir);
+
+            assertNull(GlusterFileAttributes.read(new File(dir, "missing")));
+        }finally{
+            FileUtil.chmod(dir.getPath(), "755");
+            FileUtil.fullyDelete(dir);
+        }
+    }
+
+    @Test
+    public void testStat() throws IOException{
+        Assume.assumeTrue(GlusterFileAttributes.isPosixAvailable());
+
+        File dir=File.createTempFile("attrs", "");
+        dir.delete();
+        dir.mkdir();
+        try{
+            File f=new File(dir, "f");
+            FileOutputStream out=new FileOutputStream(f);
+            out.write(new byte[7]);
+            out.close();
+
+            GlusterFileAttributes a=GlusterFileAttributes.read(f);
+            assertEquals(7, a.getLength());
+            assertFalse(a.isDirectory());
+            assertEquals(f.lastModified(), a.getModificationTime());
+            assertTrue(GlusterFileAttributes.read(dir).isDirectory());
+
+            File link=new File(dir, "link");
+            Files.createSymbolicLink(link.toPath(), dir.toPath());
+            assertTrue(GlusterFileAttributes.read(link).isSymbolicLink());
+            a=GlusterFileAttributes.read(link, true);
+            assertFalse(a.isSymbolicLink());
+            assertTrue(a.isDirectory());
+        }finally{
+            FileUtil.fullyDelete(dir);
+        }
+    }
+}